@@ -0,0 +1,50 @@
+package fr.tvbarthel.lib.blurdialogfragment.benchmark;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run the blur benchmarks once per thread count.
+ * <p/>
+ * Thread counts are read from the blur.benchmark.threads system property, comma separated, 1, 2
+ * and 4 by default : concurrent blurs, such as a dialog opened over a live blur, share the cpu
+ * cores and the memory bandwidth. Other arguments are regular JMH options.
+ */
+public final class BlurBenchmarkRunner {
+
+    /**
+     * Thread counts used when none is given.
+     */
+    private static final String DEFAULT_THREADS = "1,2,4";
+
+    /**
+     * Non instantiable class.
+     */
+    private BlurBenchmarkRunner() {
+
+    }
+
+    /**
+     * Run the benchmarks.
+     *
+     * @param args JMH options.
+     * @throws RunnerException            if a benchmark fails.
+     * @throws CommandLineOptionException if the options can't be parsed.
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        final CommandLineOptions options = new CommandLineOptions(args);
+        final String threads = System.getProperty("blur.benchmark.threads", DEFAULT_THREADS);
+        for (String count : threads.split(",")) {
+            OptionsBuilder builder = new OptionsBuilder();
+            builder.parent(options);
+            builder.threads(Integer.parseInt(count.trim()));
+            if (options.getIncludes().isEmpty()) {
+                builder.include(BlurKernelBenchmark.class.getSimpleName());
+            }
+            new Runner(builder.build()).run();
+        }
+    }
+}
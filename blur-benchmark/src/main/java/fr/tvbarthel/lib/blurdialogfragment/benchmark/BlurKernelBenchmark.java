@@ -0,0 +1,138 @@
+package fr.tvbarthel.lib.blurdialogfragment.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import fr.tvbarthel.lib.blurdialogfragment.core.GrayscaleStackBlur;
+import fr.tvbarthel.lib.blurdialogfragment.core.PixelPostProcess;
+import fr.tvbarthel.lib.blurdialogfragment.core.StackBlur;
+
+/**
+ * Benchmark of the blur kernels, for each backend which runs on a plain JVM.
+ * <p/>
+ * Sizes are down scaled backgrounds : a 1080x1920 screen down scaled by 8, 4 and 2. Each thread
+ * blurs its own pixels, blurred again and again in place since the cost of a stack blur doesn't
+ * depend on the content.
+ * <p/>
+ * RenderScript only runs on a device, see the benchmark activity of the sample for it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlurKernelBenchmark {
+
+    /**
+     * Size of the down scaled background, as widthxheight.
+     */
+    @Param({"135x240", "270x480", "540x960"})
+    public String size;
+
+    /**
+     * Blur radius.
+     */
+    @Param({"2", "8", "16", "25"})
+    public int radius;
+
+    /**
+     * Width of the pixels.
+     */
+    private int mWidth;
+
+    /**
+     * Height of the pixels.
+     */
+    private int mHeight;
+
+    /**
+     * Pixels blurred by the color backends.
+     */
+    private int[] mPixels;
+
+    /**
+     * Luminance blurred by the grayscale backend.
+     */
+    private byte[] mLuminance;
+
+    /**
+     * Post processing comparable to a tint and a dim, fused with the final pass.
+     */
+    private PixelPostProcess mPostProcess;
+
+    /**
+     * Fill the pixels with noise.
+     */
+    @Setup
+    public void setUp() {
+        final String[] dimensions = size.split("x");
+        mWidth = Integer.parseInt(dimensions[0]);
+        mHeight = Integer.parseInt(dimensions[1]);
+
+        final Random random = new Random(42);
+        mPixels = new int[mWidth * mHeight];
+        for (int i = 0; i < mPixels.length; i++) {
+            mPixels[i] = 0xff000000 | random.nextInt();
+        }
+        mLuminance = new byte[mWidth * mHeight];
+        GrayscaleStackBlur.toLuminance(mPixels, mLuminance);
+
+        final int[] lut = new int[256];
+        for (int i = 0; i < lut.length; i++) {
+            lut[i] = i * 3 / 4;
+        }
+        mPostProcess = new PixelPostProcess() {
+            @Override
+            public int apply(int pixel, int red, int green, int blue) {
+                return (0xff000000 & pixel) | (lut[red] << 16) | (lut[green] << 8) | lut[blue];
+            }
+        };
+    }
+
+    /**
+     * FastBlur backend.
+     *
+     * @return blurred pixels.
+     */
+    @Benchmark
+    public int[] fastBlur() {
+        StackBlur.blur(mPixels, mWidth, mHeight, radius, null);
+        return mPixels;
+    }
+
+    /**
+     * FastBlur backend with a post processing fused with the final pass.
+     *
+     * @return blurred pixels.
+     */
+    @Benchmark
+    public int[] fastBlurPostProcess() {
+        StackBlur.blur(mPixels, mWidth, mHeight, radius, mPostProcess);
+        return mPixels;
+    }
+
+    /**
+     * Grayscale backend, luminance conversion included.
+     *
+     * @return blurred luminance.
+     */
+    @Benchmark
+    public byte[] grayscale() {
+        GrayscaleStackBlur.toLuminance(mPixels, mLuminance);
+        GrayscaleStackBlur.blur(mLuminance, mWidth, mHeight, radius);
+        return mLuminance;
+    }
+}
@@ -0,0 +1,175 @@
+package fr.tvbarthel.lib.blurdialogfragment.core;
+
+/**
+ * Stack blur of a single 8 bits channel, independent of the Android framework.
+ * <p/>
+ * Single channel port of {@link StackBlur}, a third of the work of a color blur.
+ */
+public final class GrayscaleStackBlur {
+
+    /**
+     * Non instantiable class.
+     */
+    private GrayscaleStackBlur() {
+
+    }
+
+    /**
+     * Compute the luminance of a pixel.
+     *
+     * @param pixel color of the pixel, packed as 0xAARRGGBB.
+     * @return luminance of the pixel, from 0 to 255.
+     */
+    public static int luminance(int pixel) {
+        // ITU-R BT.601 luma, weights scaled to 256.
+        return (77 * ((pixel >> 16) & 0xff) + 150 * ((pixel >> 8) & 0xff) + 29 * (pixel & 0xff)) >> 8;
+    }
+
+    /**
+     * Convert pixels to their luminance.
+     *
+     * @param pix       pixels, packed as 0xAARRGGBB.
+     * @param luminance unsigned luminance of each pixel, at least as long as the pixels.
+     */
+    public static void toLuminance(int[] pix, byte[] luminance) {
+        for (int i = 0; i < pix.length; i++) {
+            luminance[i] = (byte) luminance(pix[i]);
+        }
+    }
+
+    /**
+     * Blur a single channel in place.
+     *
+     * @param pix    unsigned channel values to blur.
+     * @param w      width of the channel.
+     * @param h      height of the channel.
+     * @param radius blur radius
+     */
+    public static void blur(byte[] pix, int w, int h, int radius) {
+        if (radius < 1) {
+            return;
+        }
+        final byte[] horizontal = new byte[w * h];
+        blurHorizontally(pix, horizontal, w, h, radius);
+        blurVertically(horizontal, pix, w, h, radius);
+    }
+
+    /**
+     * Apply the horizontal pass of the blur.
+     *
+     * @param src    unsigned channel values to blur, left untouched.
+     * @param dst    horizontally blurred values.
+     * @param w      width of the channel.
+     * @param h      height of the channel.
+     * @param radius blur radius
+     */
+    public static void blurHorizontally(byte[] src, byte[] dst, int w, int h, int radius) {
+        final int wm = w - 1;
+        final int div = radius + radius + 1;
+        final int divsum = (radius + 1) * (radius + 1);
+        final int r1 = radius + 1;
+        final int[] stack = new int[div];
+
+        int sum;
+        int insum;
+        int outsum;
+        int stackpointer;
+        int stackstart;
+        int value;
+
+        for (int y = 0; y < h; y++) {
+            final int yw = y * w;
+            sum = 0;
+            insum = 0;
+            outsum = 0;
+            for (int i = -radius; i <= radius; i++) {
+                value = src[yw + Math.min(wm, Math.max(i, 0))] & 0xff;
+                stack[i + radius] = value;
+                sum += value * (r1 - Math.abs(i));
+                if (i > 0) {
+                    insum += value;
+                } else {
+                    outsum += value;
+                }
+            }
+            stackpointer = radius;
+
+            for (int x = 0; x < w; x++) {
+                dst[yw + x] = (byte) (sum / divsum);
+                sum -= outsum;
+
+                stackstart = (stackpointer - radius + div) % div;
+                outsum -= stack[stackstart];
+
+                value = src[yw + Math.min(x + radius + 1, wm)] & 0xff;
+                stack[stackstart] = value;
+                insum += value;
+                sum += insum;
+
+                stackpointer = (stackpointer + 1) % div;
+                value = stack[stackpointer];
+                outsum += value;
+                insum -= value;
+            }
+        }
+    }
+
+    /**
+     * Apply the vertical pass of the blur, once the horizontal one applied.
+     *
+     * @param src    horizontally blurred values, left untouched.
+     * @param dst    blurred values.
+     * @param w      width of the channel.
+     * @param h      height of the channel.
+     * @param radius blur radius
+     */
+    public static void blurVertically(byte[] src, byte[] dst, int w, int h, int radius) {
+        final int hm = h - 1;
+        final int div = radius + radius + 1;
+        final int divsum = (radius + 1) * (radius + 1);
+        final int r1 = radius + 1;
+        final int[] stack = new int[div];
+
+        int sum;
+        int insum;
+        int outsum;
+        int stackpointer;
+        int stackstart;
+        int value;
+
+        for (int x = 0; x < w; x++) {
+            sum = 0;
+            insum = 0;
+            outsum = 0;
+            for (int i = -radius; i <= radius; i++) {
+                value = src[Math.min(hm, Math.max(i, 0)) * w + x] & 0xff;
+                stack[i + radius] = value;
+                sum += value * (r1 - Math.abs(i));
+                if (i > 0) {
+                    insum += value;
+                } else {
+                    outsum += value;
+                }
+            }
+            stackpointer = radius;
+
+            for (int y = 0; y < h; y++) {
+                dst[y * w + x] = (byte) (sum / divsum);
+                sum -= outsum;
+
+                stackstart = (stackpointer - radius + div) % div;
+                outsum -= stack[stackstart];
+
+                value = src[Math.min(y + r1, hm) * w + x] & 0xff;
+                stack[stackstart] = value;
+                insum += value;
+                sum += insum;
+
+                stackpointer = (stackpointer + 1) % div;
+                value = stack[stackpointer];
+                outsum += value;
+                insum -= value;
+            }
+        }
+    }
+}
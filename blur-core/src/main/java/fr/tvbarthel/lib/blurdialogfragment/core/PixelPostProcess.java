@@ -0,0 +1,18 @@
+package fr.tvbarthel.lib.blurdialogfragment.core;
+
+/**
+ * Post processing fused with the final write of a blur, to avoid an additional pass.
+ */
+public interface PixelPostProcess {
+
+    /**
+     * Compose a final pixel from its blurred channels.
+     *
+     * @param pixel original pixel, its alpha should be preserved.
+     * @param red   blurred red channel.
+     * @param green blurred green channel.
+     * @param blue  blurred blue channel.
+     * @return post processed pixel.
+     */
+    int apply(int pixel, int red, int green, int blue);
+}
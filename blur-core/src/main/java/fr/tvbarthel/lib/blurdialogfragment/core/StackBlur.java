@@ -0,0 +1,356 @@
+package fr.tvbarthel.lib.blurdialogfragment.core;
+
+import java.nio.IntBuffer;
+
+/**
+ * Stack blur of 32 bits pixels, independent of the Android framework.
+ * <p/>
+ * Pixels are packed as 0xAARRGGBB, the alpha channel is preserved. The blur is applied in place,
+ * as a horizontal pass followed by a vertical pass, each pass being exposed on its own so that
+ * the callers can trace or measure them.
+ */
+public final class StackBlur {
+
+    /**
+     * Division table of the last blur, reused as long as the radius doesn't change.
+     */
+    private static volatile int[] sDivisionTable;
+
+    /**
+     * Non instantiable class.
+     */
+    private StackBlur() {
+
+    }
+
+    /**
+     * Blur the given pixels in place.
+     *
+     * @param pix         pixels to blur
+     * @param w           width of the pixels
+     * @param h           height of the pixels
+     * @param radius      blur radius
+     * @param postProcess post processing applied while writing the blurred pixels, can be null
+     */
+    public static void blur(int[] pix, int w, int h, int radius, PixelPostProcess postProcess) {
+        if (radius < 1) {
+            return;
+        }
+        blurHorizontally(pix, w, h, radius);
+        blurVertically(pix, w, h, radius, postProcess);
+    }
+
+    /**
+     * Blur the given pixels in place.
+     * <p/>
+     * Direct buffers, or buffers which don't start at the beginning of their array, are copied
+     * to a temporary array.
+     *
+     * @param pixels      pixels to blur, from the position of the buffer.
+     * @param w           width of the pixels
+     * @param h           height of the pixels
+     * @param radius      blur radius
+     * @param postProcess post processing applied while writing the blurred pixels, can be null
+     */
+    public static void blur(IntBuffer pixels, int w, int h, int radius, PixelPostProcess postProcess) {
+        if (pixels.hasArray() && pixels.arrayOffset() == 0 && pixels.position() == 0) {
+            blur(pixels.array(), w, h, radius, postProcess);
+            return;
+        }
+        final int position = pixels.position();
+        final int[] pix = new int[w * h];
+        pixels.get(pix);
+        blur(pix, w, h, radius, postProcess);
+        pixels.position(position);
+        pixels.put(pix);
+        pixels.position(position);
+    }
+
+    /**
+     * Apply the horizontal pass of the blur in place.
+     *
+     * @param pix    pixels to blur
+     * @param w      width of the pixels
+     * @param h      height of the pixels
+     * @param radius blur radius
+     */
+    public static void blurHorizontally(int[] pix, int w, int h, int radius) {
+        if (radius < 1) {
+            return;
+        }
+
+        // Stack Blur v1.0 from
+        // http://www.quasimondo.com/StackBlurForCanvas/StackBlurDemo.html
+        //
+        // Java Author: Mario Klingemann <mario at quasimondo.com>
+        // http://incubator.quasimondo.com
+        // created Feburary 29, 2004
+        // Android port : Yahel Bouaziz <yahel at kayenko.com>
+        // http://www.kayenko.com
+        // ported April 5th, 2012
+        // Single buffer tweak by Thomas Barthelemy <thomas.barthelemy.utc at gmail.com>
+        // http://tvbarthel.fr/
+        // modified April 27th, 2016
+
+        // This is a compromise between Gaussian Blur and Box blur
+        // It creates much better looking blurs than Box Blur, but is
+        // 7x faster than my Gaussian Blur implementation.
+        //
+        // I called it Stack Blur because this describes best how this
+        // filter works internally: it creates a kind of moving stack
+        // of colors whilst scanning through the image. Thereby it
+        // just has to add one new block of color to the right side
+        // of the stack and remove the leftmost color. The remaining
+        // colors on the topmost layer of the stack are either added on
+        // or reduced by one, depending on if they are on the right or
+        // on the left side of the stack.
+        //
+        // If you are using this algorithm in your code please add
+        // the following line:
+        //
+        // Stack Blur Algorithm by Mario Klingemann <mario@quasimondo.com>
+
+        int wm = w - 1;
+        int div = radius + radius + 1;
+
+        int rsum, gsum, bsum, x, y, i, p, yi, yw;
+        int vmin[] = new int[w];
+
+        int dv[] = getDivisionTable(radius);
+
+        yw = yi = 0;
+
+        int[][] stack = new int[div][3];
+        int stackpointer;
+        int stackstart;
+        int[] sir;
+        int rbs;
+        int r1 = radius + 1;
+        int routsum, goutsum, boutsum;
+        int rinsum, ginsum, binsum;
+
+        for (y = 0; y < h; y++) {
+            rinsum = ginsum = binsum = routsum = goutsum = boutsum = rsum = gsum = bsum = 0;
+            for (i = -radius; i <= radius; i++) {
+                p = pix[yi + Math.min(wm, Math.max(i, 0))];
+                sir = stack[i + radius];
+                sir[0] = (p & 0xff0000) >> 16;
+                sir[1] = (p & 0x00ff00) >> 8;
+                sir[2] = (p & 0x0000ff);
+                rbs = r1 - Math.abs(i);
+                rsum += sir[0] * rbs;
+                gsum += sir[1] * rbs;
+                bsum += sir[2] * rbs;
+                if (i > 0) {
+                    rinsum += sir[0];
+                    ginsum += sir[1];
+                    binsum += sir[2];
+                } else {
+                    routsum += sir[0];
+                    goutsum += sir[1];
+                    boutsum += sir[2];
+                }
+            }
+            stackpointer = radius;
+
+            for (x = 0; x < w; x++) {
+
+                pix[yi] = (0xff000000 & pix[yi]) | (dv[rsum] << 16) | (dv[gsum] << 8) | dv[bsum];
+
+                rsum -= routsum;
+                gsum -= goutsum;
+                bsum -= boutsum;
+
+                stackstart = stackpointer - radius + div;
+                sir = stack[stackstart % div];
+
+                routsum -= sir[0];
+                goutsum -= sir[1];
+                boutsum -= sir[2];
+
+                if (y == 0) {
+                    vmin[x] = Math.min(x + radius + 1, wm);
+                }
+
+                p = pix[yw + vmin[x]];
+
+                sir[0] = (p & 0xff0000) >> 16;
+                sir[1] = (p & 0x00ff00) >> 8;
+                sir[2] = (p & 0x0000ff);
+
+                rinsum += sir[0];
+                ginsum += sir[1];
+                binsum += sir[2];
+
+                rsum += rinsum;
+                gsum += ginsum;
+                bsum += binsum;
+
+                stackpointer = (stackpointer + 1) % div;
+                sir = stack[(stackpointer) % div];
+
+                routsum += sir[0];
+                goutsum += sir[1];
+                boutsum += sir[2];
+
+                rinsum -= sir[0];
+                ginsum -= sir[1];
+                binsum -= sir[2];
+
+                yi++;
+            }
+            yw += w;
+        }
+    }
+
+    /**
+     * Apply the vertical pass of the blur in place, once the horizontal one applied.
+     *
+     * @param pix         pixels to blur
+     * @param w           width of the pixels
+     * @param h           height of the pixels
+     * @param radius      blur radius
+     * @param postProcess post processing applied while writing the blurred pixels, can be null
+     */
+    public static void blurVertically(int[] pix, int w, int h, int radius, PixelPostProcess postProcess) {
+        if (radius < 1) {
+            return;
+        }
+
+        int hm = h - 1;
+        int div = radius + radius + 1;
+
+        int px = 0;
+        int rsum, gsum, bsum, x, y, i, p, yp, yi;
+        int vmin[] = new int[h];
+
+        int dv[] = getDivisionTable(radius);
+
+        int[][] stack = new int[div][3];
+        int stackpointer;
+        int stackstart;
+        int[] sir;
+        int rbs;
+        int r1 = radius + 1;
+        int routsum, goutsum, boutsum;
+        int rinsum, ginsum, binsum;
+
+        for (x = 0; x < w; x++) {
+            rinsum = ginsum = binsum = routsum = goutsum = boutsum = rsum = gsum = bsum = 0;
+            yp = -radius * w;
+            for (i = -radius; i <= radius; i++) {
+                yi = Math.max(0, yp) + x;
+
+                sir = stack[i + radius];
+
+                px = pix[yi];
+
+                sir[0] = (px & 0xff0000) >> 16;
+                sir[1] = (px & 0x00ff00) >> 8;
+                sir[2] = (px & 0x0000ff);
+
+                rbs = r1 - Math.abs(i);
+
+                rsum += sir[0] * rbs;
+                gsum += sir[1] * rbs;
+                bsum += sir[2] * rbs;
+
+                if (i > 0) {
+                    rinsum += sir[0];
+                    ginsum += sir[1];
+                    binsum += sir[2];
+                } else {
+                    routsum += sir[0];
+                    goutsum += sir[1];
+                    boutsum += sir[2];
+                }
+
+                if (i < hm) {
+                    yp += w;
+                }
+            }
+            yi = x;
+            stackpointer = radius;
+            for (y = 0; y < h; y++) {
+                // Preserve alpha channel: ( 0xff000000 & pix[yi] )
+                if (postProcess == null) {
+                    pix[yi] = (0xff000000 & pix[yi]) | (dv[rsum] << 16) | (dv[gsum] << 8) | dv[bsum];
+                } else {
+                    // final write of the pixel, post processing is fused here to avoid another pass.
+                    pix[yi] = postProcess.apply(pix[yi], dv[rsum], dv[gsum], dv[bsum]);
+                }
+
+                rsum -= routsum;
+                gsum -= goutsum;
+                bsum -= boutsum;
+
+                stackstart = stackpointer - radius + div;
+                sir = stack[stackstart % div];
+
+                routsum -= sir[0];
+                goutsum -= sir[1];
+                boutsum -= sir[2];
+
+                if (x == 0) {
+                    vmin[y] = Math.min(y + r1, hm) * w;
+                }
+                p = x + vmin[y];
+
+                px = pix[p];
+
+                sir[0] = (px & 0xff0000) >> 16;
+                sir[1] = (px & 0x00ff00) >> 8;
+                sir[2] = (px & 0x0000ff);
+
+                rinsum += sir[0];
+                ginsum += sir[1];
+                binsum += sir[2];
+
+                rsum += rinsum;
+                gsum += ginsum;
+                bsum += binsum;
+
+                stackpointer = (stackpointer + 1) % div;
+                sir = stack[stackpointer];
+
+                routsum += sir[0];
+                goutsum += sir[1];
+                boutsum += sir[2];
+
+                rinsum -= sir[0];
+                ginsum -= sir[1];
+                binsum -= sir[2];
+
+                yi += w;
+            }
+        }
+    }
+
+    /**
+     * Drop the division table kept between blurs, to release memory.
+     */
+    public static void releaseDivisionTable() {
+        sDivisionTable = null;
+    }
+
+    /**
+     * Retrieve the table used to divide the weighted sums of the stack.
+     * <p/>
+     * The table only depends on the radius, it is kept to avoid filling it again for each blur.
+     *
+     * @param radius blur radius
+     * @return division table of the given radius.
+     */
+    private static int[] getDivisionTable(int radius) {
+        int divsum = (radius + 1) * (radius + 1);
+        int[] dv = sDivisionTable;
+        if (dv == null || dv.length != 256 * divsum) {
+            dv = new int[256 * divsum];
+            for (int i = 0; i < 256 * divsum; i++) {
+                dv[i] = (i / divsum);
+            }
+            sDivisionTable = dv;
+        }
+        return dv;
+    }
+}
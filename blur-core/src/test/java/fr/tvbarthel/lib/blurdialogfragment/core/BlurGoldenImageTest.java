@@ -0,0 +1,250 @@
+package fr.tvbarthel.lib.blurdialogfragment.core;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check every registered backend against the reference stack blur, a frozen copy of the first
+ * released FastBlur kernel, on the golden image corpus at many radii.
+ * <p/>
+ * The max and mean per channel errors and the PSNR of each backend are reported, bit-exact
+ * backends must match the reference exactly, the others must meet their own tolerances.
+ */
+public class BlurGoldenImageTest {
+
+    /**
+     * Radii blurred for each image.
+     */
+    static final int[] RADII = new int[]{1, 2, 3, 4, 8, 16, 25};
+
+    /**
+     * Backends checked against the reference.
+     */
+    static final GoldenBlurBackend[] BACKENDS = new GoldenBlurBackend[]{
+        new GoldenBlurBackend("StackBlur", 0, 0) {
+            @Override
+            int[] blur(int[] pixels, int w, int h, int radius) {
+                StackBlur.blur(pixels, w, h, radius, null);
+                return pixels;
+            }
+        },
+        new GoldenBlurBackend("StackBlur passes", 0, 0) {
+            @Override
+            int[] blur(int[] pixels, int w, int h, int radius) {
+                StackBlur.blurHorizontally(pixels, w, h, radius);
+                StackBlur.blurVertically(pixels, w, h, radius, null);
+                return pixels;
+            }
+        },
+        new GoldenBlurBackend("StackBlur heap IntBuffer", 0, 0) {
+            @Override
+            int[] blur(int[] pixels, int w, int h, int radius) {
+                StackBlur.blur(IntBuffer.wrap(pixels), w, h, radius, null);
+                return pixels;
+            }
+        },
+        new GoldenBlurBackend("StackBlur direct IntBuffer", 0, 0) {
+            @Override
+            int[] blur(int[] pixels, int w, int h, int radius) {
+                final IntBuffer buffer = ByteBuffer.allocateDirect(pixels.length * 4).asIntBuffer();
+                buffer.put(pixels);
+                buffer.rewind();
+                StackBlur.blur(buffer, w, h, radius, null);
+                buffer.get(pixels);
+                return pixels;
+            }
+        },
+        new GoldenBlurBackend("StackBlur offset IntBuffer", 0, 0) {
+            @Override
+            int[] blur(int[] pixels, int w, int h, int radius) {
+                final IntBuffer buffer = IntBuffer.allocate(pixels.length + 5);
+                buffer.position(5);
+                buffer.put(pixels);
+                buffer.position(5);
+                StackBlur.blur(buffer.slice(), w, h, radius, null);
+                buffer.position(5);
+                buffer.get(pixels);
+                return pixels;
+            }
+        },
+        new GoldenBlurBackend("Grayscale", 3, 40) {
+            @Override
+            int[] blur(int[] pixels, int w, int h, int radius) {
+                final byte[] luminance = new byte[pixels.length];
+                GrayscaleStackBlur.toLuminance(pixels, luminance);
+                GrayscaleStackBlur.blur(luminance, w, h, radius);
+                for (int i = 0; i < pixels.length; i++) {
+                    pixels[i] = gray(luminance[i] & 0xff);
+                }
+                return pixels;
+            }
+
+            @Override
+            int[] expected(int[] reference) {
+                for (int i = 0; i < reference.length; i++) {
+                    reference[i] = gray(GrayscaleStackBlur.luminance(reference[i]));
+                }
+                return reference;
+            }
+        },
+        new GoldenBlurBackend("StackBlur RGB_565", 8, 35) {
+            @Override
+            int[] blur(int[] pixels, int w, int h, int radius) {
+                for (int i = 0; i < pixels.length; i++) {
+                    pixels[i] = toRgb565(pixels[i]);
+                }
+                StackBlur.blur(pixels, w, h, radius, null);
+                return pixels;
+            }
+        },
+    };
+
+    /**
+     * Images of the corpus.
+     */
+    private static List<GoldenImageCorpus.Image> sCorpus;
+
+    /**
+     * Check every registered backend against the reference stack blur.
+     */
+    public BlurGoldenImageTest() {
+        super();
+    }
+
+    /**
+     * Load the corpus once for all the tests.
+     *
+     * @throws IOException if a screenshot can't be read.
+     */
+    @BeforeClass
+    public static void loadCorpus() throws IOException {
+        sCorpus = GoldenImageCorpus.load();
+    }
+
+    /**
+     * Every backend meets its tolerances on every image and radius.
+     */
+    @Test
+    public void backendsMatchReference() {
+        final List<String> violations = new ArrayList<String>();
+        for (GoldenBlurBackend backend : BACKENDS) {
+            int maxError = 0;
+            double meanErrorSum = 0;
+            double minPsnr = Double.POSITIVE_INFINITY;
+            int cases = 0;
+            for (GoldenImageCorpus.Image image : sCorpus) {
+                for (int radius : RADII) {
+                    final ImageDiff diff = ImageDiff.compare(
+                        backend.expected(reference(image, radius)),
+                        backend.blur(image.copyPixels(), image.getWidth(), image.getHeight(), radius)
+                    );
+                    maxError = Math.max(maxError, diff.getMaxError());
+                    meanErrorSum += diff.getMeanError();
+                    minPsnr = Math.min(minPsnr, diff.getPsnr());
+                    cases++;
+                    if (!backend.accepts(diff)) {
+                        violations.add(backend.getName() + " " + image.getName() + " radius " + radius
+                            + " : " + diff + ", expected " + backend.describeTolerances());
+                    }
+                }
+            }
+            System.out.println(String.format(Locale.US, "%-28s %-26s max=%3d mean=%.3f min psnr=%.2fdB (%d cases)",
+                backend.getName(), backend.describeTolerances(), maxError, meanErrorSum / cases, minPsnr, cases));
+        }
+        assertTrue(violations.size() + " violations :\n" + join(violations), violations.isEmpty());
+    }
+
+    /**
+     * On gray images the luminance is the channels themselves, the grayscale blur must be bit-exact.
+     */
+    @Test
+    public void grayscaleIsBitExactOnGrayImages() {
+        final GoldenBlurBackend grayscale = getBackend("Grayscale");
+        for (GoldenImageCorpus.Image image : sCorpus) {
+            if (!image.getName().startsWith("grayNoise") && !image.getName().startsWith("checkerboard")) {
+                continue;
+            }
+            for (int radius : RADII) {
+                final ImageDiff diff = ImageDiff.compare(
+                    reference(image, radius),
+                    grayscale.blur(image.copyPixels(), image.getWidth(), image.getHeight(), radius)
+                );
+                assertTrue(image.getName() + " radius " + radius + " : " + diff, diff.isExact());
+            }
+        }
+    }
+
+    /**
+     * Retrieve a registered backend.
+     *
+     * @param name name of the backend.
+     * @return backend.
+     */
+    private static GoldenBlurBackend getBackend(String name) {
+        for (GoldenBlurBackend backend : BACKENDS) {
+            if (backend.getName().equals(name)) {
+                return backend;
+            }
+        }
+        throw new IllegalArgumentException("Unknown backend " + name);
+    }
+
+    /**
+     * Blur an image with the reference stack blur.
+     *
+     * @param image  image of the corpus.
+     * @param radius blur radius.
+     * @return blurred pixels.
+     */
+    private static int[] reference(GoldenImageCorpus.Image image, int radius) {
+        final int[] pixels = image.copyPixels();
+        BaselineStackBlur.blur(pixels, image.getWidth(), image.getHeight(), radius);
+        return pixels;
+    }
+
+    /**
+     * Build an opaque gray pixel.
+     *
+     * @param value gray level, from 0 to 255.
+     * @return pixel packed as 0xAARRGGBB.
+     */
+    static int gray(int value) {
+        return 0xff000000 | value << 16 | value << 8 | value;
+    }
+
+    /**
+     * Round trip a pixel through RGB_565, expanded back by bit replication.
+     *
+     * @param pixel pixel packed as 0xAARRGGBB.
+     * @return pixel as stored by a RGB_565 bitmap, packed as 0xAARRGGBB.
+     */
+    static int toRgb565(int pixel) {
+        final int r = (pixel >> 19) & 0x1f;
+        final int g = (pixel >> 10) & 0x3f;
+        final int b = (pixel >> 3) & 0x1f;
+        return (pixel & 0xff000000) | ((r << 3) | (r >> 2)) << 16 | ((g << 2) | (g >> 4)) << 8 | ((b << 3) | (b >> 2));
+    }
+
+    /**
+     * Join lines.
+     *
+     * @param lines lines to join.
+     * @return lines separated by new lines.
+     */
+    private static String join(List<String> lines) {
+        final StringBuilder builder = new StringBuilder();
+        for (String line : lines) {
+            builder.append(line).append('\n');
+        }
+        return builder.toString();
+    }
+}
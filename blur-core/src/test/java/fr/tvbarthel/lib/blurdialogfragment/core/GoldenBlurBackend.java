@@ -0,0 +1,103 @@
+package fr.tvbarthel.lib.blurdialogfragment.core;
+
+/**
+ * Blur backend checked against the reference stack blur, {@link BaselineStackBlur}, by
+ * {@link BlurGoldenImageTest}.
+ * <p/>
+ * Register a new backend, or a new variant of a kernel, in {@link BlurGoldenImageTest#BACKENDS}
+ * along with the tolerances it must meet.
+ */
+abstract class GoldenBlurBackend {
+
+    /**
+     * Name of the backend, used in the reports.
+     */
+    private final String mName;
+
+    /**
+     * Largest difference allowed for a channel, 0 for a bit-exact backend.
+     */
+    private final int mMaxError;
+
+    /**
+     * Smallest peak signal to noise ratio allowed, in dB.
+     */
+    private final double mMinPsnr;
+
+    /**
+     * Blur backend checked against the reference stack blur.
+     *
+     * @param name     name of the backend.
+     * @param maxError largest difference allowed for a channel, 0 for a bit-exact backend.
+     * @param minPsnr  smallest peak signal to noise ratio allowed, in dB, ignored if bit-exact.
+     */
+    GoldenBlurBackend(String name, int maxError, double minPsnr) {
+        mName = name;
+        mMaxError = maxError;
+        mMinPsnr = minPsnr;
+    }
+
+    /**
+     * Blur the given pixels.
+     *
+     * @param pixels pixels packed as 0xAARRGGBB, can be blurred in place.
+     * @param w      width of the pixels.
+     * @param h      height of the pixels.
+     * @param radius blur radius.
+     * @return blurred pixels, packed as 0xAARRGGBB.
+     */
+    abstract int[] blur(int[] pixels, int w, int h, int radius);
+
+    /**
+     * Build the expected result from the reference blur.
+     * <p/>
+     * The reference blur is expected as is, backends producing another kind of pixels, such as the
+     * luminance, convert it.
+     *
+     * @param reference pixels blurred by the reference stack blur, can be converted in place.
+     * @return expected pixels.
+     */
+    int[] expected(int[] reference) {
+        return reference;
+    }
+
+    /**
+     * Retrieve the name of the backend.
+     *
+     * @return name used in the reports.
+     */
+    String getName() {
+        return mName;
+    }
+
+    /**
+     * Check if the backend must match the reference exactly.
+     *
+     * @return true if bit-exact.
+     */
+    boolean isBitExact() {
+        return mMaxError == 0;
+    }
+
+    /**
+     * Check a result against the tolerances of the backend.
+     *
+     * @param diff difference with the expected result.
+     * @return true if within the tolerances.
+     */
+    boolean accepts(ImageDiff diff) {
+        if (isBitExact()) {
+            return diff.isExact();
+        }
+        return diff.getMaxError() <= mMaxError && diff.getPsnr() >= mMinPsnr;
+    }
+
+    /**
+     * Describe the tolerances of the backend.
+     *
+     * @return tolerances, used in the reports.
+     */
+    String describeTolerances() {
+        return isBitExact() ? "bit-exact" : "max<=" + mMaxError + " psnr>=" + mMinPsnr + "dB";
+    }
+}
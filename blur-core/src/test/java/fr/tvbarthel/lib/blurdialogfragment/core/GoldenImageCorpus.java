@@ -0,0 +1,218 @@
+package fr.tvbarthel.lib.blurdialogfragment.core;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Images blurred by the golden image tests : synthetic patterns and real screenshots, at the
+ * sizes of down scaled backgrounds.
+ */
+final class GoldenImageCorpus {
+
+    /**
+     * System property holding the directory of the screenshots.
+     */
+    static final String CORPUS_DIR_PROPERTY = "blur.corpus.dir";
+
+    /**
+     * Screenshots of the corpus, not blurred yet.
+     */
+    static final String[] SCREENSHOTS = new String[]{"full_screen.png", "action_bar.png"};
+
+    /**
+     * Down scale factors applied to the screenshots, as the engine does.
+     */
+    static final int[] DOWN_SCALE_FACTORS = new int[]{2, 4, 8};
+
+    /**
+     * Sizes of the synthetic images, as {width, height}, edge cases included.
+     */
+    static final int[][] SYNTHETIC_SIZES = new int[][]{{1, 1}, {7, 3}, {3, 7}, {64, 64}, {135, 240}, {270, 480}};
+
+    /**
+     * Non instantiable class.
+     */
+    private GoldenImageCorpus() {
+
+    }
+
+    /**
+     * Build the whole corpus.
+     *
+     * @return images of the corpus.
+     * @throws IOException if a screenshot can't be read.
+     */
+    static List<Image> load() throws IOException {
+        final List<Image> images = new ArrayList<Image>();
+        for (int[] size : SYNTHETIC_SIZES) {
+            images.addAll(synthetic(size[0], size[1]));
+        }
+
+        final File dir = new File(System.getProperty(CORPUS_DIR_PROPERTY, "../static"));
+        for (String screenshot : SCREENSHOTS) {
+            final BufferedImage source = ImageIO.read(new File(dir, screenshot));
+            if (source == null) {
+                throw new IOException("Can't read " + screenshot + " from " + dir.getAbsolutePath());
+            }
+            for (int factor : DOWN_SCALE_FACTORS) {
+                images.add(downScale(screenshot + "/" + factor, source, factor));
+            }
+        }
+        return images;
+    }
+
+    /**
+     * Build the synthetic images of a given size.
+     *
+     * @param w width of the images.
+     * @param h height of the images.
+     * @return gradient, stripes, checkerboard, noise, gray noise and solid images.
+     */
+    static List<Image> synthetic(int w, int h) {
+        final String size = w + "x" + h;
+        final Random random = new Random(w * 31 + h);
+        final int[] gradient = new int[w * h];
+        final int[] stripes = new int[w * h];
+        final int[] checkerboard = new int[w * h];
+        final int[] noise = new int[w * h];
+        final int[] grayNoise = new int[w * h];
+        final int[] solid = new int[w * h];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                final int i = y * w + x;
+                gradient[i] = 0xff000000 | (x * 255 / Math.max(1, w - 1)) << 16
+                    | (y * 255 / Math.max(1, h - 1)) << 8 | ((x + y) * 255 / Math.max(1, w + h - 2));
+                stripes[i] = (y / 4) % 2 == 0 ? 0xff202020 : 0xffe0f0ff;
+                checkerboard[i] = ((x / 8) + (y / 8)) % 2 == 0 ? 0xff000000 : 0xffffffff;
+                noise[i] = 0xff000000 | random.nextInt(0x1000000);
+                final int gray = random.nextInt(256);
+                grayNoise[i] = 0xff000000 | gray << 16 | gray << 8 | gray;
+                solid[i] = 0xff3f51b5;
+            }
+        }
+        final List<Image> images = new ArrayList<Image>();
+        images.add(new Image("gradient/" + size, gradient, w, h));
+        images.add(new Image("stripes/" + size, stripes, w, h));
+        images.add(new Image("checkerboard/" + size, checkerboard, w, h));
+        images.add(new Image("noise/" + size, noise, w, h));
+        images.add(new Image("grayNoise/" + size, grayNoise, w, h));
+        images.add(new Image("solid/" + size, solid, w, h));
+        return images;
+    }
+
+    /**
+     * Down scale a screenshot by averaging blocks of pixels.
+     *
+     * @param name   name of the image.
+     * @param source screenshot.
+     * @param factor down scale factor.
+     * @return down scaled opaque image.
+     */
+    private static Image downScale(String name, BufferedImage source, int factor) {
+        final int w = source.getWidth() / factor;
+        final int h = source.getHeight() / factor;
+        final int[] full = source.getRGB(0, 0, w * factor, h * factor, null, 0, w * factor);
+        final int[] pixels = new int[w * h];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int r = 0;
+                int g = 0;
+                int b = 0;
+                for (int dy = 0; dy < factor; dy++) {
+                    for (int dx = 0; dx < factor; dx++) {
+                        final int p = full[(y * factor + dy) * w * factor + x * factor + dx];
+                        r += (p >> 16) & 0xff;
+                        g += (p >> 8) & 0xff;
+                        b += p & 0xff;
+                    }
+                }
+                final int count = factor * factor;
+                pixels[y * w + x] = 0xff000000 | (r / count) << 16 | (g / count) << 8 | (b / count);
+            }
+        }
+        return new Image(name, pixels, w, h);
+    }
+
+    /**
+     * Image of the corpus.
+     */
+    static final class Image {
+
+        /**
+         * Name of the image, used in the reports.
+         */
+        private final String mName;
+
+        /**
+         * Pixels packed as 0xAARRGGBB.
+         */
+        private final int[] mPixels;
+
+        /**
+         * Width of the image.
+         */
+        private final int mWidth;
+
+        /**
+         * Height of the image.
+         */
+        private final int mHeight;
+
+        /**
+         * Image of the corpus.
+         *
+         * @param name   name of the image.
+         * @param pixels pixels packed as 0xAARRGGBB.
+         * @param width  width of the image.
+         * @param height height of the image.
+         */
+        Image(String name, int[] pixels, int width, int height) {
+            mName = name;
+            mPixels = pixels;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        /**
+         * Retrieve the name of the image.
+         *
+         * @return name used in the reports.
+         */
+        String getName() {
+            return mName;
+        }
+
+        /**
+         * Retrieve a copy of the pixels, free to be blurred in place.
+         *
+         * @return pixels packed as 0xAARRGGBB.
+         */
+        int[] copyPixels() {
+            return mPixels.clone();
+        }
+
+        /**
+         * Retrieve the width of the image.
+         *
+         * @return width in pixels.
+         */
+        int getWidth() {
+            return mWidth;
+        }
+
+        /**
+         * Retrieve the height of the image.
+         *
+         * @return height in pixels.
+         */
+        int getHeight() {
+            return mHeight;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package fr.tvbarthel.lib.blurdialogfragment.core;
+
+/**
+ * Per channel difference between a blurred image and its reference, alpha excluded.
+ */
+final class ImageDiff {
+
+    /**
+     * Largest difference of a channel, from 0 to 255.
+     */
+    private final int mMaxError;
+
+    /**
+     * Mean difference of the channels.
+     */
+    private final double mMeanError;
+
+    /**
+     * Peak signal to noise ratio in dB, infinite if the images are identical.
+     */
+    private final double mPsnr;
+
+    /**
+     * Per channel difference between a blurred image and its reference.
+     *
+     * @param maxError  largest difference of a channel.
+     * @param meanError mean difference of the channels.
+     * @param psnr      peak signal to noise ratio in dB.
+     */
+    private ImageDiff(int maxError, double meanError, double psnr) {
+        mMaxError = maxError;
+        mMeanError = meanError;
+        mPsnr = psnr;
+    }
+
+    /**
+     * Compare two images.
+     *
+     * @param expected reference pixels, packed as 0xAARRGGBB.
+     * @param actual   pixels to compare, packed as 0xAARRGGBB.
+     * @return difference of the red, green and blue channels.
+     */
+    static ImageDiff compare(int[] expected, int[] actual) {
+        if (expected.length != actual.length) {
+            throw new IllegalArgumentException("Size mismatch : " + expected.length + " != " + actual.length);
+        }
+        int maxError = 0;
+        long errorSum = 0;
+        long squaredErrorSum = 0;
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                final int error = Math.abs(((expected[i] >> shift) & 0xff) - ((actual[i] >> shift) & 0xff));
+                maxError = Math.max(maxError, error);
+                errorSum += error;
+                squaredErrorSum += error * error;
+            }
+        }
+        final double channels = expected.length * 3.0;
+        final double mse = squaredErrorSum / channels;
+        final double psnr = mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255.0 * 255.0 / mse);
+        return new ImageDiff(maxError, errorSum / channels, psnr);
+    }
+
+    /**
+     * Retrieve the largest difference of a channel.
+     *
+     * @return from 0 to 255.
+     */
+    int getMaxError() {
+        return mMaxError;
+    }
+
+    /**
+     * Retrieve the mean difference of the channels.
+     *
+     * @return from 0 to 255.
+     */
+    double getMeanError() {
+        return mMeanError;
+    }
+
+    /**
+     * Retrieve the peak signal to noise ratio.
+     *
+     * @return psnr in dB, infinite if the images are identical.
+     */
+    double getPsnr() {
+        return mPsnr;
+    }
+
+    /**
+     * Check if the images are identical.
+     *
+     * @return true if no channel differs.
+     */
+    boolean isExact() {
+        return mMaxError == 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(java.util.Locale.US, "max=%d mean=%.3f psnr=%.2fdB", mMaxError, mMeanError, mPsnr);
+    }
+}
@@ -0,0 +1,298 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Blur many bitmaps, or many regions of a bitmap, with the same parameters, for instance a list of
+ * thumbnails or the backgrounds of a set of cards.
+ * <p/>
+ * Items are spread across the blur threads of the library and the calling thread. Each thread
+ * keeps a single pixel buffer, large enough for the largest item, and the lookup tables of the
+ * blur are shared since every item uses the same radius.
+ * <p/>
+ * RenderScript already spreads each blur across the cores, items are then blurred one after the
+ * other on the calling thread, a pixel buffer is only borrowed if RenderScript fails.
+ */
+public final class BlurBatch {
+
+    /**
+     * Default down scale factor, items are blurred at their own size.
+     */
+    static final float DEFAULT_DOWN_SCALE_FACTOR = 1.0f;
+
+    /**
+     * Largest radius supported by RenderScript, larger radius are blurred with the fast blur.
+     */
+    static final int MAX_RENDER_SCRIPT_RADIUS = 25;
+
+    /**
+     * Application context, used by RenderScript.
+     */
+    private final Context mContext;
+
+    /**
+     * Radius used to blur the items.
+     */
+    private int mBlurRadius = BlurDialogEngine.DEFAULT_BLUR_RADIUS;
+
+    /**
+     * Factor used to down scale the items before blurring them.
+     */
+    private float mDownScaleFactor = DEFAULT_DOWN_SCALE_FACTOR;
+
+    /**
+     * Boolean used to know if RenderScript should be used.
+     */
+    private boolean mUseRenderScript = BlurDialogEngine.DEFAULT_USE_RENDERSCRIPT;
+
+    /**
+     * Blur many bitmaps with the same parameters.
+     *
+     * @param context any context.
+     */
+    public BlurBatch(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Set the radius used to blur the items.
+     * <p/>
+     * By default radius is set to {@link BlurDialogEngine#DEFAULT_BLUR_RADIUS}
+     *
+     * @param radius blur radius, strictly positive.
+     */
+    public void setBlurRadius(int radius) {
+        if (radius <= 0) {
+            throw new IllegalArgumentException("Blur radius must be strictly positive. Found : " + radius);
+        }
+        mBlurRadius = radius;
+    }
+
+    /**
+     * Set the factor used to down scale the items before blurring them, the blurred bitmaps are
+     * as small.
+     * <p/>
+     * By default down scale factor is set to {@link BlurBatch#DEFAULT_DOWN_SCALE_FACTOR}
+     *
+     * @param factor down scale factor, at least 1.
+     */
+    public void setDownScaleFactor(float factor) {
+        if (factor < 1.0f) {
+            throw new IllegalArgumentException("Down scale must be at least 1.0. Found : " + factor);
+        }
+        mDownScaleFactor = factor;
+    }
+
+    /**
+     * Enable / disable the use of RenderScript.
+     * <p/>
+     * By default RenderScript is set to {@link BlurDialogEngine#DEFAULT_USE_RENDERSCRIPT}
+     *
+     * @param useRenderScript true to use RenderScript.
+     */
+    public void setUseRenderScript(boolean useRenderScript) {
+        mUseRenderScript = useRenderScript;
+    }
+
+    /**
+     * Blur the given bitmaps.
+     * <p/>
+     * Blocks until every bitmap is blurred, mustn't be called from the ui thread.
+     *
+     * @param bitmaps bitmaps to blur, left untouched.
+     * @return new blurred bitmaps, in the same order.
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     * @throws ExecutionException   if an item failed to be blurred, the cause is the original failure.
+     */
+    public List<Bitmap> blur(List<Bitmap> bitmaps) throws InterruptedException, ExecutionException {
+        return blur(bitmaps.toArray(new Bitmap[bitmaps.size()]), new Rect[bitmaps.size()]);
+    }
+
+    /**
+     * Blur regions of the given bitmap.
+     * <p/>
+     * Blocks until every region is blurred, mustn't be called from the ui thread.
+     *
+     * @param source  bitmap holding the regions, left untouched.
+     * @param regions regions of the bitmap to blur.
+     * @return new blurred bitmaps, one per region in the same order.
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     * @throws ExecutionException   if an item failed to be blurred, the cause is the original failure.
+     */
+    public List<Bitmap> blur(Bitmap source, List<Rect> regions) throws InterruptedException, ExecutionException {
+        final Bitmap[] sources = new Bitmap[regions.size()];
+        Arrays.fill(sources, source);
+        return blur(sources, regions.toArray(new Rect[regions.size()]));
+    }
+
+    /**
+     * Blur the given items across the blur threads and the calling thread.
+     *
+     * @param sources bitmaps of the items.
+     * @param regions regions of the items, null for whole bitmaps.
+     * @return new blurred bitmaps.
+     * @throws InterruptedException if the calling thread is interrupted while waiting.
+     * @throws ExecutionException   if an item failed to be blurred, the blurred items are recycled.
+     */
+    private List<Bitmap> blur(final Bitmap[] sources, final Rect[] regions)
+        throws InterruptedException, ExecutionException {
+        final int itemCount = sources.length;
+        if (itemCount == 0) {
+            return new ArrayList<Bitmap>();
+        }
+        final int radius = mBlurRadius;
+        final float downScaleFactor = mDownScaleFactor;
+        final boolean renderScript = mUseRenderScript && radius <= MAX_RENDER_SCRIPT_RADIUS;
+
+        int maxPixelCount = 0;
+        for (int i = 0; i < itemCount; i++) {
+            if (regions[i] == null) {
+                regions[i] = new Rect(0, 0, sources[i].getWidth(), sources[i].getHeight());
+            }
+            final int pixelCount = getScaledSize(regions[i].width(), downScaleFactor)
+                * getScaledSize(regions[i].height(), downScaleFactor);
+            maxPixelCount = Math.max(maxPixelCount, pixelCount);
+        }
+        final int bufferSize = maxPixelCount;
+
+        final Bitmap[] blurred = new Bitmap[itemCount];
+        final AtomicInteger nextItem = new AtomicInteger();
+        final CountDownLatch remainingItems = new CountDownLatch(itemCount);
+        final Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                // items are claimed one at a time, a worker started late may find none left.
+                final int item = nextItem.getAndIncrement();
+                if (item >= itemCount) {
+                    return;
+                }
+                final int[] buffer = renderScript ? null : BlurBufferPool.obtain(bufferSize);
+                boolean completed = false;
+                try {
+                    for (int i = item; i < itemCount; i = nextItem.getAndIncrement()) {
+                        try {
+                            blurred[i] = blurItem(sources[i], regions[i], radius, downScaleFactor,
+                                renderScript, buffer);
+                        } finally {
+                            remainingItems.countDown();
+                        }
+                    }
+                    completed = true;
+                } finally {
+                    if (!completed) {
+                        // the batch failed, the items left are skipped.
+                        for (int i = nextItem.getAndIncrement(); i < itemCount; i = nextItem.getAndIncrement()) {
+                            remainingItems.countDown();
+                        }
+                    }
+                    if (buffer != null) {
+                        BlurBufferPool.recycle(buffer);
+                    }
+                }
+            }
+        };
+
+        // workers run as futures so that their failures reach the calling thread.
+        final int helperCount = renderScript ? 0 : Math.min(itemCount - 1, BlurExecutor.getThreadCount());
+        final List<FutureTask<Void>> workers = new ArrayList<FutureTask<Void>>(helperCount + 1);
+        for (int i = 0; i < helperCount; i++) {
+            final FutureTask<Void> helper = new FutureTask<Void>(worker, null);
+            workers.add(helper);
+            BlurExecutor.execute(helper);
+        }
+        final FutureTask<Void> local = new FutureTask<Void>(worker, null);
+        workers.add(local);
+        local.run();
+        remainingItems.await();
+
+        try {
+            for (FutureTask<Void> future : workers) {
+                // helpers still queued have no item left to blur.
+                if (!future.cancel(false)) {
+                    future.get();
+                }
+            }
+        } catch (ExecutionException e) {
+            for (Bitmap bitmap : blurred) {
+                if (bitmap != null) {
+                    bitmap.recycle();
+                }
+            }
+            throw e;
+        }
+        return Collections.unmodifiableList(Arrays.asList(blurred));
+    }
+
+    /**
+     * Blur a single item.
+     *
+     * @param source          bitmap of the item.
+     * @param region          region of the item.
+     * @param radius          blur radius.
+     * @param downScaleFactor down scale factor.
+     * @param renderScript    true to blur with RenderScript.
+     * @param buffer          pixel buffer large enough for the down scaled item, null with RenderScript.
+     * @return new blurred bitmap.
+     */
+    private Bitmap blurItem(Bitmap source, Rect region, int radius, float downScaleFactor,
+                            boolean renderScript, int[] buffer) {
+        final boolean traced = BlurTrace.begin("BlurBatch item");
+        final int w = getScaledSize(region.width(), downScaleFactor);
+        final int h = getScaledSize(region.height(), downScaleFactor);
+        final Bitmap bitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        int[] pix = buffer;
+        try {
+            if (!renderScript && w == region.width() && h == region.height()) {
+                // no scaling, the pixels are read straight from the source.
+                source.getPixels(pix, 0, w, region.left, region.top, w, h);
+            } else {
+                Paint paint = new Paint();
+                paint.setFlags(Paint.FILTER_BITMAP_FLAG);
+                new Canvas(bitmap).drawBitmap(source, region, new RectF(0, 0, w, h), paint);
+                if (renderScript) {
+                    Bitmap result = RenderScriptBlurHelper.doBlur(bitmap, radius, true, mContext);
+                    if (result != null) {
+                        return result;
+                    }
+                    // RenderScript failed, a buffer is borrowed for the fast blur.
+                    pix = BlurBufferPool.obtain(w * h);
+                }
+                bitmap.getPixels(pix, 0, w, 0, 0, w, h);
+            }
+
+            FastBlurHelper.doBlur(pix, w, h, radius, null);
+            bitmap.setPixels(pix, 0, w, 0, 0, w, h);
+            return bitmap;
+        } finally {
+            if (pix != buffer) {
+                BlurBufferPool.recycle(pix);
+            }
+            BlurTrace.end(traced);
+        }
+    }
+
+    /**
+     * Retrieve the down scaled size of an item.
+     *
+     * @param size            size of the item.
+     * @param downScaleFactor down scale factor.
+     * @return down scaled size, at least 1.
+     */
+    private static int getScaledSize(int size, float downScaleFactor) {
+        return Math.max(1, (int) Math.ceil(size / downScaleFactor));
+    }
+}
@@ -0,0 +1,262 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.LayerDrawable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Pool of the down scaled backgrounds, keeping track of the blurred bitmaps displayed by the engines.
+ * <p/>
+ * A blurred bitmap can be displayed by several engines at once, when a blur is coalesced or a
+ * backdrop is shared. Each engine retains the bitmaps it displays and releases them once its
+ * blurred view is removed. A bitmap released by its last owner is kept for the next blur of the
+ * same size, the same screen being usually blurred again, or recycled right away : its native
+ * memory doesn't wait for the garbage collector.
+ * <p/>
+ * Bitmaps which may still be drawn, for instance by the window of a destroyed activity, are
+ * abandoned instead and left to the garbage collector. The pool is emptied by
+ * {@link BlurMemoryTrimmer} under memory pressure.
+ */
+final class BlurBitmapPool {
+
+    /**
+     * Maximum number of bitmaps kept by the pool.
+     */
+    static final int MAX_POOLED_BITMAPS = 2;
+
+    /**
+     * Bitmaps kept by the pool, null slots are free.
+     */
+    private static final Bitmap[] POOL = new Bitmap[MAX_POOLED_BITMAPS];
+
+    /**
+     * Number of owners of each retained bitmap.
+     */
+    private static final IdentityHashMap<Bitmap, Integer> OWNERS = new IdentityHashMap<Bitmap, Integer>();
+
+    /**
+     * Bytes of the bitmaps allocated because none of the pooled ones matched.
+     */
+    private static long sAllocatedBytes;
+
+    /**
+     * Non instantiable class.
+     */
+    private BlurBitmapPool() {
+
+    }
+
+    /**
+     * Retrieve a mutable bitmap of the given size and config.
+     *
+     * @param width  width of the bitmap.
+     * @param height height of the bitmap.
+     * @param config config of the bitmap.
+     * @return pooled bitmap cleared to transparent if one matches, new bitmap otherwise.
+     */
+    static Bitmap obtain(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = null;
+        synchronized (BlurBitmapPool.class) {
+            for (int i = 0; i < POOL.length && bitmap == null; i++) {
+                if (POOL[i] != null && POOL[i].getWidth() == width && POOL[i].getHeight() == height
+                    && POOL[i].getConfig() == config) {
+                    bitmap = POOL[i];
+                    POOL[i] = null;
+                }
+            }
+        }
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(width, height, config);
+            synchronized (BlurBitmapPool.class) {
+                sAllocatedBytes += bitmap.getRowBytes() * bitmap.getHeight();
+            }
+            return bitmap;
+        }
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * Give back a bitmap nobody displays to the pool, it mustn't be used anymore.
+     * <p/>
+     * When the pool is full, or the bitmap can't be reused, the bitmap is recycled. Ignored if the
+     * bitmap is retained.
+     *
+     * @param bitmap bitmap to give back, can be null.
+     */
+    static synchronized void recycle(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || OWNERS.containsKey(bitmap)) {
+            return;
+        }
+        if (bitmap.isMutable()) {
+            for (int i = 0; i < POOL.length; i++) {
+                if (POOL[i] == bitmap) {
+                    return;
+                }
+            }
+            for (int i = 0; i < POOL.length; i++) {
+                if (POOL[i] == null) {
+                    POOL[i] = bitmap;
+                    return;
+                }
+            }
+        }
+        bitmap.recycle();
+    }
+
+    /**
+     * Add an owner to a displayed bitmap.
+     *
+     * @param bitmap displayed bitmap.
+     */
+    static synchronized void retain(Bitmap bitmap) {
+        final Integer owners = OWNERS.get(bitmap);
+        OWNERS.put(bitmap, owners == null ? 1 : owners + 1);
+    }
+
+    /**
+     * Remove an owner from a bitmap which isn't displayed anymore, the bitmap is given back to the
+     * pool once released by its last owner.
+     *
+     * @param bitmap retained bitmap.
+     */
+    static synchronized void release(Bitmap bitmap) {
+        if (removeOwner(bitmap)) {
+            recycle(bitmap);
+        }
+    }
+
+    /**
+     * Remove an owner from a bitmap which may still be drawn, the bitmap is left to the garbage
+     * collector once abandoned by its last owner.
+     *
+     * @param bitmap retained bitmap.
+     */
+    static synchronized void abandon(Bitmap bitmap) {
+        removeOwner(bitmap);
+    }
+
+    /**
+     * Release each of the given bitmaps, see {@link BlurBitmapPool#release(Bitmap)}.
+     *
+     * @param bitmaps retained bitmaps.
+     */
+    static synchronized void release(List<Bitmap> bitmaps) {
+        for (Bitmap bitmap : bitmaps) {
+            release(bitmap);
+        }
+    }
+
+    /**
+     * Abandon each of the given bitmaps, see {@link BlurBitmapPool#abandon(Bitmap)}.
+     *
+     * @param bitmaps retained bitmaps.
+     */
+    static synchronized void abandon(List<Bitmap> bitmaps) {
+        for (Bitmap bitmap : bitmaps) {
+            abandon(bitmap);
+        }
+    }
+
+    /**
+     * Retrieve the number of bitmaps currently retained.
+     *
+     * @return number of displayed bitmaps.
+     */
+    static synchronized int getRetainedCount() {
+        return OWNERS.size();
+    }
+
+    /**
+     * Retrieve the number of bytes kept by the pool.
+     *
+     * @return pooled bytes.
+     */
+    static synchronized int getPooledBytes() {
+        int bytes = 0;
+        for (Bitmap bitmap : POOL) {
+            if (bitmap != null) {
+                bytes += bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Retrieve the bytes of the bitmaps allocated by {@link BlurBitmapPool#obtain(int, int, Bitmap.Config)}
+     * so far.
+     *
+     * @return allocated bytes.
+     */
+    static synchronized long getAllocatedBytes() {
+        return sAllocatedBytes;
+    }
+
+    /**
+     * Recycle every pooled bitmap.
+     */
+    static synchronized void clear() {
+        for (int i = 0; i < POOL.length; i++) {
+            if (POOL[i] != null) {
+                POOL[i].recycle();
+                POOL[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Retrieve the blurred bitmaps rendered by a drawable built by the library.
+     *
+     * @param drawable drawable of a blurred background, can be null.
+     * @return bitmaps rendered by the drawable, empty for a solid color.
+     */
+    static List<Bitmap> getBitmaps(Drawable drawable) {
+        if (drawable instanceof BitmapDrawable) {
+            final Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            return bitmap == null ? Collections.<Bitmap>emptyList() : Collections.singletonList(bitmap);
+        } else if (drawable instanceof BlurLevelsDrawable) {
+            final List<Bitmap> levels = new ArrayList<Bitmap>();
+            for (Bitmap level : ((BlurLevelsDrawable) drawable).getLevels()) {
+                if (level != null) {
+                    levels.add(level);
+                }
+            }
+            return levels;
+        } else if (drawable instanceof LayerDrawable) {
+            // grayscale blur, rendered over a solid color.
+            final LayerDrawable layers = (LayerDrawable) drawable;
+            final List<Bitmap> bitmaps = new ArrayList<Bitmap>();
+            for (int i = 0; i < layers.getNumberOfLayers(); i++) {
+                bitmaps.addAll(getBitmaps(layers.getDrawable(i)));
+            }
+            return bitmaps;
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Remove an owner from a retained bitmap.
+     *
+     * @param bitmap retained bitmap.
+     * @return true if the bitmap has no owner left.
+     */
+    private static boolean removeOwner(Bitmap bitmap) {
+        final Integer owners = OWNERS.get(bitmap);
+        if (owners == null) {
+            return false;
+        }
+        if (owners > 1) {
+            OWNERS.put(bitmap, owners - 1);
+            return false;
+        }
+        OWNERS.remove(bitmap);
+        return true;
+    }
+}
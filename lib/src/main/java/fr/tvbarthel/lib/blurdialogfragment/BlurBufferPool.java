@@ -0,0 +1,83 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+/**
+ * Pool of the pixel buffers used to blur, shared by the whole process.
+ * <p/>
+ * Blurring a background requires a buffer as large as the down scaled background. Since dialogs
+ * are usually blurred with the same parameters over and over, the buffers are kept once released
+ * and handed back for the following blurs instead of being allocated again. The pool is emptied
+ * by {@link BlurMemoryTrimmer} under memory pressure.
+ */
+final class BlurBufferPool {
+
+    /**
+     * Maximum number of buffers kept by the pool.
+     */
+    static final int MAX_POOLED_BUFFERS = 2;
+
+    /**
+     * Buffers kept by the pool, null slots are free.
+     */
+    private static final int[][] POOL = new int[MAX_POOLED_BUFFERS][];
+
+    /**
+     * Non instantiable class.
+     */
+    private BlurBufferPool() {
+
+    }
+
+    /**
+     * Retrieve a buffer of at least the given size.
+     *
+     * @param size minimal number of pixels.
+     * @return pooled buffer if one is large enough, new buffer otherwise. Content is undefined.
+     */
+    static synchronized int[] obtain(int size) {
+        int best = -1;
+        for (int i = 0; i < POOL.length; i++) {
+            if (POOL[i] != null && POOL[i].length >= size
+                && (best == -1 || POOL[i].length < POOL[best].length)) {
+                best = i;
+            }
+        }
+        if (best == -1) {
+            return new int[size];
+        }
+        int[] buffer = POOL[best];
+        POOL[best] = null;
+        return buffer;
+    }
+
+    /**
+     * Give back a buffer to the pool, it mustn't be used anymore.
+     * <p/>
+     * When the pool is full, the smallest buffer is dropped.
+     *
+     * @param buffer buffer obtained from the pool.
+     */
+    static synchronized void recycle(int[] buffer) {
+        int smallest = -1;
+        for (int i = 0; i < POOL.length; i++) {
+            if (POOL[i] == null) {
+                POOL[i] = buffer;
+                return;
+            }
+            if (smallest == -1 || POOL[i].length < POOL[smallest].length) {
+                smallest = i;
+            }
+        }
+        if (POOL[smallest].length < buffer.length) {
+            POOL[smallest] = buffer;
+        }
+    }
+
+    /**
+     * Drop every pooled buffer.
+     */
+    static synchronized void clear() {
+        for (int i = 0; i < POOL.length; i++) {
+            POOL[i] = null;
+        }
+    }
+}
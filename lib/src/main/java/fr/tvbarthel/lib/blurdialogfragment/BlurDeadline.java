@@ -0,0 +1,156 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Deadline of a blur, followed by a grace period.
+ * <p/>
+ * Notify when the blur isn't ready by the deadline, so that a fallback can be displayed, then
+ * when the grace period is over, so that the blur can be given up. Count the blurs finished
+ * before the deadline, during the grace period and given up across the whole process.
+ * <p/>
+ * Must be used from the ui thread.
+ */
+final class BlurDeadline {
+
+    /**
+     * Number of blurs finished before their deadline.
+     */
+    private static int sHitCount;
+
+    /**
+     * Number of blurs finished during their grace period.
+     */
+    private static int sLateCount;
+
+    /**
+     * Number of blurs given up once their grace period over.
+     */
+    private static int sMissCount;
+
+    /**
+     * Handler used to schedule the deadline and the end of the grace period.
+     */
+    private final Handler mHandler;
+
+    /**
+     * Run when the deadline is reached.
+     */
+    private final Runnable mDeadlineRunnable;
+
+    /**
+     * Run when the grace period is over.
+     */
+    private final Runnable mGracePeriodRunnable;
+
+    /**
+     * Grace period following the deadline, in ms.
+     */
+    private int mGracePeriod;
+
+    /**
+     * True once the deadline has been reached.
+     */
+    private boolean mExpired;
+
+    /**
+     * True while the deadline or the grace period is pending.
+     */
+    private boolean mRunning;
+
+    /**
+     * Deadline of a blur, followed by a grace period.
+     *
+     * @param onDeadline        run when the blur isn't ready by the deadline.
+     * @param onGracePeriodOver run when the blur isn't ready by the end of the grace period.
+     */
+    BlurDeadline(final Runnable onDeadline, final Runnable onGracePeriodOver) {
+        mHandler = new Handler(Looper.getMainLooper());
+        mDeadlineRunnable = new Runnable() {
+            @Override
+            public void run() {
+                mExpired = true;
+                mHandler.postDelayed(mGracePeriodRunnable, mGracePeriod);
+                onDeadline.run();
+            }
+        };
+        mGracePeriodRunnable = new Runnable() {
+            @Override
+            public void run() {
+                mRunning = false;
+                sMissCount++;
+                onGracePeriodOver.run();
+            }
+        };
+    }
+
+    /**
+     * Start to count down.
+     *
+     * @param deadline    delay after which the blur is late, in ms.
+     * @param gracePeriod delay after the deadline after which the blur is given up, in ms.
+     */
+    void start(int deadline, int gracePeriod) {
+        cancel();
+        mGracePeriod = gracePeriod;
+        mExpired = false;
+        mRunning = true;
+        mHandler.postDelayed(mDeadlineRunnable, deadline);
+    }
+
+    /**
+     * Notify that the blur is ready.
+     *
+     * @return true if the blur is ready after the deadline, during the grace period, false otherwise
+     * or if the deadline isn't running.
+     */
+    boolean finish() {
+        if (!mRunning) {
+            return false;
+        }
+        cancel();
+        if (mExpired) {
+            sLateCount++;
+        } else {
+            sHitCount++;
+        }
+        return mExpired;
+    }
+
+    /**
+     * Stop to count down without counting the blur.
+     */
+    void cancel() {
+        mRunning = false;
+        mHandler.removeCallbacks(mDeadlineRunnable);
+        mHandler.removeCallbacks(mGracePeriodRunnable);
+    }
+
+    /**
+     * Retrieve the number of blurs finished before their deadline.
+     *
+     * @return hit count.
+     */
+    static int getHitCount() {
+        return sHitCount;
+    }
+
+    /**
+     * Retrieve the number of blurs finished during their grace period.
+     *
+     * @return late count.
+     */
+    static int getLateCount() {
+        return sLateCount;
+    }
+
+    /**
+     * Retrieve the number of blurs given up once their grace period over.
+     *
+     * @return miss count.
+     */
+    static int getMissCount() {
+        return sMissCount;
+    }
+}
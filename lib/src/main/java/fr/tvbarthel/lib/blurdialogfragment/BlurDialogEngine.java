@@ -2,18 +2,21 @@ package fr.tvbarthel.lib.blurdialogfragment;
 
 import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
 import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
 import android.app.Activity;
+import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.RectF;
 import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.LayerDrawable;
+import android.graphics.drawable.TransitionDrawable;
 import android.os.AsyncTask;
 import android.os.Build;
 import android.support.v7.app.ActionBar;
@@ -32,6 +35,10 @@ import android.view.animation.LinearInterpolator;
 import android.widget.FrameLayout;
 import android.widget.ImageView;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Encapsulate the whole behaviour to provide a blur effect on a DialogFragment.
  * <p/>
@@ -41,6 +48,22 @@ import android.widget.ImageView;
  */
 public class BlurDialogEngine {
 
+    /**
+     * Power save policy keeping the blur as set.
+     */
+    public static final int POWER_SAVE_POLICY_NONE = 0;
+
+    /**
+     * Power save policy doubling the down scale factor. The backend is kept, unless the other one
+     * is measured cheaper.
+     */
+    public static final int POWER_SAVE_POLICY_REDUCED_QUALITY = 1;
+
+    /**
+     * Power save policy replacing the blur by a plain dim.
+     */
+    public static final int POWER_SAVE_POLICY_DIM_ONLY = 2;
+
     /**
      * Since image is going to be blurred, we don't care about resolution.
      * Down scale factor to reduce blurring time and memory allocation.
@@ -72,6 +95,146 @@ public class BlurDialogEngine {
      */
     static final boolean DEFAULT_USE_RENDERSCRIPT = false;
 
+    /**
+     * Default progressive rendering policy.
+     */
+    static final boolean DEFAULT_PROGRESSIVE_POLICY = false;
+
+    /**
+     * Down scale factor used to build the coarse preview displayed while the final blur is processed.
+     * <p/>
+     * Applied on the same capture as the final blur, a few ms are enough even on slow devices.
+     */
+    static final float COARSE_BLUR_DOWN_SCALE_FACTOR = 16.0f;
+
+    /**
+     * Radius used to blur the coarse preview.
+     */
+    static final int COARSE_BLUR_RADIUS = 2;
+
+    /**
+     * Default animated blur radius policy.
+     */
+    static final boolean DEFAULT_ANIMATED_BLUR_RADIUS = false;
+
+    /**
+     * Number of intermediate levels built between the sharp background and the final blur
+     * when the blur radius is animated. Each level is half the size of the previous one.
+     */
+    static final int BLUR_LEVELS_MIP_COUNT = 2;
+
+    /**
+     * Default live blur policy.
+     */
+    static final boolean DEFAULT_LIVE_BLUR = false;
+
+    /**
+     * Default maximum number of captures per second when live blur is enabled.
+     */
+    static final int DEFAULT_LIVE_BLUR_MAX_FRAME_RATE = 15;
+
+    /**
+     * Default margin around the dialog of the blurred region, negative to blur the whole screen.
+     */
+    static final int DEFAULT_BLURRED_REGION_MARGIN = -1;
+
+    /**
+     * Default shared backdrop policy.
+     */
+    static final boolean DEFAULT_SHARED_BACKDROP = false;
+
+    /**
+     * Default tint color applied to the blurred background, transparent for no tint.
+     */
+    static final int DEFAULT_TINT_COLOR = Color.TRANSPARENT;
+
+    /**
+     * Default dim amount applied to the blurred background.
+     */
+    static final float DEFAULT_DIM_AMOUNT = 0.0f;
+
+    /**
+     * Default grain level applied to the blurred background.
+     */
+    static final int DEFAULT_GRAIN_LEVEL = 0;
+
+    /**
+     * Default grayscale policy.
+     */
+    static final boolean DEFAULT_GRAYSCALE = false;
+
+    /**
+     * Default maximum deviation of a channel for the background to be considered as uniform.
+     * Negative : disabled, the background is always blurred.
+     */
+    static final int DEFAULT_UNIFORM_BACKGROUND_THRESHOLD = -1;
+
+    /**
+     * Default target blur, in dp. 0 to use the down scale factor and the blur radius as set.
+     */
+    static final float DEFAULT_TARGET_BLUR = 0.0f;
+
+    /**
+     * Default maximum number of pixels of the down scaled background when a target blur is set.
+     */
+    static final int DEFAULT_MAX_OVERLAY_PIXEL_COUNT = 256 * 256;
+
+    /**
+     * Smallest kernel radius used when a target blur is set, smaller kernels show the down scale
+     * once the blurred background is stretched back.
+     */
+    static final int AUTO_BLUR_KERNEL_RADIUS = 4;
+
+    /**
+     * Default latency budget of the capture and the blur, in ms. 0 to disable the adaptive quality.
+     */
+    static final int DEFAULT_LATENCY_BUDGET = 0;
+
+    /**
+     * Default largest down scale factor the adaptive quality can pick.
+     */
+    static final float DEFAULT_MAX_DOWN_SCALE_FACTOR = 16.0f;
+
+    /**
+     * Default blur deadline, in ms. 0 to wait for the blur whatever the time it takes.
+     */
+    static final int DEFAULT_BLUR_DEADLINE = 0;
+
+    /**
+     * Default grace period following the blur deadline, in ms.
+     */
+    static final int DEFAULT_BLUR_GRACE_PERIOD = 350;
+
+    /**
+     * Color of the plain dim displayed instead of the blur.
+     */
+    static final int FALLBACK_DIM_COLOR = 0x66000000;
+
+    /**
+     * Default policy regarding the quality under memory pressure.
+     */
+    static final boolean DEFAULT_REDUCE_QUALITY_ON_MEMORY_PRESSURE = false;
+
+    /**
+     * Factor applied to the down scale factor under memory pressure, when the quality is reduced.
+     */
+    static final float MEMORY_PRESSURE_DOWN_SCALE_MULTIPLIER = 2.0f;
+
+    /**
+     * Default power save policy.
+     */
+    static final int DEFAULT_POWER_SAVE_POLICY = POWER_SAVE_POLICY_NONE;
+
+    /**
+     * Default maximum size of the disk cache of the blurred backgrounds, in bytes.
+     */
+    static final int DEFAULT_DISK_CACHE_MAX_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Default blur coalescing policy.
+     */
+    static final boolean DEFAULT_BLUR_COALESCING = true;
+
     /**
      * Log cat
      */
@@ -80,7 +243,7 @@ public class BlurDialogEngine {
     /**
      * Image view used to display blurred background.
      */
-    private ImageView mBlurredBackgroundView;
+    private BlurredImageView mBlurredBackgroundView;
 
     /**
      * Layout params used to add blurred background.
@@ -90,7 +253,7 @@ public class BlurDialogEngine {
     /**
      * Task used to capture screen and blur it.
      */
-    private BlurAsyncTask mBluringTask;
+    private AsyncTask<?, ?, ?> mBluringTask;
 
     /**
      * Used to enable or disable debug mod.
@@ -135,6 +298,222 @@ public class BlurDialogEngine {
      */
     private boolean mUseRenderScript;
 
+    /**
+     * Boolean used to know if a coarse blur should be displayed while the final one is processed.
+     */
+    private boolean mProgressive;
+
+    /**
+     * Boolean used to know if the blur radius should be animated instead of the blurred background alpha.
+     */
+    private boolean mBlurRadiusAnimated;
+
+    /**
+     * Animator used to animate the blur radius.
+     */
+    private ValueAnimator mBlurLevelAnimator;
+
+    /**
+     * Boolean used to know if the blurred background should be kept up to date with the content behind.
+     */
+    private boolean mLiveBlur;
+
+    /**
+     * Maximum number of captures per second when live blur is enabled.
+     */
+    private int mLiveBlurMaxFrameRate = DEFAULT_LIVE_BLUR_MAX_FRAME_RATE;
+
+    /**
+     * Updater used to keep the blurred background up to date when live blur is enabled.
+     */
+    private LiveBlurUpdater mLiveBlurUpdater;
+
+    /**
+     * Region of the activity window which should be blurred, null to blur the whole screen.
+     */
+    private Rect mBlurredRegion;
+
+    /**
+     * View which bounds, extended by {@link BlurDialogEngine#mBlurredRegionMargin}, define the
+     * region which should be blurred. Usually the decor view of the dialog.
+     */
+    private View mBlurredRegionAnchor;
+
+    /**
+     * Margin added around the bounds of the region anchor, in px.
+     */
+    private int mBlurredRegionMargin;
+
+    /**
+     * Boolean used to know if the blurred backdrop can be shared with the other engines of the activity.
+     */
+    private boolean mSharedBackdrop = DEFAULT_SHARED_BACKDROP;
+
+    /**
+     * Backdrop currently shared with the other engines of the activity, null if not shared.
+     */
+    private SharedBlurBackdrop mBackdrop;
+
+    /**
+     * Tint color baked into the blurred background.
+     */
+    private int mTintColor = DEFAULT_TINT_COLOR;
+
+    /**
+     * Dim amount baked into the blurred background.
+     */
+    private float mDimAmount = DEFAULT_DIM_AMOUNT;
+
+    /**
+     * Grain level baked into the blurred background.
+     */
+    private int mGrainLevel = DEFAULT_GRAIN_LEVEL;
+
+    /**
+     * Boolean used to know if only the luminance of the background should be blurred.
+     */
+    private boolean mGrayscale;
+
+    /**
+     * Maximum deviation of a channel for the background to be rendered as a solid color.
+     */
+    private int mUniformBackgroundThreshold = DEFAULT_UNIFORM_BACKGROUND_THRESHOLD;
+
+    /**
+     * Perceived blur radius at full resolution in dp, 0 when down scale factor and radius are set manually.
+     */
+    private float mTargetBlur = DEFAULT_TARGET_BLUR;
+
+    /**
+     * Maximum number of pixels of the down scaled background when a target blur is set.
+     */
+    private int mMaxOverlayPixelCount = DEFAULT_MAX_OVERLAY_PIXEL_COUNT;
+
+    /**
+     * Latency budget of the capture and the blur in ms, 0 when the adaptive quality is disabled.
+     */
+    private int mLatencyBudget = DEFAULT_LATENCY_BUDGET;
+
+    /**
+     * Largest down scale factor the adaptive quality can pick.
+     */
+    private float mMaxDownScaleFactor = DEFAULT_MAX_DOWN_SCALE_FACTOR;
+
+    /**
+     * Down scale factor as set, the one used to blur being resolved for each blur.
+     */
+    private float mRequestedDownScaleFactor = DEFAULT_BLUR_DOWN_SCALE_FACTOR;
+
+    /**
+     * Blur radius as set, the one used to blur being resolved for each blur.
+     */
+    private int mRequestedBlurRadius = DEFAULT_BLUR_RADIUS;
+
+    /**
+     * Use of RenderScript as set, the one used to blur being resolved for each blur.
+     */
+    private boolean mRequestedRenderScript = DEFAULT_USE_RENDERSCRIPT;
+
+    /**
+     * Delay after which a plain dim is displayed if the blur isn't ready, 0 to wait for the blur.
+     */
+    private int mBlurDeadline = DEFAULT_BLUR_DEADLINE;
+
+    /**
+     * Delay after the deadline after which the blur is given up.
+     */
+    private int mBlurGracePeriod = DEFAULT_BLUR_GRACE_PERIOD;
+
+    /**
+     * Deadline of the current blur, lazily created.
+     */
+    private BlurDeadline mDeadline;
+
+    /**
+     * Plain dim displayed once the deadline reached, null if not displayed.
+     */
+    private Drawable mDeadlineDrawable;
+
+    /**
+     * Boolean used to know if a cheaper quality should be used under memory pressure.
+     */
+    private boolean mReduceQualityOnMemoryPressure = DEFAULT_REDUCE_QUALITY_ON_MEMORY_PRESSURE;
+
+    /**
+     * Policy applied when the device is saving power or heating up.
+     */
+    private int mPowerSavePolicy = DEFAULT_POWER_SAVE_POLICY;
+
+    /**
+     * Reason why the current blur is degraded by the power save policy, null if not degraded.
+     */
+    private String mPowerConstraint;
+
+    /**
+     * Listener notified of the metrics of each blur, can be null.
+     */
+    private BlurMetricsListener mMetricsListener;
+
+    /**
+     * Identity of the blurred screen in the disk cache, null if the disk cache isn't used.
+     */
+    private String mDiskCacheKey;
+
+    /**
+     * Metrics of the blur fading in, dispatched once its fade in ends. Null if none.
+     */
+    private BlurMetrics mFadeInMetrics;
+
+    /**
+     * Start of the fade in of {@link BlurDialogEngine#mFadeInMetrics}, from {@link System#nanoTime()}.
+     */
+    private long mFadeInStartNs;
+
+    /**
+     * Cookie of the trace section of the fade in of {@link BlurDialogEngine#mFadeInMetrics}.
+     */
+    private int mFadeInCookie;
+
+    /**
+     * Area of the captured background which should be blurred.
+     */
+    private Rect mBlurredArea;
+
+    /**
+     * Application context, used out of the ui thread where the activity may be gone.
+     */
+    private final Context mApplicationContext;
+
+    /**
+     * Blur in flight the engine is waiting for, null if none.
+     */
+    private BlurJobScheduler.Job mJob;
+
+    /**
+     * Boolean used to know if identical blurs in flight can be coalesced with other engines.
+     */
+    private boolean mBlurCoalescing = DEFAULT_BLUR_COALESCING;
+
+    /**
+     * Coarse blur displayed while the final one is processed, null if not displayed.
+     */
+    private Drawable mCoarseDrawable;
+
+    /**
+     * Blurred bitmaps displayed by the engine, retained in the {@link BlurBitmapPool}.
+     */
+    private ArrayList<Bitmap> mOwnedBitmaps = new ArrayList<Bitmap>();
+
+    /**
+     * Callback notified once the blur the engine is waiting for is processed.
+     */
+    private final BlurJobScheduler.Callback mJobCallback = new BlurJobScheduler.Callback() {
+        @Override
+        public void onBlurred(Drawable blurred, BlurMetrics metrics) {
+            attachBlurred(blurred, metrics);
+        }
+    };
+
     /**
      * Constructor.
      *
@@ -142,7 +521,9 @@ public class BlurDialogEngine {
      */
     public BlurDialogEngine(Activity holdingActivity) {
         mHoldingActivity = holdingActivity;
+        mApplicationContext = holdingActivity.getApplicationContext();
         mAnimationDuration = holdingActivity.getResources().getInteger(R.integer.blur_dialog_animation_duration);
+        BlurMemoryTrimmer.register(holdingActivity);
     }
 
     /**
@@ -161,20 +542,22 @@ public class BlurDialogEngine {
      */
     public void onResume(boolean retainedInstance) {
         if (mBlurredBackgroundView == null || retainedInstance) {
-            if (mHoldingActivity.getWindow().getDecorView().isShown()) {
-                mBluringTask = new BlurAsyncTask();
-                mBluringTask.execute();
+            final View regionAnchor = mBlurredRegionAnchor;
+            if (mHoldingActivity.getWindow().getDecorView().isShown()
+                && (regionAnchor == null || regionAnchor.getWidth() > 0)) {
+                startBlur();
             } else {
-                mHoldingActivity.getWindow().getDecorView().getViewTreeObserver().addOnPreDrawListener(
+                // wait for the region anchor to be laid out since its bounds define the blurred area.
+                final View observedView = regionAnchor != null
+                    ? regionAnchor : mHoldingActivity.getWindow().getDecorView();
+                observedView.getViewTreeObserver().addOnPreDrawListener(
                     new ViewTreeObserver.OnPreDrawListener() {
                         @Override
                         public boolean onPreDraw() {
+                            observedView.getViewTreeObserver().removeOnPreDrawListener(this);
                             // dialog can have been closed before being drawn
                             if (mHoldingActivity != null) {
-                                mHoldingActivity.getWindow().getDecorView()
-                                    .getViewTreeObserver().removeOnPreDrawListener(this);
-                                mBluringTask = new BlurAsyncTask();
-                                mBluringTask.execute();
+                                startBlur();
                             }
                             return true;
                         }
@@ -192,12 +575,26 @@ public class BlurDialogEngine {
         //remove blurred background and clear memory, could be null if dismissed before blur effect
         //processing ends
         //cancel async task
-        if (mBluringTask != null) {
-            mBluringTask.cancel(true);
-        }
-        if (mBlurredBackgroundView != null) {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
-                mBlurredBackgroundView
+        cancelBlur();
+        cancelDeadline();
+        stopLiveBlur();
+        endFadeIn(mFadeInMetrics, false);
+        final List<Bitmap> ownedBitmaps = takeOwnedBitmaps();
+        final ImageView blurredView = mBlurredBackgroundView;
+        if (blurredView != null && releaseBackdrop(ownedBitmaps)) {
+            // the blurred view is still displayed for the other engines sharing the backdrop.
+            mBlurredBackgroundView = null;
+        } else if (blurredView != null) {
+            if (hasBlurLevels() && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                animateBlurLevel(0, new AnimatorListenerAdapter() {
+                    @Override
+                    public void onAnimationEnd(Animator animation) {
+                        super.onAnimationEnd(animation);
+                        removeBlurredView(blurredView, ownedBitmaps);
+                    }
+                });
+            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+                blurredView
                     .animate()
                     .alpha(0f)
                     .setDuration(mAnimationDuration)
@@ -206,18 +603,20 @@ public class BlurDialogEngine {
                         @Override
                         public void onAnimationEnd(Animator animation) {
                             super.onAnimationEnd(animation);
-                            removeBlurredView();
+                            removeBlurredView(blurredView, ownedBitmaps);
                         }
 
                         @Override
                         public void onAnimationCancel(Animator animation) {
                             super.onAnimationCancel(animation);
-                            removeBlurredView();
+                            removeBlurredView(blurredView, ownedBitmaps);
                         }
                     }).start();
             } else {
-                removeBlurredView();
+                removeBlurredView(blurredView, ownedBitmaps);
             }
+        } else {
+            BlurBitmapPool.release(ownedBitmaps);
         }
     }
 
@@ -225,10 +624,13 @@ public class BlurDialogEngine {
      * Must be linked to the original lifecycle.
      */
     public void onDetach() {
-        if (mBluringTask != null) {
-            mBluringTask.cancel(true);
-        }
-        mBluringTask = null;
+        cancelBlur();
+        cancelDeadline();
+        stopLiveBlur();
+        endFadeIn(mFadeInMetrics, false);
+        //still displayed by the window of the activity until it's gone, left to the garbage collector
+        BlurBitmapPool.abandon(takeOwnedBitmaps());
+        mBlurredRegionAnchor = null;
         mHoldingActivity = null;
     }
 
@@ -259,6 +661,7 @@ public class BlurDialogEngine {
         } else {
             mDownScaleFactor = 1.0f;
         }
+        mRequestedDownScaleFactor = mDownScaleFactor;
     }
 
     /**
@@ -275,6 +678,7 @@ public class BlurDialogEngine {
         } else {
             mBlurRadius = 0;
         }
+        mRequestedBlurRadius = mBlurRadius;
     }
 
     /**
@@ -297,47 +701,480 @@ public class BlurDialogEngine {
      */
     public void setUseRenderScript(boolean useRenderScript) {
         mUseRenderScript = useRenderScript;
+        mRequestedRenderScript = useRenderScript;
     }
 
     /**
-     * Enable / disable blurred action bar.
+     * Enable / disable progressive rendering.
      * <p/>
-     * When enabled, the action bar is blurred in addition of the content.
+     * When enabled, a coarse blur is displayed right after the capture of the background and
+     * then cross faded with the final blur once processed.
+     * <p/>
+     * By default progressive rendering is set to
+     * {@link BlurDialogEngine#DEFAULT_PROGRESSIVE_POLICY}
      *
-     * @param enable true to blur the action bar.
+     * @param enable true to display a coarse blur while the final one is processed.
      */
-    public void setBlurActionBar(boolean enable) {
-        mBlurredActionBar = enable;
+    public void setProgressive(boolean enable) {
+        mProgressive = enable;
     }
 
     /**
-     * Set a toolbar which isn't set as action bar.
+     * Enable / disable blur radius animation.
+     * <p/>
+     * When enabled, the background is progressively blurred instead of alpha fading the final blur.
+     * A small set of blur levels is built once, only compositing is performed during the animation.
+     * Progressive rendering is ignored since the sharp level is displayed right away.
+     * <p/>
+     * By default blur radius animation is set to
+     * {@link BlurDialogEngine#DEFAULT_ANIMATED_BLUR_RADIUS}
      *
-     * @param toolbar toolbar.
+     * @param enable true to animate the blur radius.
      */
-    public void setToolbar(Toolbar toolbar) {
-        mToolbar = toolbar;
+    public void setBlurRadiusAnimated(boolean enable) {
+        mBlurRadiusAnimated = enable;
     }
 
     /**
-     * Blur the given bitmap and add it to the activity.
+     * Enable / disable live blur.
+     * <p/>
+     * When enabled, the background is captured again at a capped frame rate and only the tiles
+     * which changed are blurred again, the blurred background is updated in place. Live blur relies
+     * on the FastBlur algorithm, RenderScript isn't used while enabled, and is ignored when the blur
+     * radius is animated.
+     * <p/>
+     * By default live blur is set to
+     * {@link BlurDialogEngine#DEFAULT_LIVE_BLUR}
      *
-     * @param bkg  should be a bitmap of the background.
-     * @param view background view.
+     * @param enable true to keep the blurred background up to date with the content behind.
      */
-    private void blur(Bitmap bkg, View view) {
-        long startMs = System.currentTimeMillis();
-        //define layout params to the previous imageView in order to match its parent
-        mBlurredBackgroundLayoutParams = new FrameLayout.LayoutParams(
-            FrameLayout.LayoutParams.MATCH_PARENT,
-            FrameLayout.LayoutParams.MATCH_PARENT
-        );
+    public void setLiveBlur(boolean enable) {
+        mLiveBlur = enable;
+    }
 
-        //overlay used to build scaled preview and blur background
-        Bitmap overlay = null;
+    /**
+     * Apply custom maximum frame rate of the live blur.
+     * <p/>
+     * By default maximum frame rate is set to
+     * {@link BlurDialogEngine#DEFAULT_LIVE_BLUR_MAX_FRAME_RATE}
+     *
+     * @param maxFrameRate maximum number of captures per second, must be at least 1.
+     */
+    public void setLiveBlurMaxFrameRate(int maxFrameRate) {
+        mLiveBlurMaxFrameRate = Math.max(1, maxFrameRate);
+    }
 
-        //evaluate top offset due to action bar, 0 if the actionBar should be blurred.
-        int actionBarHeight;
+    /**
+     * Restrict the blur to a region of the activity window.
+     * <p/>
+     * Only the given region is captured and blurred, the rest of the screen is left untouched or
+     * dimmed according to the dimming policy. The number of pixels processed is reduced in
+     * proportion to the region size.
+     *
+     * @param region region of the activity window, in px. Null to blur the whole screen.
+     */
+    public void setBlurredRegion(Rect region) {
+        mBlurredRegion = region == null ? null : new Rect(region);
+        mBlurredRegionAnchor = null;
+    }
+
+    /**
+     * Restrict the blur to the bounds of the given view extended by a margin.
+     * <p/>
+     * Usually used with the decor view of the dialog in order to only blur what is visible around
+     * the dialog. The blur starts once the view has been laid out.
+     *
+     * @param anchor view which bounds define the blurred region, null to blur the whole screen.
+     * @param margin margin added around the bounds of the view, in px.
+     */
+    public void setBlurredRegion(View anchor, int margin) {
+        mBlurredRegionAnchor = anchor;
+        mBlurredRegionMargin = margin;
+        mBlurredRegion = null;
+    }
+
+    /**
+     * Enable / disable the sharing of the blurred backdrop between the engines of the activity.
+     * <p/>
+     * When enabled, an engine resumed while another one of the same activity is displaying its
+     * blurred background, for instance a dialog opened over another one, reuses the displayed
+     * backdrop instead of capturing the screen again. If its radius is larger, the existing
+     * backdrop is lightly blurred again. Only one blurred view stays attached to the activity.
+     * The backdrop is only reused with the same tint, dim and grain. Live blur and animated blur
+     * radius aren't shared.
+     * <p/>
+     * By default shared backdrop is set to
+     * {@link BlurDialogEngine#DEFAULT_SHARED_BACKDROP}
+     *
+     * @param enable true to share the blurred backdrop.
+     */
+    public void setSharedBackdrop(boolean enable) {
+        mSharedBackdrop = enable;
+    }
+
+    /**
+     * Set the tint color blended over the blurred background.
+     * <p/>
+     * The alpha of the color is used as the strength of the tint. The tint is applied while the
+     * blur writes its pixels, no additional layer is drawn over the blurred background.
+     * <p/>
+     * By default tint color is set to
+     * {@link BlurDialogEngine#DEFAULT_TINT_COLOR}
+     *
+     * @param tintColor tint color, transparent for no tint.
+     */
+    public void setTintColor(int tintColor) {
+        mTintColor = tintColor;
+    }
+
+    /**
+     * Set the dim amount baked into the blurred background.
+     * <p/>
+     * Unlike the dimming of the dialog window, the dim is applied while the blur writes its
+     * pixels and therefore doesn't cost an additional translucent layer.
+     * <p/>
+     * By default dim amount is set to
+     * {@link BlurDialogEngine#DEFAULT_DIM_AMOUNT}
+     *
+     * @param dimAmount dim amount, from 0 (no dim) to 1 (black).
+     */
+    public void setDimAmount(float dimAmount) {
+        mDimAmount = dimAmount;
+    }
+
+    /**
+     * Set the grain level added to the blurred background.
+     * <p/>
+     * A light grain hides the banding of large smooth gradients, especially on RGB_565 blur.
+     * <p/>
+     * By default grain level is set to
+     * {@link BlurDialogEngine#DEFAULT_GRAIN_LEVEL}
+     *
+     * @param grainLevel grain amplitude, from 0 (no grain) to 255.
+     */
+    public void setGrainLevel(int grainLevel) {
+        mGrainLevel = grainLevel;
+    }
+
+    /**
+     * Enable / disable grayscale blur.
+     * <p/>
+     * When enabled, the background is converted to its luminance before being blurred. A single
+     * channel is blurred instead of three and kept in an ALPHA_8 bitmap, which reduces both the
+     * blurring time and the memory of the blurred background. The luminance is rendered white
+     * over black, tinted and dimmed according to {@link BlurDialogEngine#setTintColor(int)} and
+     * {@link BlurDialogEngine#setDimAmount(float)}.
+     * <p/>
+     * Always processed with the fast blur algorithm, grain, live blur, animated blur radius and
+     * shared backdrop aren't supported in grayscale.
+     * <p/>
+     * By default grayscale is set to
+     * {@link BlurDialogEngine#DEFAULT_GRAYSCALE}
+     *
+     * @param enable true to blur the luminance only.
+     */
+    public void setGrayscale(boolean enable) {
+        mGrayscale = enable;
+    }
+
+    /**
+     * Set the threshold under which the background is considered as uniform.
+     * <p/>
+     * The down scaled background is sampled before being blurred. When every channel of every
+     * sample is within the threshold of a single color, blurring wouldn't change anything
+     * visible : the blur is skipped and the background is rendered as a solid color. Useful for
+     * dialogs displayed over empty states or loading screens. Not applied with live blur or
+     * animated blur radius.
+     * <p/>
+     * Only samples are checked, small details of an otherwise uniform background, such as a thin
+     * line of text, can be missed and lost : disable by default.
+     * <p/>
+     * By default threshold is set to
+     * {@link BlurDialogEngine#DEFAULT_UNIFORM_BACKGROUND_THRESHOLD}
+     *
+     * @param maxDeviation maximum deviation of a channel, in [0,255], negative to always blur.
+     */
+    public void setUniformBackgroundThreshold(int maxDeviation) {
+        mUniformBackgroundThreshold = maxDeviation;
+    }
+
+    /**
+     * Set the perceived blur radius at full resolution and let the engine pick the down scale
+     * factor and the blur radius.
+     * <p/>
+     * A blur radius r applied on a background down scaled by a factor f is perceived as a blur
+     * of radius r * f once stretched back. Since blurred content has almost no detail, the
+     * largest down scale factor is picked, keeping a kernel of
+     * {@link BlurDialogEngine#AUTO_BLUR_KERNEL_RADIUS}, and the down scaled background is capped
+     * to {@link BlurDialogEngine#setMaxOverlayPixelCount(int)} pixels whatever the screen density.
+     * <p/>
+     * When set, overrides {@link BlurDialogEngine#setDownScaleFactor(float)} and
+     * {@link BlurDialogEngine#setBlurRadius(int)}.
+     * <p/>
+     * By default target blur is set to
+     * {@link BlurDialogEngine#DEFAULT_TARGET_BLUR}
+     *
+     * @param targetBlur perceived blur radius in dp, 0 to use the down scale factor and blur radius as set.
+     */
+    public void setTargetBlur(float targetBlur) {
+        mTargetBlur = Math.max(0f, targetBlur);
+    }
+
+    /**
+     * Set the maximum number of pixels of the down scaled background when a target blur is set.
+     * <p/>
+     * By default maximum pixel count is set to
+     * {@link BlurDialogEngine#DEFAULT_MAX_OVERLAY_PIXEL_COUNT}
+     *
+     * @param maxPixelCount maximum number of pixels of the down scaled background.
+     */
+    public void setMaxOverlayPixelCount(int maxPixelCount) {
+        mMaxOverlayPixelCount = Math.max(1, maxPixelCount);
+    }
+
+    /**
+     * Set the latency budget of the capture and the blur.
+     * <p/>
+     * When set, the latency of each blur is measured and smoothed across every engine of the
+     * process. Before each blur, the down scale factor is raised as much as needed to fit the
+     * budget, the blur radius being reduced to keep the same perceived blur, and never above
+     * {@link BlurDialogEngine#setMaxDownScaleFactor(float)}. If the budget still can't be met,
+     * the other blur backend is tried. The down scale factor set is the best quality used.
+     * <p/>
+     * By default latency budget is set to
+     * {@link BlurDialogEngine#DEFAULT_LATENCY_BUDGET}
+     *
+     * @param budget latency budget in ms, for instance 16 or 32, 0 to disable the adaptive quality.
+     */
+    public void setLatencyBudget(int budget) {
+        mLatencyBudget = Math.max(0, budget);
+    }
+
+    /**
+     * Set the quality floor of the adaptive quality, as the largest down scale factor it can pick.
+     * <p/>
+     * By default largest down scale factor is set to
+     * {@link BlurDialogEngine#DEFAULT_MAX_DOWN_SCALE_FACTOR}
+     *
+     * @param factor largest down scale factor, must be at least 1.0
+     */
+    public void setMaxDownScaleFactor(float factor) {
+        mMaxDownScaleFactor = Math.max(1.0f, factor);
+    }
+
+    /**
+     * Set a deadline for the blur.
+     * <p/>
+     * When the blur isn't ready by the deadline, a plain dim is displayed instead. The blur is
+     * cross faded over the dim if it's ready within the grace period, otherwise it's given up and
+     * the dim stays. See {@link BlurDialogEngine#getDeadlineHitCount()},
+     * {@link BlurDialogEngine#getDeadlineLateCount()} and {@link BlurDialogEngine#getDeadlineMissCount()}.
+     * <p/>
+     * By default blur deadline is set to
+     * {@link BlurDialogEngine#DEFAULT_BLUR_DEADLINE}
+     *
+     * @param deadline delay in ms, for instance 150, 0 to wait for the blur whatever the time it takes.
+     */
+    public void setBlurDeadline(int deadline) {
+        mBlurDeadline = Math.max(0, deadline);
+    }
+
+    /**
+     * Set the grace period following the blur deadline.
+     * <p/>
+     * By default grace period is set to
+     * {@link BlurDialogEngine#DEFAULT_BLUR_GRACE_PERIOD}
+     *
+     * @param gracePeriod delay after the deadline in ms, after which the blur is given up.
+     */
+    public void setBlurGracePeriod(int gracePeriod) {
+        mBlurGracePeriod = Math.max(0, gracePeriod);
+    }
+
+    /**
+     * Retrieve the number of blurs ready before their deadline, across the process.
+     *
+     * @return number of blurs ready in time.
+     */
+    public static int getDeadlineHitCount() {
+        return BlurDeadline.getHitCount();
+    }
+
+    /**
+     * Retrieve the number of blurs ready during their grace period, across the process.
+     *
+     * @return number of blurs cross faded over the plain dim.
+     */
+    public static int getDeadlineLateCount() {
+        return BlurDeadline.getLateCount();
+    }
+
+    /**
+     * Retrieve the number of blurs given up once their grace period over, across the process.
+     *
+     * @return number of blurs replaced by the plain dim.
+     */
+    public static int getDeadlineMissCount() {
+        return BlurDeadline.getMissCount();
+    }
+
+    /**
+     * Enable / disable the system trace sections of the blurs, across the process.
+     * <p/>
+     * Capture, queue, scale, blur passes, drawable, attach and fade in are emitted as named
+     * sections, visible with systrace or perfetto. Sections crossing threads are only emitted
+     * from Android Q. A disabled trace doesn't cost anything.
+     * <p/>
+     * Disable by default.
+     *
+     * @param enabled true to emit the trace sections.
+     */
+    public static void setTraceEnabled(boolean enabled) {
+        BlurTrace.setEnabled(enabled);
+    }
+
+    /**
+     * Enable / disable the cheaper quality under memory pressure.
+     * <p/>
+     * The library always releases its pooled buffers and caches when the system trims the memory.
+     * When enabled, once the memory is running low, the blurs of the following seconds also double
+     * the down scale factor, a quarter of the memory, and skip RenderScript and live blur.
+     * <p/>
+     * By default reduced quality is set to
+     * {@link BlurDialogEngine#DEFAULT_REDUCE_QUALITY_ON_MEMORY_PRESSURE}
+     *
+     * @param enable true to reduce the quality under memory pressure.
+     */
+    public void setReduceQualityOnMemoryPressure(boolean enable) {
+        mReduceQualityOnMemoryPressure = enable;
+    }
+
+    /**
+     * Set the policy applied when the device is in power save mode or, from Android Q, when its
+     * thermal status is moderate or worse.
+     * <p/>
+     * Checked before each blur, among {@link BlurDialogEngine#POWER_SAVE_POLICY_NONE},
+     * {@link BlurDialogEngine#POWER_SAVE_POLICY_REDUCED_QUALITY} which doubles the down scale
+     * factor, skips live blur and keeps the backend unless the other one is measured cheaper, and
+     * {@link BlurDialogEngine#POWER_SAVE_POLICY_DIM_ONLY}
+     * which displays a plain dim without capturing the background.
+     * <p/>
+     * By default power save policy is set to
+     * {@link BlurDialogEngine#DEFAULT_POWER_SAVE_POLICY}
+     *
+     * @param policy power save policy.
+     */
+    public void setPowerSavePolicy(int policy) {
+        mPowerSavePolicy = policy;
+    }
+
+    /**
+     * Set a listener notified of the metrics of each blur : timings of each phase, sizes of the
+     * blurred bitmaps and backend used.
+     * <p/>
+     * Blurs reusing a shared backdrop, joining an identical blur in flight or replaced by a plain
+     * dim aren't reported, nor blurs dismissed before their fade in ended.
+     *
+     * @param listener listener notified on the ui thread, null to remove it.
+     */
+    public void setMetricsListener(BlurMetricsListener listener) {
+        mMetricsListener = listener;
+    }
+
+    /**
+     * Enable / disable the coalescing of identical blurs in flight.
+     * <p/>
+     * When enabled, an engine blurring the same background with the same parameters as another
+     * engine of the process waits for the blur in flight instead of blurring it again. Disable it
+     * to process each blur, for instance to measure the contention between concurrent blurs.
+     * <p/>
+     * By default blur coalescing is set to
+     * {@link BlurDialogEngine#DEFAULT_BLUR_COALESCING}
+     *
+     * @param enable true to coalesce identical blurs in flight.
+     */
+    public void setBlurCoalescing(boolean enable) {
+        mBlurCoalescing = enable;
+    }
+
+    /**
+     * Enable / disable the disk cache of the blurred background, for screens looking the same on
+     * every launch such as an onboarding or a settings screen.
+     * <p/>
+     * The background is still captured, but once a background has been blurred with the same
+     * parameters and the same content, the blurred pixels are read back from the disk instead of
+     * being blurred again, across process restarts. Live blur, animated blur radius and debug
+     * mode don't use the disk cache.
+     * <p/>
+     * Disable by default.
+     *
+     * @param screenKey identity of the blurred screen, for instance its class name. Null to disable.
+     */
+    public void setDiskCacheKey(String screenKey) {
+        mDiskCacheKey = screenKey;
+    }
+
+    /**
+     * Set the maximum size of the disk cache of the blurred backgrounds, across the process.
+     * <p/>
+     * The least recently used backgrounds are evicted once exceeded.
+     * <p/>
+     * By default maximum size is set to
+     * {@link BlurDialogEngine#DEFAULT_DISK_CACHE_MAX_SIZE}
+     *
+     * @param maxSize maximum size in bytes.
+     */
+    public static void setDiskCacheMaxSize(int maxSize) {
+        BlurDiskCache.setMaxSize(maxSize);
+    }
+
+    /**
+     * Remove every blurred background from the disk cache, for instance once the cached screens
+     * have been updated.
+     *
+     * @param context any context.
+     */
+    public static void clearDiskCache(Context context) {
+        BlurDiskCache.getInstance(context).clear();
+    }
+
+    /**
+     * Enable / disable blurred action bar.
+     * <p/>
+     * When enabled, the action bar is blurred in addition of the content.
+     *
+     * @param enable true to blur the action bar.
+     */
+    public void setBlurActionBar(boolean enable) {
+        mBlurredActionBar = enable;
+    }
+
+    /**
+     * Set a toolbar which isn't set as action bar.
+     *
+     * @param toolbar toolbar.
+     */
+    public void setToolbar(Toolbar toolbar) {
+        mToolbar = toolbar;
+    }
+
+    /**
+     * Compute the area of the background which should be blurred as well as the layout params
+     * used to display the blurred background.
+     * <p/>
+     * Must be called from the ui thread since the action bar is measured.
+     *
+     * @param view background view.
+     */
+    private void computeBlurredArea(View view) {
+        //define layout params to the previous imageView in order to match its parent
+        mBlurredBackgroundLayoutParams = new FrameLayout.LayoutParams(
+            FrameLayout.LayoutParams.MATCH_PARENT,
+            FrameLayout.LayoutParams.MATCH_PARENT
+        );
+
+        //evaluate top offset due to action bar, 0 if the actionBar should be blurred.
+        int actionBarHeight;
         if (mBlurredActionBar) {
             actionBarHeight = 0;
         } else {
@@ -372,25 +1209,13 @@ public class BlurDialogEngine {
         }
 
         //add offset to the source boundaries since we don't want to blur actionBar pixels
-        Rect srcRect = new Rect(
+        mBlurredArea = new Rect(
             0,
             topOffset,
-            bkg.getWidth() - rightOffset,
-            bkg.getHeight() - bottomOffset
+            view.getWidth() - rightOffset,
+            view.getHeight() - bottomOffset
         );
 
-        //in order to keep the same ratio as the one which will be used for rendering, also
-        //add the offset to the overlay.
-        double height = Math.ceil((view.getHeight() - topOffset - bottomOffset) / mDownScaleFactor);
-        double width = Math.ceil(((view.getWidth() - rightOffset) * height
-            / (view.getHeight() - topOffset - bottomOffset)));
-
-        // Render script doesn't work with RGB_565
-        if (mUseRenderScript) {
-            overlay = Bitmap.createBitmap((int) width, (int) height, Bitmap.Config.ARGB_8888);
-        } else {
-            overlay = Bitmap.createBitmap((int) width, (int) height, Bitmap.Config.RGB_565);
-        }
         try {
             if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB
                 || mHoldingActivity instanceof ActionBarActivity
@@ -404,44 +1229,678 @@ public class BlurDialogEngine {
             // no dependency to appcompat, that means no additional top offset due to actionBar.
             mBlurredBackgroundLayoutParams.setMargins(0, 0, 0, 0);
         }
-        //scale and draw background view on the canvas overlay
-        Canvas canvas = new Canvas(overlay);
-        Paint paint = new Paint();
-        paint.setFlags(Paint.FILTER_BITMAP_FLAG);
 
-        //build drawing destination boundaries
-        final RectF destRect = new RectF(0, 0, overlay.getWidth(), overlay.getHeight());
+        Rect region = getBlurredRegion(view);
+        if (region != null && mBlurredArea.intersect(region)) {
+            //only the region is blurred, the blurred view is placed over the region.
+            int[] contentLocation = new int[2];
+            mHoldingActivity.getWindow().findViewById(android.R.id.content).getLocationInWindow(contentLocation);
+            mBlurredBackgroundLayoutParams = new FrameLayout.LayoutParams(
+                mBlurredArea.width(),
+                mBlurredArea.height()
+            );
+            mBlurredBackgroundLayoutParams.gravity = Gravity.TOP | Gravity.LEFT;
+            mBlurredBackgroundLayoutParams.setMargins(
+                mBlurredArea.left - contentLocation[0],
+                mBlurredArea.top - contentLocation[1],
+                0,
+                0
+            );
+        }
 
-        //draw background from source area in source background to the destination area on the overlay
-        canvas.drawBitmap(bkg, srcRect, destRect, paint);
+        //blur parameters are resolved again for each blur, starting from the requested ones
+        mDownScaleFactor = mRequestedDownScaleFactor;
+        mBlurRadius = mRequestedBlurRadius;
+        //tiles updated by the live blur are blurred with FastBlur, the first blur must match them
+        mUseRenderScript = mRequestedRenderScript && !mLiveBlur;
+        if (mTargetBlur > 0f) {
+            resolveTargetBlur();
+        }
+        if (mLatencyBudget > 0) {
+            resolveLatencyBudget();
+        }
+        if (isQualityReduced()) {
+            //quarter of the pixels, same perceived blur
+            mDownScaleFactor *= MEMORY_PRESSURE_DOWN_SCALE_MULTIPLIER;
+            mBlurRadius = Math.max(1, Math.round(mBlurRadius / MEMORY_PRESSURE_DOWN_SCALE_MULTIPLIER));
+            if (isQualityReducedForMemory()) {
+                //RenderScript allocations aren't needed by the fast blur algorithm
+                mUseRenderScript = false;
+            } else if (!mGrayscale && !mLiveBlur) {
+                //saving power, the backend is only switched if the other one is measured cheaper
+                float overlayPixels = (float) mBlurredArea.width() * mBlurredArea.height()
+                    / (mDownScaleFactor * mDownScaleFactor);
+                mUseRenderScript = BlurLatencyController.getInstance().resolveCheaperBackend(
+                    getBlurBackend(), overlayPixels) == BlurLatencyController.BACKEND_RENDER_SCRIPT;
+            }
+        }
+    }
 
-        //apply fast blur on overlay
-        if (mUseRenderScript) {
-            overlay = RenderScriptBlurHelper.doBlur(overlay, mBlurRadius, true, mHoldingActivity);
-        } else {
-            overlay = FastBlurHelper.doBlur(overlay, mBlurRadius, true);
+    /**
+     * Check if a cheaper quality should be used.
+     *
+     * @return true if the quality should be reduced, because of memory pressure or power saving.
+     */
+    private boolean isQualityReduced() {
+        return (mPowerConstraint != null && mPowerSavePolicy == POWER_SAVE_POLICY_REDUCED_QUALITY)
+            || isQualityReducedForMemory();
+    }
+
+    /**
+     * Check if a cheaper quality should be used because of memory pressure.
+     *
+     * @return true if the quality should be reduced to spare memory.
+     */
+    private boolean isQualityReducedForMemory() {
+        return mReduceQualityOnMemoryPressure && BlurMemoryTrimmer.isUnderMemoryPressure();
+    }
+
+    /**
+     * Pick the down scale factor and the blur radius matching the target blur for the current
+     * blurred area.
+     */
+    private void resolveTargetBlur() {
+        float targetBlur = mTargetBlur * mHoldingActivity.getResources().getDisplayMetrics().density;
+
+        //largest factor keeping the smallest kernel which doesn't show the down scale
+        float factor = targetBlur / AUTO_BLUR_KERNEL_RADIUS;
+
+        //cap the pixel count of the down scaled background
+        float pixelCount = (float) mBlurredArea.width() * mBlurredArea.height();
+        factor = Math.max(factor, (float) Math.sqrt(pixelCount / mMaxOverlayPixelCount));
+
+        mDownScaleFactor = Math.max(1.0f, factor);
+        mBlurRadius = Math.max(1, Math.round(targetBlur / mDownScaleFactor));
+
+        if (mDebugEnable) {
+            Log.d(TAG, "Target blur : " + mTargetBlur + "dp, down scale factor : " + mDownScaleFactor
+                + ", radius : " + mBlurRadius);
         }
+    }
+
+    /**
+     * Retrieve the region which should be blurred.
+     *
+     * @param view background view.
+     * @return region which should be blurred in the background view coordinates, null for the whole screen.
+     */
+    private Rect getBlurredRegion(View view) {
+        if (mBlurredRegionAnchor != null && mBlurredRegionAnchor.getWidth() > 0) {
+            int[] anchorLocation = new int[2];
+            int[] viewLocation = new int[2];
+            mBlurredRegionAnchor.getLocationOnScreen(anchorLocation);
+            view.getLocationOnScreen(viewLocation);
+            Rect region = new Rect(
+                anchorLocation[0] - viewLocation[0],
+                anchorLocation[1] - viewLocation[1],
+                anchorLocation[0] - viewLocation[0] + mBlurredRegionAnchor.getWidth(),
+                anchorLocation[1] - viewLocation[1] + mBlurredRegionAnchor.getHeight()
+            );
+            region.inset(-mBlurredRegionMargin, -mBlurredRegionMargin);
+            return region;
+        } else if (mBlurredRegion != null) {
+            return new Rect(mBlurredRegion);
+        }
+        return null;
+    }
+
+    /**
+     * Build the listener ending the fade in of a blur once its animation is over.
+     *
+     * @param metrics metrics of the blur.
+     * @return listener of the fade in animation.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private Animator.AnimatorListener createFadeInListener(final BlurMetrics metrics) {
+        return new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationCancel(Animator animation) {
+                super.onAnimationCancel(animation);
+                endFadeIn(metrics, false);
+            }
+
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                super.onAnimationEnd(animation);
+                // also called after a cancel, the fade in is already over then.
+                endFadeIn(metrics, true);
+            }
+        };
+    }
+
+    /**
+     * End the fade in of a blur. Once faded in, the metrics are recorded in the
+     * {@link BlurStatistics} and the listener, if any, is notified.
+     * <p/>
+     * The metrics of a fade in interrupted, for instance by a dismiss, are dropped.
+     *
+     * @param metrics   metrics of the blur, fade in excluded.
+     * @param completed true if the blurred background fully faded in.
+     */
+    private void endFadeIn(BlurMetrics metrics, boolean completed) {
+        if (metrics == null || metrics != mFadeInMetrics) {
+            return;
+        }
+        mFadeInMetrics = null;
+        BlurTrace.endAsync("BlurDialog fade in", mFadeInCookie);
+        if (!completed) {
+            return;
+        }
+        metrics.endPhase(BlurMetrics.PHASE_FADE_IN, mFadeInStartNs);
+        BlurStatistics.record(metrics);
+        if (mMetricsListener != null) {
+            mMetricsListener.onBlurMetrics(metrics);
+        }
+    }
+
+    /**
+     * Build a coarse blur of the given background, used as preview while the final one is processed.
+     * <p/>
+     * Reuse the background captured for the final blur, the screen isn't captured twice.
+     *
+     * @param bkg should be a bitmap of the background.
+     * @return drawable of the coarse blurred area.
+     */
+    private Drawable coarseBlur(Bitmap bkg) {
+        float downScaleFactor = Math.max(COARSE_BLUR_DOWN_SCALE_FACTOR, mDownScaleFactor * 2);
+        Bitmap coarse = BlurPipeline.scale(bkg, mBlurredArea, downScaleFactor, Bitmap.Config.RGB_565);
+        if (mGrayscale) {
+            coarse = GrayscaleBlurHelper.doBlur(coarse, COARSE_BLUR_RADIUS);
+            return GrayscaleBlurHelper.createDrawable(
+                mHoldingActivity.getResources(), coarse, mTintColor, mDimAmount);
+        }
+        coarse = FastBlurHelper.doBlur(coarse, COARSE_BLUR_RADIUS, true,
+            BlurPostProcess.create(mTintColor, mDimAmount, mGrainLevel));
+        return new BitmapDrawable(mHoldingActivity.getResources(), coarse);
+    }
+
+    /**
+     * Adapt the down scale factor, the blur radius and the backend to the latency budget.
+     */
+    private void resolveLatencyBudget() {
+        BlurLatencyController controller = BlurLatencyController.getInstance();
+        float areaPixels = (float) mBlurredArea.width() * mBlurredArea.height();
+        float maxFactor = Math.max(mDownScaleFactor, mMaxDownScaleFactor);
+
+        if (!mGrayscale && !mLiveBlur) {
+            //grayscale and live blur are processed with the fast blur algorithm only
+            int backend = controller.resolveBackend(
+                mUseRenderScript
+                    ? BlurLatencyController.BACKEND_RENDER_SCRIPT : BlurLatencyController.BACKEND_FAST_BLUR,
+                areaPixels,
+                maxFactor,
+                mLatencyBudget
+            );
+            mUseRenderScript = backend == BlurLatencyController.BACKEND_RENDER_SCRIPT;
+        }
+
+        float factor = controller.resolveDownScaleFactor(
+            getBlurBackend(), areaPixels, mDownScaleFactor, maxFactor, mLatencyBudget);
+        if (factor != mDownScaleFactor) {
+            //keep the same perceived blur
+            mBlurRadius = Math.max(1, Math.round(mBlurRadius * mDownScaleFactor / factor));
+            mDownScaleFactor = factor;
+        }
+
         if (mDebugEnable) {
-            String blurTime = (System.currentTimeMillis() - startMs) + " ms";
-            Log.d(TAG, "Blur method : " + (mUseRenderScript ? "RenderScript" : "FastBlur"));
-            Log.d(TAG, "Radius : " + mBlurRadius);
-            Log.d(TAG, "Down Scale Factor : " + mDownScaleFactor);
-            Log.d(TAG, "Blurred achieved in : " + blurTime);
-            Log.d(TAG, "Allocation : " + bkg.getRowBytes() + "ko (screen capture) + "
-                + overlay.getRowBytes() + "ko (blurred bitmap)"
-                + (!mUseRenderScript ? " + temp buff " + overlay.getRowBytes() + "ko." : "."));
-            Rect bounds = new Rect();
-            Canvas canvas1 = new Canvas(overlay);
-            paint.setColor(Color.BLACK);
-            paint.setAntiAlias(true);
-            paint.setTextSize(20.0f);
-            paint.getTextBounds(blurTime, 0, blurTime.length(), bounds);
-            canvas1.drawText(blurTime, 2, bounds.height(), paint);
+            Log.d(TAG, "Latency budget : " + mLatencyBudget + "ms, down scale factor : " + mDownScaleFactor
+                + ", radius : " + mBlurRadius + ", RenderScript : " + mUseRenderScript);
+        }
+    }
+
+    /**
+     * Retrieve the backend used to blur, as known by the {@link BlurLatencyController}.
+     *
+     * @return backend used to blur.
+     */
+    private int getBlurBackend() {
+        return mUseRenderScript && !mGrayscale
+            ? BlurLatencyController.BACKEND_RENDER_SCRIPT : BlurLatencyController.BACKEND_FAST_BLUR;
+    }
+
+    /**
+     * Retrieve the backend which blurred, as known by the {@link BlurLatencyController}.
+     *
+     * @param metricsBackend backend reported by the {@link BlurMetrics}.
+     * @return backend which blurred, -1 if the blur was skipped, for instance for a uniform or a
+     * cached background which would bias the measurement.
+     */
+    private static int getLatencyBackend(int metricsBackend) {
+        switch (metricsBackend) {
+            case BlurMetrics.BACKEND_RENDER_SCRIPT:
+                return BlurLatencyController.BACKEND_RENDER_SCRIPT;
+            case BlurMetrics.BACKEND_FAST_BLUR:
+            case BlurMetrics.BACKEND_GRAYSCALE:
+                //grayscale is processed with the fast blur algorithm
+                return BlurLatencyController.BACKEND_FAST_BLUR;
+            default:
+                return -1;
         }
+    }
+
+    /**
+     * Check if the blur is rendered through blur levels, allowing to animate its radius.
+     *
+     * @return true if blur levels are built.
+     */
+    private boolean hasBlurLevels() {
+        return mBlurRadiusAnimated && !mGrayscale;
+    }
+
+    /**
+     * Build the pipeline processing the next blur, with a snapshot of the current parameters.
+     * <p/>
+     * Uniform background detection and disk cache are skipped with live blur since the blurred
+     * background is updated in place.
+     *
+     * @return blur pipeline.
+     */
+    private BlurPipeline createPipeline() {
+        BlurPipeline pipeline = new BlurPipeline(mApplicationContext);
+        pipeline.setDownScaleFactor(mDownScaleFactor);
+        pipeline.setBlurRadius(mBlurRadius);
+        pipeline.setUseRenderScript(mUseRenderScript);
+        pipeline.setGrayscale(mGrayscale);
+        pipeline.setTintColor(mTintColor);
+        pipeline.setDimAmount(mDimAmount);
+        pipeline.setGrainLevel(mGrainLevel);
+        pipeline.setUniformBackgroundThreshold(mLiveBlur ? -1 : mUniformBackgroundThreshold);
+        pipeline.setBlurLevels(hasBlurLevels());
+        pipeline.setDiskCacheKey(mLiveBlur ? null : mDiskCacheKey);
+        pipeline.setDebugEnable(mDebugEnable);
+        return pipeline;
+    }
+
+    /**
+     * Add the blurred background to the activity and animate it in.
+     *
+     * @param blurred drawable of the blurred background.
+     * @param listener listener of the fade in animation, can be null.
+     * @return true if the fade in is animated, false if the blurred background is displayed right away.
+     */
+    @SuppressLint("NewApi")
+    private boolean addBlurredView(Drawable blurred, Animator.AnimatorListener listener) {
         //set bitmap in an image view for final rendering
-        mBlurredBackgroundView = new ImageView(mHoldingActivity);
+        mBlurredBackgroundView = new BlurredImageView(mHoldingActivity);
         mBlurredBackgroundView.setScaleType(ImageView.ScaleType.CENTER_CROP);
-        mBlurredBackgroundView.setImageDrawable(new BitmapDrawable(mHoldingActivity.getResources(), overlay));
+        mBlurredBackgroundView.setImageDrawable(blurred);
+
+        mHoldingActivity.getWindow().addContentView(
+            mBlurredBackgroundView,
+            mBlurredBackgroundLayoutParams
+        );
+
+        if (blurred instanceof BlurLevelsDrawable
+            && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            mBlurredBackgroundView.setImageLevel(0);
+            animateBlurLevel(BlurLevelsDrawable.MAX_LEVEL, listener);
+            return true;
+        } else if (blurred instanceof BlurLevelsDrawable) {
+            mBlurredBackgroundView.setImageLevel(BlurLevelsDrawable.MAX_LEVEL);
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1) {
+            mBlurredBackgroundView.setAlpha(0f);
+            mBlurredBackgroundView
+                .animate()
+                .alpha(1f)
+                .setDuration(mAnimationDuration)
+                .setInterpolator(new LinearInterpolator())
+                .setListener(listener)
+                .start();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Animate the blur radius of the blurred background from its current level to the given one.
+     *
+     * @param toLevel  targeted level, from 0 to {@link BlurLevelsDrawable#MAX_LEVEL}.
+     * @param listener listener notified of the animation events, can be null.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void animateBlurLevel(int toLevel, Animator.AnimatorListener listener) {
+        if (mBlurLevelAnimator != null) {
+            mBlurLevelAnimator.cancel();
+        }
+        final ImageView blurredView = mBlurredBackgroundView;
+        final int fromLevel = blurredView.getDrawable() == null ? 0 : blurredView.getDrawable().getLevel();
+        mBlurLevelAnimator = ValueAnimator.ofInt(fromLevel, toLevel);
+        mBlurLevelAnimator.setDuration(mAnimationDuration);
+        mBlurLevelAnimator.setInterpolator(new LinearInterpolator());
+        mBlurLevelAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                blurredView.setImageLevel((Integer) animation.getAnimatedValue());
+            }
+        });
+        if (listener != null) {
+            mBlurLevelAnimator.addListener(listener);
+        }
+        mBlurLevelAnimator.start();
+    }
+
+    /**
+     * Cross fade the coarse blur currently displayed with the final one.
+     *
+     * @param coarse   drawable of the coarse blur currently displayed.
+     * @param blurred  drawable of the final blur.
+     * @param listener listener of the cross fade animation, can be null.
+     * @return true if the cross fade is animated with an animator notifying the listener.
+     */
+    @SuppressLint("NewApi")
+    private boolean crossFadeBlurredView(Drawable coarse, Drawable blurred, Animator.AnimatorListener listener) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            //the end of a transition drawable can't be observed
+            TransitionDrawable transition = new TransitionDrawable(new Drawable[]{coarse, blurred});
+            transition.setCrossFadeEnabled(true);
+            mBlurredBackgroundView.setImageDrawable(transition);
+            transition.startTransition(mAnimationDuration);
+            return false;
+        }
+
+        //drawables can be shared by several engines, their alpha mustn't leak
+        final Drawable from = coarse.mutate();
+        final Drawable to = blurred.mutate();
+        from.setAlpha(255);
+        to.setAlpha(0);
+        mBlurredBackgroundView.setImageDrawable(new LayerDrawable(new Drawable[]{from, to}));
+        ValueAnimator crossFade = ValueAnimator.ofInt(0, 255);
+        crossFade.setDuration(mAnimationDuration);
+        crossFade.setInterpolator(new LinearInterpolator());
+        crossFade.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+            @Override
+            public void onAnimationUpdate(ValueAnimator animation) {
+                final int alpha = (Integer) animation.getAnimatedValue();
+                from.setAlpha(255 - alpha);
+                to.setAlpha(alpha);
+            }
+        });
+        if (listener != null) {
+            crossFade.addListener(listener);
+        }
+        crossFade.start();
+        return true;
+    }
+
+    /**
+     * Start to blur the background, or reuse the backdrop shared by another engine of the activity.
+     */
+    private void startBlur() {
+        mPowerConstraint = mPowerSavePolicy == POWER_SAVE_POLICY_NONE
+            ? null : BlurPowerMonitor.getConstraint(mHoldingActivity);
+        if (mPowerConstraint != null && mDebugEnable) {
+            Log.d(TAG, "Blur degraded, " + mPowerConstraint + " : "
+                + (mPowerSavePolicy == POWER_SAVE_POLICY_DIM_ONLY ? "dim only" : "reduced quality"));
+        }
+        if (mPowerConstraint != null && mPowerSavePolicy == POWER_SAVE_POLICY_DIM_ONLY) {
+            //neither capture nor blur, a plain dim is displayed right away
+            computeBlurredArea(mHoldingActivity.getWindow().getDecorView());
+            addBlurredView(new ColorDrawable(FALLBACK_DIM_COLOR), null);
+            return;
+        }
+        //a blur still in flight for this engine is superseded
+        cancelBlur();
+        if (!shareBackdrop()) {
+            BlurAsyncTask task = new BlurAsyncTask(this);
+            mBluringTask = task;
+            BlurExecutor.execute(task);
+            if (mBlurDeadline > 0) {
+                getDeadline().start(mBlurDeadline, mBlurGracePeriod);
+            }
+        }
+    }
+
+    /**
+     * Stop to wait for the blur in flight, if any.
+     * <p/>
+     * A blur joined by other engines goes on for them.
+     */
+    private void cancelBlur() {
+        if (mJob != null) {
+            BlurJobScheduler.getInstance().leave(mJob, mJobCallback);
+            mJob = null;
+        } else if (mBluringTask != null) {
+            mBluringTask.cancel(true);
+        }
+        mBluringTask = null;
+        mCoarseDrawable = null;
+    }
+
+    /**
+     * Build the key identifying the blur of a capture among the blurs in flight.
+     *
+     * @param window  captured window.
+     * @param capture captured background.
+     * @return key of the blur, null if it can't be shared with other engines.
+     */
+    private String getJobKey(View window, Bitmap capture) {
+        if (capture == null || !mBlurCoalescing || mLiveBlur || hasBlurLevels() || mDebugEnable) {
+            return null;
+        }
+        return System.identityHashCode(window)
+            + "|" + capture.getWidth() + "x" + capture.getHeight()
+            + "|" + mBlurredArea.toShortString()
+            + "|" + mDownScaleFactor
+            + "|" + (mGrayscale ? "grayscale" : mUseRenderScript ? "renderscript" : "fastblur")
+            + "|" + mBlurRadius
+            + "|" + Integer.toHexString(mTintColor)
+            + "|" + mDimAmount
+            + "|" + mGrainLevel
+            + "|" + mUniformBackgroundThreshold
+            + "|" + Long.toHexString(BlurJobScheduler.fingerprint(capture));
+    }
+
+    /**
+     * Display a processed blur, over the plain dim or the coarse blur displayed meanwhile if any.
+     *
+     * @param blurred drawable of the blurred background.
+     * @param metrics metrics of the blur, null if the blur has been joined.
+     */
+    private void attachBlurred(Drawable blurred, BlurMetrics metrics) {
+        long attachStartNs = System.nanoTime();
+        boolean traced = BlurTrace.begin("BlurDialog attach");
+        mJob = null;
+        mBluringTask = null;
+        own(blurred);
+
+        if (mDeadline != null && mDeadline.finish() && mDebugEnable) {
+            Log.d(TAG, "Blur ready during the grace period");
+        }
+
+        //the metrics are dispatched once the blurred background faded in
+        endFadeIn(mFadeInMetrics, false);
+        mFadeInMetrics = metrics;
+        Animator.AnimatorListener fadeInListener = metrics != null
+            && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB ? createFadeInListener(metrics) : null;
+
+        //cross fade over the plain dim or the coarse blur displayed while processing
+        Drawable preview = mDeadlineDrawable != null ? mDeadlineDrawable : mCoarseDrawable;
+        mDeadlineDrawable = null;
+        mCoarseDrawable = null;
+        boolean fadeInAnimated;
+        if (preview != null && mBlurredBackgroundView != null) {
+            if (blurred instanceof BlurLevelsDrawable) {
+                //no blur radius animation over the dim, levels are displayed at the final blur
+                blurred.setLevel(BlurLevelsDrawable.MAX_LEVEL);
+            }
+            fadeInAnimated = crossFadeBlurredView(preview, blurred, fadeInListener);
+        } else {
+            fadeInAnimated = addBlurredView(blurred, fadeInListener);
+        }
+
+        if (mLiveBlur && blurred instanceof BitmapDrawable) {
+            startLiveBlur(((BitmapDrawable) blurred).getBitmap());
+        }
+
+        publishBackdrop(blurred);
+        BlurTrace.end(traced);
+        if (metrics != null) {
+            mFadeInStartNs = metrics.endPhase(BlurMetrics.PHASE_ATTACH, attachStartNs);
+            mFadeInCookie = BlurTrace.beginAsync("BlurDialog fade in");
+            if (!fadeInAnimated) {
+                endFadeIn(metrics, true);
+            }
+        }
+    }
+
+    /**
+     * Retrieve the deadline of the blur.
+     *
+     * @return deadline, created if needed.
+     */
+    private BlurDeadline getDeadline() {
+        if (mDeadline == null) {
+            mDeadline = new BlurDeadline(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        //the blur is late, display a plain dim unless a coarse blur is already displayed
+                        if (mBlurredBackgroundView == null) {
+                            mDeadlineDrawable = new ColorDrawable(FALLBACK_DIM_COLOR);
+                            addBlurredView(mDeadlineDrawable, null);
+                        }
+                    }
+                },
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        //the blur is given up, the dim stays
+                        cancelBlur();
+                        if (mDebugEnable) {
+                            Log.d(TAG, "Blur given up after " + (mBlurDeadline + mBlurGracePeriod) + " ms");
+                        }
+                    }
+                }
+            );
+        }
+        return mDeadline;
+    }
+
+    /**
+     * Stop the deadline of the blur, if any.
+     */
+    private void cancelDeadline() {
+        if (mDeadline != null) {
+            mDeadline.cancel();
+        }
+        mDeadlineDrawable = null;
+    }
+
+    /**
+     * Try to reuse the backdrop currently displayed by another engine of the activity.
+     *
+     * @return true if the backdrop is shared, false if the background must be blurred.
+     */
+    private boolean shareBackdrop() {
+        if (!mSharedBackdrop || mLiveBlur || mBlurRadiusAnimated || mGrayscale) {
+            return false;
+        }
+        View decorView = mHoldingActivity.getWindow().getDecorView();
+        SharedBlurBackdrop backdrop = SharedBlurBackdrop.get(decorView);
+        if (backdrop == null) {
+            return false;
+        }
+        computeBlurredArea(decorView);
+        if (!backdrop.isCompatible(mBlurredArea, mDownScaleFactor, mTintColor, mDimAmount, mGrainLevel)) {
+            return false;
+        }
+
+        mBackdrop = backdrop;
+        mBlurredBackgroundView = backdrop.getView();
+        backdrop.acquire(this, null);
+        if (mBlurRadius > backdrop.getBlurRadius()) {
+            // blurring twice adds up the variances, only the missing part is applied.
+            int extraRadius = (int) Math.ceil(Math.sqrt(
+                mBlurRadius * mBlurRadius - backdrop.getBlurRadius() * backdrop.getBlurRadius()));
+            BackdropBlurAsyncTask task = new BackdropBlurAsyncTask(this, backdrop, extraRadius);
+            mBluringTask = task;
+            BlurExecutor.execute(task);
+        }
+        return true;
+    }
+
+    /**
+     * Publish the displayed blurred view so that the other engines of the activity can share it.
+     *
+     * @param blurred drawable of the blurred background.
+     */
+    private void publishBackdrop(Drawable blurred) {
+        if (!mSharedBackdrop || mLiveBlur || !(blurred instanceof BitmapDrawable)) {
+            return;
+        }
+        final BitmapDrawable drawable = (BitmapDrawable) blurred;
+        final SharedBlurBackdrop backdrop = new SharedBlurBackdrop(
+            mHoldingActivity.getWindow().getDecorView(),
+            mBlurredBackgroundView,
+            drawable.getBitmap(),
+            mBlurRadius
+        );
+        backdrop.setBlurParameters(mBlurredArea, mDownScaleFactor, mTintColor, mDimAmount, mGrainLevel);
+        mBackdrop = backdrop.publish(this, drawable) ? backdrop : null;
+    }
+
+    /**
+     * Stop to share the backdrop.
+     * <p/>
+     * When other engines are still sharing the backdrop, the drawable of the top one is restored
+     * and the bitmaps of the engine are handed over to the backdrop. Otherwise, the bitmaps handed
+     * over by the previous owners are added to the ones of the engine.
+     *
+     * @param ownedBitmaps bitmaps displayed by the engine.
+     * @return true if the blurred view is still displayed for other engines.
+     */
+    private boolean releaseBackdrop(List<Bitmap> ownedBitmaps) {
+        if (mBackdrop == null) {
+            return false;
+        }
+        final SharedBlurBackdrop backdrop = mBackdrop;
+        Drawable displayed = backdrop.getDrawable(this);
+        boolean onTop = backdrop.getDrawable(null) == displayed;
+        Drawable remaining = backdrop.release(this);
+        mBackdrop = null;
+        if (remaining == null) {
+            ownedBitmaps.addAll(backdrop.takeAdoptedBitmaps());
+            return false;
+        }
+        // may still be drawn by the blurred view, released along with the backdrop.
+        backdrop.adoptBitmaps(ownedBitmaps);
+        ownedBitmaps.clear();
+        if (onTop && remaining != displayed) {
+            crossFadeBlurredView(displayed, remaining, null);
+        }
+        return true;
+    }
+
+    /**
+     * Start to keep the blurred background up to date with the content behind.
+     *
+     * @param blurredBitmap blurred bitmap currently displayed, updated in place.
+     */
+    private void startLiveBlur(Bitmap blurredBitmap) {
+        stopLiveBlur();
+        if (mBlurRadius < 1 || !blurredBitmap.isMutable() || isQualityReduced()) {
+            return;
+        }
+        mLiveBlurUpdater = new LiveBlurUpdater(
+            mHoldingActivity.getWindow().getDecorView(),
+            mBlurredBackgroundView,
+            blurredBitmap,
+            mBlurredArea,
+            mBlurRadius,
+            BlurPostProcess.create(mTintColor, mDimAmount, mGrainLevel),
+            mLiveBlurMaxFrameRate
+        );
+        mLiveBlurUpdater.start();
+    }
+
+    /**
+     * Stop to update the blurred background.
+     */
+    private void stopLiveBlur() {
+        if (mLiveBlurUpdater != null) {
+            mLiveBlurUpdater.stop();
+            mLiveBlurUpdater = null;
+        }
     }
 
     /**
@@ -532,97 +1991,297 @@ public class BlurDialogEngine {
     }
 
     /**
-     * Removed the blurred view from the view hierarchy.
+     * Remove a blurred view from the view hierarchy and release the bitmaps it displayed.
+     *
+     * @param blurredView  blurred view to remove.
+     * @param ownedBitmaps bitmaps displayed by the view, given back to the {@link BlurBitmapPool}.
      */
-    private void removeBlurredView() {
-        if (mBlurredBackgroundView != null) {
-            ViewGroup parent = (ViewGroup) mBlurredBackgroundView.getParent();
-            if (parent != null) {
-                parent.removeView(mBlurredBackgroundView);
-            }
+    private void removeBlurredView(ImageView blurredView, List<Bitmap> ownedBitmaps) {
+        ViewGroup parent = (ViewGroup) blurredView.getParent();
+        if (parent != null) {
+            parent.removeView(blurredView);
+        }
+        blurredView.setImageDrawable(null);
+        if (mBlurredBackgroundView == blurredView) {
             mBlurredBackgroundView = null;
         }
+        BlurBitmapPool.release(ownedBitmaps);
+    }
+
+    /**
+     * Retain the bitmaps of a drawable displayed by the engine.
+     *
+     * @param drawable displayed drawable, can be null.
+     */
+    private void own(Drawable drawable) {
+        for (Bitmap bitmap : BlurBitmapPool.getBitmaps(drawable)) {
+            BlurBitmapPool.retain(bitmap);
+            mOwnedBitmaps.add(bitmap);
+        }
     }
 
     /**
-     * Async task used to process blur out of ui thread
+     * Take over the bitmaps displayed by the engine, which starts again with none.
+     *
+     * @return bitmaps displayed by the engine.
      */
-    private class BlurAsyncTask extends AsyncTask<Void, Void, Void> {
+    private List<Bitmap> takeOwnedBitmaps() {
+        final List<Bitmap> ownedBitmaps = mOwnedBitmaps;
+        mOwnedBitmaps = new ArrayList<Bitmap>();
+        return ownedBitmaps;
+    }
 
+    /**
+     * Async task used to process blur out of ui thread.
+     * <p/>
+     * Only holds weak references to the engine and to the captured view : a blur in flight doesn't
+     * retain the activity, whose engine is notified through the {@link BlurJobScheduler}.
+     */
+    private static final class BlurAsyncTask extends AsyncTask<Void, Void, Drawable> {
+
+        private final WeakReference<BlurDialogEngine> mEngineRef;
         private Bitmap mBackground;
-        private View mBackgroundView;
+        private WeakReference<View> mBackgroundViewRef;
+        private BlurMetrics mMetrics;
+        private long mQueuedNs;
+        private int mQueueCookie;
+        private BlurJobScheduler.Job mScheduledJob;
+        private BlurPipeline mPipeline;
+        private Rect mArea;
+        private boolean mLatencyRecorded;
+        private float mOverlayPixels;
+
+        BlurAsyncTask(BlurDialogEngine engine) {
+            mEngineRef = new WeakReference<BlurDialogEngine>(engine);
+        }
 
         @Override
         protected void onPreExecute() {
             super.onPreExecute();
 
-            mBackgroundView = mHoldingActivity.getWindow().getDecorView();
+            final BlurDialogEngine engine = mEngineRef.get();
+            if (engine == null || engine.mHoldingActivity == null) {
+                cancel(false);
+                return;
+            }
+
+            mMetrics = new BlurMetrics();
+            long startNs = System.nanoTime();
+            boolean traced = BlurTrace.begin("BlurDialog capture");
+            final View backgroundView = engine.mHoldingActivity.getWindow().getDecorView();
 
             //retrieve background view, must be achieved on ui thread since
             //only the original thread that created a view hierarchy can touch its views.
 
             Rect rect = new Rect();
-            mBackgroundView.getWindowVisibleDisplayFrame(rect);
-            mBackgroundView.destroyDrawingCache();
-            mBackgroundView.setDrawingCacheEnabled(true);
-            mBackgroundView.buildDrawingCache(true);
-            mBackground = mBackgroundView.getDrawingCache(true);
+            backgroundView.getWindowVisibleDisplayFrame(rect);
+            backgroundView.destroyDrawingCache();
+            backgroundView.setDrawingCacheEnabled(true);
+            backgroundView.buildDrawingCache(true);
+            mBackground = backgroundView.getDrawingCache(true);
 
             /**
              * After rotation, the DecorView has no height and no width. Therefore
              * .getDrawingCache() return null. That's why we  have to force measure and layout.
              */
             if (mBackground == null) {
-                mBackgroundView.measure(
+                backgroundView.measure(
                     View.MeasureSpec.makeMeasureSpec(rect.width(), View.MeasureSpec.EXACTLY),
                     View.MeasureSpec.makeMeasureSpec(rect.height(), View.MeasureSpec.EXACTLY)
                 );
-                mBackgroundView.layout(0, 0, mBackgroundView.getMeasuredWidth(),
-                    mBackgroundView.getMeasuredHeight());
-                mBackgroundView.destroyDrawingCache();
-                mBackgroundView.setDrawingCacheEnabled(true);
-                mBackgroundView.buildDrawingCache(true);
-                mBackground = mBackgroundView.getDrawingCache(true);
+                backgroundView.layout(0, 0, backgroundView.getMeasuredWidth(),
+                    backgroundView.getMeasuredHeight());
+                backgroundView.destroyDrawingCache();
+                backgroundView.setDrawingCacheEnabled(true);
+                backgroundView.buildDrawingCache(true);
+                mBackground = backgroundView.getDrawingCache(true);
+            }
+            mMetrics.endPhase(BlurMetrics.PHASE_CAPTURE, startNs);
+            BlurTrace.end(traced);
+
+            engine.computeBlurredArea(backgroundView);
+
+            //join an identical blur in flight instead of blurring the same background again
+            final BlurJobScheduler scheduler = BlurJobScheduler.getInstance();
+            final String jobKey = engine.getJobKey(backgroundView, mBackground);
+            engine.mJob = jobKey == null ? null : scheduler.join(jobKey, engine.mJobCallback);
+            if (engine.mJob != null) {
+                backgroundView.destroyDrawingCache();
+                backgroundView.setDrawingCacheEnabled(false);
+                mBackground = null;
+                mMetrics = null;
+                engine.mBluringTask = null;
+                cancel(false);
+                return;
+            }
+            mBackgroundViewRef = new WeakReference<View>(backgroundView);
+            mScheduledJob = scheduler.start(jobKey, this, engine.mJobCallback);
+            engine.mJob = mScheduledJob;
+            mPipeline = engine.createPipeline();
+            mArea = new Rect(engine.mBlurredArea);
+            mLatencyRecorded = engine.mLatencyBudget > 0;
+            mOverlayPixels = mArea.width() * mArea.height() / (engine.mDownScaleFactor * engine.mDownScaleFactor);
+
+            if (engine.mProgressive && !engine.hasBlurLevels()) {
+                //display a coarse blur right away, the final one will be cross faded once processed.
+                traced = BlurTrace.begin("BlurDialog coarse blur");
+                engine.mCoarseDrawable = engine.coarseBlur(mBackground);
+                engine.own(engine.mCoarseDrawable);
+                engine.addBlurredView(engine.mCoarseDrawable, null);
+                BlurTrace.end(traced);
             }
+            mQueuedNs = System.nanoTime();
+            mQueueCookie = BlurTrace.beginAsync("BlurDialog queue");
         }
 
         @Override
-        protected Void doInBackground(Void... params) {
+        protected Drawable doInBackground(Void... params) {
             //process to the blue
+            Drawable blurred;
+            BlurTrace.endAsync("BlurDialog queue", mQueueCookie);
+            mScheduledJob.markStarted();
             if (!isCancelled()) {
-                blur(mBackground, mBackgroundView);
+                mMetrics.endPhase(BlurMetrics.PHASE_QUEUE, mQueuedNs);
+                blurred = mPipeline.blur(mBackground, mArea, mMetrics);
             } else {
                 return null;
             }
             //clear memory
             mBackground.recycle();
-            return null;
+            return blurred;
         }
 
         @Override
-        @SuppressLint("NewApi")
-        protected void onPostExecute(Void aVoid) {
-            super.onPostExecute(aVoid);
+        protected void onPostExecute(Drawable blurred) {
+            super.onPostExecute(blurred);
 
-            mBackgroundView.destroyDrawingCache();
-            mBackgroundView.setDrawingCacheEnabled(false);
+            destroyDrawingCache();
 
-            mHoldingActivity.getWindow().addContentView(
-                mBlurredBackgroundView,
-                mBlurredBackgroundLayoutParams
-            );
+            final int latencyBackend = getLatencyBackend(mMetrics.getBackend());
+            if (mLatencyRecorded && latencyBackend != -1) {
+                //recorded against the backend which blurred, RenderScript may have fallen back to FastBlur
+                BlurLatencyController.getInstance().record(
+                    latencyBackend,
+                    mMetrics.getDuration(BlurMetrics.PHASE_CAPTURE) / 1000000f,
+                    (mMetrics.getDuration(BlurMetrics.PHASE_SCALE) + mMetrics.getDuration(BlurMetrics.PHASE_BLUR)
+                        + mMetrics.getDuration(BlurMetrics.PHASE_DRAWABLE)) / 1000000f,
+                    mOverlayPixels
+                );
+            }
 
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR1) {
-                mBlurredBackgroundView.setAlpha(0f);
-                mBlurredBackgroundView
-                    .animate()
-                    .alpha(1f)
-                    .setDuration(mAnimationDuration)
-                    .setInterpolator(new LinearInterpolator())
-                    .start();
+            //the engine which started the blur may be gone, the engines waiting for it are notified
+            BlurJobScheduler.getInstance().complete(mScheduledJob, blurred, mMetrics);
+
+            mBackground = null;
+            mMetrics = null;
+            mScheduledJob = null;
+            mPipeline = null;
+        }
+
+        @Override
+        protected void onCancelled(Drawable blurred) {
+            super.onCancelled(blurred);
+            //nobody is waiting for the blur anymore
+            destroyDrawingCache();
+            for (Bitmap bitmap : BlurBitmapPool.getBitmaps(blurred)) {
+                BlurBitmapPool.recycle(bitmap);
             }
-            mBackgroundView = null;
             mBackground = null;
+            mMetrics = null;
+            mScheduledJob = null;
+            mPipeline = null;
+        }
+
+        /**
+         * Release the drawing cache of the captured view, if still alive.
+         */
+        private void destroyDrawingCache() {
+            final View backgroundView = mBackgroundViewRef == null ? null : mBackgroundViewRef.get();
+            if (backgroundView != null) {
+                backgroundView.destroyDrawingCache();
+                backgroundView.setDrawingCacheEnabled(false);
+            }
+            mBackgroundViewRef = null;
+        }
+    }
+
+    /**
+     * Async task used to blur again a shared backdrop with a larger radius, out of ui thread.
+     * <p/>
+     * Only holds a weak reference to the engine. The blurred bitmap of the backdrop is retained
+     * until the task is over, the owners of the backdrop may release it meanwhile.
+     */
+    private static final class BackdropBlurAsyncTask extends AsyncTask<Void, Void, Drawable> {
+
+        private final WeakReference<BlurDialogEngine> mEngineRef;
+        private final SharedBlurBackdrop mTargetBackdrop;
+        private final Bitmap mSource;
+        private final int mExtraRadius;
+        private final boolean mUseRenderScript;
+        private final Context mContext;
+
+        BackdropBlurAsyncTask(BlurDialogEngine engine, SharedBlurBackdrop backdrop, int extraRadius) {
+            mEngineRef = new WeakReference<BlurDialogEngine>(engine);
+            mTargetBackdrop = backdrop;
+            mSource = backdrop.getBlurredBitmap();
+            BlurBitmapPool.retain(mSource);
+            mExtraRadius = extraRadius;
+            mUseRenderScript = engine.mUseRenderScript;
+            mContext = engine.mApplicationContext;
+        }
+
+        @Override
+        protected Drawable doInBackground(Void... params) {
+            if (mSource.isRecycled()) {
+                return null;
+            }
+            Bitmap blurred = null;
+            if (mUseRenderScript) {
+                blurred = RenderScriptBlurHelper.doBlur(mSource, mExtraRadius, false, mContext);
+            }
+            if (blurred == null) {
+                //render script disabled or failed, continue with FastBlur
+                blurred = FastBlurHelper.doBlur(mSource.copy(mSource.getConfig(), true), mExtraRadius, true);
+            }
+            if (isCancelled()) {
+                BlurBitmapPool.recycle(blurred);
+                return null;
+            }
+            return blurred == null ? null : new BitmapDrawable(mContext.getResources(), blurred);
+        }
+
+        @Override
+        protected void onCancelled() {
+            super.onCancelled();
+            releaseSource();
+        }
+
+        @Override
+        protected void onPostExecute(Drawable blurred) {
+            super.onPostExecute(blurred);
+            releaseSource();
+            final BlurDialogEngine engine = mEngineRef.get();
+            if (blurred != null && engine != null && mTargetBackdrop.isOwner(engine)) {
+                engine.own(blurred);
+                engine.crossFadeBlurredView(mTargetBackdrop.getDrawable(engine), blurred, null);
+                mTargetBackdrop.setDrawable(engine, blurred);
+            } else if (blurred != null) {
+                //the engine left the backdrop meanwhile
+                BlurBitmapPool.recycle(((BitmapDrawable) blurred).getBitmap());
+            }
+        }
+
+        /**
+         * Stop to retain the blurred bitmap of the backdrop, on the ui thread.
+         */
+        private void releaseSource() {
+            final BlurDialogEngine engine = mEngineRef.get();
+            if (engine != null && engine.mHoldingActivity != null) {
+                BlurBitmapPool.release(mSource);
+            } else {
+                //may still be drawn by the window of a detached activity
+                BlurBitmapPool.abandon(mSource);
+            }
         }
     }
 }
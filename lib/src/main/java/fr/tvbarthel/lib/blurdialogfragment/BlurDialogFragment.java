@@ -69,6 +69,65 @@ public abstract class BlurDialogFragment extends DialogFragment {
 
         mBlurEngine.setBlurActionBar(isActionBarBlurred());
 
+        mBlurEngine.setProgressive(isProgressiveEnable());
+
+        mBlurEngine.setBlurRadiusAnimated(isBlurRadiusAnimated());
+
+        mBlurEngine.setLiveBlur(isLiveBlurEnable());
+
+        mBlurEngine.setSharedBackdrop(isBackdropShared());
+
+        mBlurEngine.setTintColor(getTintColor());
+
+        float dimAmount = getDimAmount();
+        if (dimAmount < 0 || dimAmount > 1) {
+            throw new IllegalArgumentException("Dim amount must be in [0,1]. Found : " + dimAmount);
+        }
+        mBlurEngine.setDimAmount(dimAmount);
+
+        int grainLevel = getGrainLevel();
+        if (grainLevel < 0 || grainLevel > 255) {
+            throw new IllegalArgumentException("Grain level must be in [0,255]. Found : " + grainLevel);
+        }
+        mBlurEngine.setGrainLevel(grainLevel);
+
+        mBlurEngine.setGrayscale(isGrayscaleEnable());
+
+        mBlurEngine.setUniformBackgroundThreshold(getUniformBackgroundThreshold());
+
+        float targetBlur = getTargetBlur();
+        if (targetBlur < 0) {
+            throw new IllegalArgumentException("Target blur must be positive. Found : " + targetBlur);
+        }
+        mBlurEngine.setTargetBlur(targetBlur);
+
+        int latencyBudget = getLatencyBudget();
+        if (latencyBudget < 0) {
+            throw new IllegalArgumentException("Latency budget must be positive. Found : " + latencyBudget);
+        }
+        mBlurEngine.setLatencyBudget(latencyBudget);
+
+        float maxFactor = getMaxDownScaleFactor();
+        if (maxFactor < factor) {
+            throw new IllegalArgumentException("Max down scale factor must be at least the down scale factor. Found : "
+                + maxFactor);
+        }
+        mBlurEngine.setMaxDownScaleFactor(maxFactor);
+
+        int deadline = getBlurDeadline();
+        if (deadline < 0) {
+            throw new IllegalArgumentException("Blur deadline must be positive. Found : " + deadline);
+        }
+        mBlurEngine.setBlurDeadline(deadline);
+
+        mBlurEngine.setReduceQualityOnMemoryPressure(isQualityReducedOnMemoryPressure());
+
+        mBlurEngine.setPowerSavePolicy(getPowerSavePolicy());
+
+        mBlurEngine.setMetricsListener(getBlurMetricsListener());
+
+        mBlurEngine.setDiskCacheKey(getDiskCacheKey());
+
         mDimmingEffect = isDimmingEnable();
     }
 
@@ -82,6 +141,12 @@ public abstract class BlurDialogFragment extends DialogFragment {
                 dialog.getWindow().clearFlags(WindowManager.LayoutParams.FLAG_DIM_BEHIND);
             }
 
+            // restrict the blur to the area around the dialog if required.
+            int regionMargin = getBlurredRegionMargin();
+            if (regionMargin >= 0) {
+                mBlurEngine.setBlurredRegion(dialog.getWindow().getDecorView(), regionMargin);
+            }
+
             // add default fade to the dialog if no window animation has been set.
             int currentAnimation = dialog.getWindow().getAttributes().windowAnimations;
             if (currentAnimation == 0) {
@@ -219,4 +284,296 @@ public abstract class BlurDialogFragment extends DialogFragment {
     protected boolean isRenderScriptEnable() {
         return BlurDialogEngine.DEFAULT_USE_RENDERSCRIPT;
     }
+
+    /**
+     * For inheritance purpose.
+     * <p/>
+     * Enable or disable progressive rendering.
+     * <p/>
+     * When enabled, a coarse blur is displayed as soon as the background is captured and then
+     * cross faded with the final blur once processed. Useful on slow devices.
+     * <p/>
+     * Disable by default.
+     *
+     * @return true to enable progressive rendering.
+     */
+    protected boolean isProgressiveEnable() {
+        return BlurDialogEngine.DEFAULT_PROGRESSIVE_POLICY;
+    }
+
+    /**
+     * For inheritance purpose.
+     * <p/>
+     * Enable or disable the blur radius animation.
+     * <p/>
+     * When enabled, the background is progressively blurred instead of fading in the final blur.
+     * <p/>
+     * Disable by default.
+     *
+     * @return true to animate the blur radius.
+     */
+    protected boolean isBlurRadiusAnimated() {
+        return BlurDialogEngine.DEFAULT_ANIMATED_BLUR_RADIUS;
+    }
+
+    /**
+     * For inheritance purpose.
+     * <p/>
+     * Enable or disable live blur.
+     * <p/>
+     * When enabled, the blurred background is kept up to date with the content behind the dialog,
+     * only the areas which changed are blurred again.
+     * <p/>
+     * Disable by default.
+     *
+     * @return true to enable live blur.
+     */
+    protected boolean isLiveBlurEnable() {
+        return BlurDialogEngine.DEFAULT_LIVE_BLUR;
+    }
+
+    /**
+     * For inheritance purpose.
+     * <p/>
+     * Allow to restrict the blur to the area around the dialog.
+     * <p/>
+     * Only the dialog bounds extended by the returned margin are captured and blurred, which
+     * reduces the blurring time for small dialogs. The rest of the screen is left untouched.
+     * Range : [0,infinity), negative to blur the whole screen.
+     * <p/>
+     * Whole screen by default.
+     *
+     * @return margin around the dialog in px, negative to blur the whole screen.
+     */
+    protected int getBlurredRegionMargin() {
+        return BlurDialogEngine.DEFAULT_BLURRED_REGION_MARGIN;
+    }
+
+    /**
+     * For inheritance purpose.
+     * <p/>
+     * Enable or disable the sharing of the blurred backdrop with the other blur dialogs of the
+     * activity.
+     * <p/>
+     * When enabled, a blur dialog opened over another one reuses the displayed backdrop instead of
+     * capturing and blurring the screen again.
+     * <p/>
+     * Disable by default.
+     *
+     * @return true to share the blurred backdrop.
+     */
+    protected boolean isBackdropShared() {
+        return BlurDialogEngine.DEFAULT_SHARED_BACKDROP;
+    }
+
+    /**
+     * For inheritance purpose.
+     * <p/>
+     * Allow to tint the blurred background. The alpha of the color is used as the strength of the tint.
+     * <p/>
+     * The tint is baked into the blurred background while blurring, no additional layer is drawn.
+     * <p/>
+     * Transparent by default.
+     *
+     * @return tint color, transparent for no tint.
+     */
+    protected int getTintColor() {
+        return BlurDialogEngine.DEFAULT_TINT_COLOR;
+    }
+
+    /**
+     * For inheritance purpose.
+     * <p/>
+     * Allow to darken the blurred background.
+     * <p/>
+     * Unlike {@link #isDimmingEnable()}, the dim is baked into the blurred background while
+     * blurring and doesn't dim the dialog window.
+     * Range : [0,1]
+     * <p/>
+     * Default dim amount is 0.
+     *
+     * @return dim amount, from 0 (no dim) to 1 (black).
+     */
+    protected float getDimAmount() {
+        return BlurDialogEngine.DEFAULT_DIM_AMOUNT;
+    }
+
+    /**
+     * For inheritance purpose.
+     * <p/>
+     * Allow to add a light grain to the blurred background, hiding the banding of smooth gradients.
+     * Range : [0,255]
+     * <p/>
+     * Default grain level is 0.
+     *
+     * @return grain amplitude, 0 for no grain.
+     */
+    protected int getGrainLevel() {
+        return BlurDialogEngine.DEFAULT_GRAIN_LEVEL;
+    }
+
+    /**
+     * For inheritance purpose.
+     * <p/>
+     * Enable or disable the grayscale blur.
+     * <p/>
+     * Only the luminance of the background is blurred, which is faster and lighter than a color
+     * blur. The result is rendered white over black, tinted and dimmed according to
+     * {@link #getTintColor()} and {@link #getDimAmount()}.
+     * <p/>
+     * Disable by default.
+     *
+     * @return true to blur the luminance only.
+     */
+    protected boolean isGrayscaleEnable() {
+        return BlurDialogEngine.DEFAULT_GRAYSCALE;
+    }
+
+    /**
+     * For inheritance purpose.
+     * <p/>
+     * Allow to customize the threshold under which the background is considered as uniform.
+     * <p/>
+     * When every channel of the sampled background is within the threshold of a single color,
+     * the blur is skipped and the background is rendered as a solid color.
+     * Range : [0,255], negative to always blur.
+     * <p/>
+     * Disable by default.
+     *
+     * @return maximum deviation of a channel, negative to always blur.
+     */
+    protected int getUniformBackgroundThreshold() {
+        return BlurDialogEngine.DEFAULT_UNIFORM_BACKGROUND_THRESHOLD;
+    }
+
+    /**
+     * For inheritance purpose.
+     * <p/>
+     * Allow to set the perceived blur radius, in dp, instead of the down scale factor and the
+     * blur radius.
+     * <p/>
+     * When set, the largest down scale factor and the smallest blur radius giving the same
+     * perceived blur are picked, {@link #getDownScaleFactor()} and {@link #getBlurRadius()} are
+     * ignored. The down scaled background is capped whatever the screen density.
+     * Range : [0,infinity)
+     * <p/>
+     * Default is 0, down scale factor and blur radius are used as set.
+     *
+     * @return perceived blur radius in dp, 0 to use the down scale factor and the blur radius.
+     */
+    protected float getTargetBlur() {
+        return BlurDialogEngine.DEFAULT_TARGET_BLUR;
+    }
+
+    /**
+     * For inheritance purpose.
+     * <p/>
+     * Allow to set a latency budget for the capture and the blur of the background.
+     * <p/>
+     * When set, the latency of the blur is measured across dialogs and the down scale factor is
+     * raised, up to {@link #getMaxDownScaleFactor()}, or the blur backend switched, to stay within
+     * the budget on slower devices. {@link #getDownScaleFactor()} remains the best quality used.
+     * Range : [0,infinity)
+     * <p/>
+     * Default is 0, adaptive quality is disabled.
+     *
+     * @return latency budget in ms, for instance 16 or 32, 0 to disable the adaptive quality.
+     */
+    protected int getLatencyBudget() {
+        return BlurDialogEngine.DEFAULT_LATENCY_BUDGET;
+    }
+
+    /**
+     * For inheritance purpose.
+     * <p/>
+     * Allow to customize the quality floor of the adaptive quality, as the largest down scale
+     * factor which can be picked to stay within {@link #getLatencyBudget()}.
+     * Range : [getDownScaleFactor(),infinity)
+     * <p/>
+     * Default largest down scale factor is 16.0.
+     *
+     * @return largest down scale factor.
+     */
+    protected float getMaxDownScaleFactor() {
+        return BlurDialogEngine.DEFAULT_MAX_DOWN_SCALE_FACTOR;
+    }
+
+    /**
+     * For inheritance purpose.
+     * <p/>
+     * Allow to set a deadline for the blur.
+     * <p/>
+     * When the blur isn't ready by the deadline, a plain dim is displayed instead of delaying the
+     * blurred background. The blur is cross faded over the dim if it's ready shortly after,
+     * otherwise it's given up.
+     * Range : [0,infinity)
+     * <p/>
+     * Default is 0, the blur is awaited whatever the time it takes.
+     *
+     * @return deadline in ms, for instance 150, 0 to wait for the blur.
+     */
+    protected int getBlurDeadline() {
+        return BlurDialogEngine.DEFAULT_BLUR_DEADLINE;
+    }
+
+    /**
+     * For inheritance purpose.
+     * <p/>
+     * Enable or disable the cheaper quality under memory pressure.
+     * <p/>
+     * Once the memory is running low, the blurs of the following seconds use a larger down scale
+     * factor and skip RenderScript and live blur.
+     * <p/>
+     * Disable by default.
+     *
+     * @return true to reduce the quality under memory pressure.
+     */
+    protected boolean isQualityReducedOnMemoryPressure() {
+        return BlurDialogEngine.DEFAULT_REDUCE_QUALITY_ON_MEMORY_PRESSURE;
+    }
+
+    /**
+     * For inheritance purpose.
+     * <p/>
+     * Allow to degrade the blur when the device is in power save mode or heating up.
+     * <p/>
+     * Among {@link BlurDialogEngine#POWER_SAVE_POLICY_NONE},
+     * {@link BlurDialogEngine#POWER_SAVE_POLICY_REDUCED_QUALITY} and
+     * {@link BlurDialogEngine#POWER_SAVE_POLICY_DIM_ONLY}.
+     * <p/>
+     * Blur isn't degraded by default.
+     *
+     * @return power save policy.
+     */
+    protected int getPowerSavePolicy() {
+        return BlurDialogEngine.DEFAULT_POWER_SAVE_POLICY;
+    }
+
+    /**
+     * For inheritance purpose.
+     * <p/>
+     * Allow to retrieve the timings of each blur, for instance to ship them to a telemetry.
+     * <p/>
+     * No listener by default.
+     *
+     * @return listener notified of the metrics of each blur, null for none.
+     */
+    protected BlurMetricsListener getBlurMetricsListener() {
+        return null;
+    }
+
+    /**
+     * For inheritance purpose.
+     * <p/>
+     * Allow to keep the blurred background on the disk for screens looking the same on every
+     * launch, such as an onboarding or a settings screen. The blur is read back instead of being
+     * processed again as long as the screen content and the blur parameters don't change.
+     * <p/>
+     * Disable by default.
+     *
+     * @return identity of the blurred screen, for instance its class name. Null to disable.
+     */
+    protected String getDiskCacheKey() {
+        return null;
+    }
 }
@@ -0,0 +1,443 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Disk cache of the blurred backgrounds, shared by the whole process.
+ * <p/>
+ * Screens looking the same on every launch don't need to be blurred again once the process
+ * restarts. Blurred bitmaps are stored as their raw pixels behind a small header, no encoding
+ * involved, and read back through a memory mapped file straight into a new bitmap.
+ * <p/>
+ * Entries are evicted in least recently used order once the cache exceeds its maximum size. Writes
+ * are processed in order on a dedicated low priority thread, the blur thread only copies the pixels.
+ */
+final class BlurDiskCache {
+
+    /**
+     * Name of the cache directory, in the cache dir of the application.
+     */
+    static final String DIRECTORY = "blur_dialog_cache";
+
+    /**
+     * Size of the header of an entry : magic, version, width, height, config and row bytes.
+     */
+    static final int HEADER_SIZE = 6 * 4;
+
+    /**
+     * First int of an entry.
+     */
+    private static final int MAGIC = 0x424c5552;
+
+    /**
+     * Version of the entry format, entries of another version are dropped.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Extension of the entries.
+     */
+    private static final String EXTENSION = ".blur";
+
+    /**
+     * Extension of the entries being written.
+     */
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    /**
+     * Bitmap configs which can be stored, indexed by the config code of the header.
+     */
+    private static final Bitmap.Config[] CONFIGS = new Bitmap.Config[]{
+        Bitmap.Config.ALPHA_8, Bitmap.Config.RGB_565, Bitmap.Config.ARGB_8888
+    };
+
+    /**
+     * Cache shared by every engine of the process.
+     */
+    private static BlurDiskCache sInstance;
+
+    /**
+     * Maximum size of the cache in bytes.
+     */
+    private static volatile int sMaxSize = BlurDialogEngine.DEFAULT_DISK_CACHE_MAX_SIZE;
+
+    /**
+     * Directory holding the entries.
+     */
+    private final File mDirectory;
+
+    /**
+     * Size in bytes of each entry, by file name, in least recently used order.
+     */
+    private final LinkedHashMap<String, Long> mEntries;
+
+    /**
+     * File names of the entries queued for writing.
+     */
+    private final Set<String> mPendingWrites;
+
+    /**
+     * Thread writing the entries.
+     */
+    private final ExecutorService mWriter;
+
+    /**
+     * Total size of the entries in bytes.
+     */
+    private long mSize;
+
+    /**
+     * True once the entries already on disk have been listed.
+     */
+    private boolean mIndexLoaded;
+
+    /**
+     * Disk cache of the blurred backgrounds.
+     *
+     * @param directory directory holding the entries.
+     */
+    private BlurDiskCache(File directory) {
+        mDirectory = directory;
+        mEntries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+        mPendingWrites = new HashSet<String>();
+        mWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "BlurDiskCache");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Retrieve the cache shared by every engine of the process.
+     *
+     * @param context any context.
+     * @return disk cache.
+     */
+    static synchronized BlurDiskCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new BlurDiskCache(new File(context.getApplicationContext().getCacheDir(), DIRECTORY));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Set the maximum size of the cache, applied on the next write.
+     *
+     * @param maxSize maximum size in bytes.
+     */
+    static void setMaxSize(int maxSize) {
+        sMaxSize = maxSize;
+    }
+
+    /**
+     * Compute a fingerprint of the content of a bitmap.
+     *
+     * @param bitmap bitmap to fingerprint.
+     * @return 64 bits FNV-1a hash of the pixels.
+     */
+    static long fingerprint(Bitmap bitmap) {
+        final int w = bitmap.getWidth();
+        final int h = bitmap.getHeight();
+        int[] pix = BlurBufferPool.obtain(w * h);
+        bitmap.getPixels(pix, 0, w, 0, 0, w, h);
+        final int size = w * h;
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < size; i++) {
+            hash ^= pix[i];
+            hash *= 0x100000001b3L;
+        }
+        BlurBufferPool.recycle(pix);
+        return hash;
+    }
+
+    /**
+     * Read a blurred bitmap back from the cache.
+     *
+     * @param key key of the blurred bitmap.
+     * @return new mutable bitmap, null if not cached.
+     */
+    Bitmap get(String key) {
+        final String name = getFileName(key);
+        synchronized (this) {
+            loadIndex();
+            if (mEntries.get(name) == null) {
+                return null;
+            }
+        }
+
+        final File file = new File(mDirectory, name + EXTENSION);
+        RandomAccessFile input = null;
+        try {
+            input = new RandomAccessFile(file, "r");
+            final FileChannel channel = input.getChannel();
+            final Bitmap bitmap = read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            if (bitmap == null) {
+                remove(name);
+            } else {
+                // keep the recency across process restarts.
+                file.setLastModified(System.currentTimeMillis());
+            }
+            return bitmap;
+        } catch (IOException e) {
+            remove(name);
+            return null;
+        } finally {
+            close(input);
+        }
+    }
+
+    /**
+     * Store a blurred bitmap.
+     * <p/>
+     * The pixels are copied right away, the bitmap can be recycled as soon as this returns.
+     *
+     * @param key    key of the blurred bitmap.
+     * @param bitmap blurred bitmap.
+     */
+    void put(String key, Bitmap bitmap) {
+        final int config = Arrays.asList(CONFIGS).indexOf(bitmap.getConfig());
+        final int rowBytes = bitmap.getRowBytes();
+        final int size = HEADER_SIZE + rowBytes * bitmap.getHeight();
+        if (config == -1 || size > sMaxSize) {
+            return;
+        }
+        final String name = getFileName(key);
+        synchronized (this) {
+            loadIndex();
+            if (mEntries.containsKey(name) || !mPendingWrites.add(name)) {
+                return;
+            }
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC)
+            .putInt(VERSION)
+            .putInt(bitmap.getWidth())
+            .putInt(bitmap.getHeight())
+            .putInt(config)
+            .putInt(rowBytes);
+        bitmap.copyPixelsToBuffer(buffer);
+        buffer.flip();
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(name, buffer);
+            }
+        });
+    }
+
+    /**
+     * Remove every entry, once the pending writes are done.
+     */
+    void clear() {
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (BlurDiskCache.this) {
+                    loadIndex();
+                    for (String name : mEntries.keySet()) {
+                        new File(mDirectory, name + EXTENSION).delete();
+                    }
+                    mEntries.clear();
+                    mSize = 0;
+                }
+            }
+        });
+    }
+
+    /**
+     * Write an entry and evict the least recently used ones if the cache has grown too large.
+     * <p/>
+     * Written to a temporary file first, a partially written entry is never read.
+     *
+     * @param name   file name of the entry.
+     * @param buffer header and pixels of the entry.
+     */
+    private void write(String name, ByteBuffer buffer) {
+        final File temp = new File(mDirectory, name + TEMP_EXTENSION);
+        final File file = new File(mDirectory, name + EXTENSION);
+        FileOutputStream output = null;
+        boolean written = false;
+        try {
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                return;
+            }
+            output = new FileOutputStream(temp);
+            final FileChannel channel = output.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            output.close();
+            output = null;
+            written = temp.renameTo(file);
+        } catch (IOException e) {
+            // dropped, the background will be blurred again next time.
+            written = false;
+        } finally {
+            close(output);
+            if (!written) {
+                temp.delete();
+            }
+            synchronized (this) {
+                mPendingWrites.remove(name);
+                if (written) {
+                    mEntries.put(name, file.length());
+                    mSize += file.length();
+                    trimToSize();
+                }
+            }
+        }
+    }
+
+    /**
+     * Read an entry into a new bitmap.
+     *
+     * @param buffer content of the entry.
+     * @return new mutable bitmap, null if the entry is invalid.
+     */
+    private static Bitmap read(MappedByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+        final int width = buffer.getInt();
+        final int height = buffer.getInt();
+        final int config = buffer.getInt();
+        final int rowBytes = buffer.getInt();
+        if (width <= 0 || height <= 0 || config < 0 || config >= CONFIGS.length
+            || buffer.remaining() != rowBytes * height) {
+            return null;
+        }
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, CONFIGS[config]);
+        if (bitmap.getRowBytes() != rowBytes) {
+            // written with another row alignment, can't be copied as is.
+            bitmap.recycle();
+            return null;
+        }
+        bitmap.copyPixelsFromBuffer(buffer);
+        return bitmap;
+    }
+
+    /**
+     * List the entries already on disk, from the least recently used one.
+     * <p/>
+     * Must be called with the lock held.
+     */
+    private void loadIndex() {
+        if (mIndexLoaded) {
+            return;
+        }
+        mIndexLoaded = true;
+        final File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                final long lhsModified = lhs.lastModified();
+                final long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            final String fileName = file.getName();
+            if (fileName.endsWith(EXTENSION)) {
+                mEntries.put(fileName.substring(0, fileName.length() - EXTENSION.length()), file.length());
+                mSize += file.length();
+            } else {
+                // left over by an interrupted write.
+                file.delete();
+            }
+        }
+        trimToSize();
+    }
+
+    /**
+     * Evict the least recently used entries until the cache fits its maximum size.
+     * <p/>
+     * Must be called with the lock held.
+     */
+    private void trimToSize() {
+        final Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (mSize > sMaxSize && iterator.hasNext()) {
+            final Map.Entry<String, Long> eldest = iterator.next();
+            new File(mDirectory, eldest.getKey() + EXTENSION).delete();
+            mSize -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Drop an entry which couldn't be read.
+     *
+     * @param name file name of the entry.
+     */
+    private synchronized void remove(String name) {
+        final Long size = mEntries.remove(name);
+        if (size != null) {
+            mSize -= size;
+            new File(mDirectory, name + EXTENSION).delete();
+        }
+    }
+
+    /**
+     * Retrieve the file name of an entry, a digest of its key.
+     *
+     * @param key key of the entry.
+     * @return file name, extension excluded.
+     */
+    private static String getFileName(String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(Charset.forName("UTF-8")));
+            final StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(key.hashCode()) + "_" + key.length();
+        }
+    }
+
+    /**
+     * Close a file, ignoring errors.
+     *
+     * @param closeable file to close, can be null.
+     */
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // nothing left to release.
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+import android.annotation.TargetApi;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.os.Process;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads used to blur out of the dialogs, shared by the whole process.
+ * <p/>
+ * One thread per core, keeping a core for the ui thread, bounded to a few threads since the blur
+ * is memory bound. Threads run at background priority and are created on demand.
+ * <p/>
+ * Blurs of the dialogs, of {@link Blurrer} and of {@link BlurBatch} share these threads instead of
+ * competing with each other.
+ */
+final class BlurExecutor {
+
+    /**
+     * Maximum number of blur threads.
+     */
+    static final int MAX_THREAD_COUNT = 4;
+
+    /**
+     * Executor shared by the process, lazily created.
+     */
+    private static ExecutorService sExecutor;
+
+    /**
+     * Non instantiable class.
+     */
+    private BlurExecutor() {
+
+    }
+
+    /**
+     * Retrieve the number of blur threads.
+     *
+     * @return thread count, at least 1.
+     */
+    static int getThreadCount() {
+        return Math.max(1, Math.min(MAX_THREAD_COUNT, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Run a task on a blur thread.
+     *
+     * @param task task to run.
+     */
+    static void execute(Runnable task) {
+        getExecutor().execute(task);
+    }
+
+    /**
+     * Run an async task on the blur threads, its result is still delivered on the ui thread.
+     * <p/>
+     * Before Honeycomb, async tasks run on their own thread pool.
+     *
+     * @param task task to run.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    static void execute(AsyncTask<Void, ?, ?> task) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            task.executeOnExecutor(getExecutor());
+        } else {
+            task.execute();
+        }
+    }
+
+    /**
+     * Retrieve the executor shared by the process.
+     *
+     * @return blur executor.
+     */
+    static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newFixedThreadPool(getThreadCount(), new ThreadFactory() {
+                /**
+                 * Number of threads created, used to name them.
+                 */
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "BlurExecutor #" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+}
@@ -0,0 +1,252 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.os.AsyncTask;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Keep track of the blurs in flight across every engine of the process and coalesce identical ones.
+ * <p/>
+ * A blur is identified by the window it captured, its parameters and a fingerprint of the
+ * capture. An engine about to blur the same background as a blur already in flight joins it and
+ * receives its own copy of the result instead of capturing and blurring again, which happens when
+ * a dialog is dismissed and shown again quickly or when two dialogs are shown at once.
+ * <p/>
+ * A blur left by all of its requesters is cancelled if it hasn't started yet. Once started, it's
+ * kept in flight until done, a requester showing up meanwhile still gets its result.
+ * <p/>
+ * Must be used from the ui thread.
+ */
+final class BlurJobScheduler {
+
+    /**
+     * Number of samples of the capture fingerprint along each axis.
+     */
+    static final int FINGERPRINT_SAMPLES = 32;
+
+    /**
+     * Scheduler shared by every engine of the process.
+     */
+    private static BlurJobScheduler sInstance;
+
+    /**
+     * Blurs in flight which can be joined, by key.
+     */
+    private final HashMap<String, Job> mJobs;
+
+    /**
+     * Keep track of the blurs in flight.
+     */
+    private BlurJobScheduler() {
+        mJobs = new HashMap<String, Job>();
+    }
+
+    /**
+     * Retrieve the scheduler shared by every engine of the process.
+     *
+     * @return job scheduler.
+     */
+    static BlurJobScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new BlurJobScheduler();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Compute a cheap fingerprint of a capture, sampling a grid of pixels.
+     * <p/>
+     * Two captures of the same window a few ms apart only differ by small details, if any, which
+     * wouldn't survive the blur anyway.
+     *
+     * @param capture captured background.
+     * @return 64 bits FNV-1a hash of the sampled pixels.
+     */
+    static long fingerprint(Bitmap capture) {
+        final int w = capture.getWidth();
+        final int h = capture.getHeight();
+        long hash = 0xcbf29ce484222325L;
+        for (int j = 0; j < FINGERPRINT_SAMPLES; j++) {
+            final int y = (int) ((j + 0.5f) * h / FINGERPRINT_SAMPLES);
+            for (int i = 0; i < FINGERPRINT_SAMPLES; i++) {
+                final int x = (int) ((i + 0.5f) * w / FINGERPRINT_SAMPLES);
+                hash ^= capture.getPixel(x, y);
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Join the blur in flight with the given key, if any.
+     *
+     * @param key      key of the blur.
+     * @param callback notified once blurred.
+     * @return joined blur, null if none is in flight.
+     */
+    Job join(String key, Callback callback) {
+        final Job job = mJobs.get(key);
+        if (job != null) {
+            job.mCallbacks.add(callback);
+        }
+        return job;
+    }
+
+    /**
+     * Start to track a new blur.
+     *
+     * @param key      key of the blur, null if it can't be joined.
+     * @param task     task processing the blur.
+     * @param callback notified once blurred, with the metrics of the blur.
+     * @return tracked blur.
+     */
+    Job start(String key, AsyncTask<?, ?, ?> task, Callback callback) {
+        final Job job = new Job(key, task, callback);
+        if (key != null) {
+            // a previous blur with the same key is done or superseded, it can't be joined anymore.
+            mJobs.put(key, job);
+        }
+        return job;
+    }
+
+    /**
+     * Stop to wait for a blur.
+     * <p/>
+     * The blur is cancelled once left by all of its requesters, unless it has already started.
+     *
+     * @param job      blur to leave.
+     * @param callback callback given when starting or joining the blur.
+     */
+    void leave(Job job, Callback callback) {
+        job.mCallbacks.remove(callback);
+        if (job.mOwner == callback) {
+            // the requester which started the blur may be an engine being destroyed, don't retain it.
+            job.mOwner = null;
+        }
+        if (job.mCallbacks.isEmpty() && !job.mStarted) {
+            job.mTask.cancel(true);
+            remove(job);
+        }
+    }
+
+    /**
+     * Deliver the result of a blur to its requesters.
+     * <p/>
+     * The requester which started the blur receives the drawable and the metrics, the others a
+     * copy of the drawable sharing the same bitmap. A blur nobody waits for anymore is given back
+     * to the {@link BlurBitmapPool}.
+     *
+     * @param job     processed blur.
+     * @param blurred drawable of the blurred background, can be null.
+     * @param metrics metrics of the blur.
+     */
+    void complete(Job job, Drawable blurred, BlurMetrics metrics) {
+        remove(job);
+        final Drawable.ConstantState state = blurred == null ? null : blurred.getConstantState();
+        final List<Callback> callbacks = new ArrayList<Callback>(job.mCallbacks);
+        job.mCallbacks.clear();
+        if (callbacks.isEmpty()) {
+            for (Bitmap bitmap : BlurBitmapPool.getBitmaps(blurred)) {
+                BlurBitmapPool.recycle(bitmap);
+            }
+            return;
+        }
+        boolean delivered = false;
+        for (Callback callback : callbacks) {
+            if (callback == job.mOwner) {
+                callback.onBlurred(blurred, metrics);
+                delivered = true;
+            }
+        }
+        for (Callback callback : callbacks) {
+            if (callback != job.mOwner) {
+                callback.onBlurred(delivered && state != null ? state.newDrawable() : blurred, null);
+                delivered = true;
+            }
+        }
+    }
+
+    /**
+     * Stop to track a blur.
+     *
+     * @param job blur to remove.
+     */
+    private void remove(Job job) {
+        if (job.mKey != null && mJobs.get(job.mKey) == job) {
+            mJobs.remove(job.mKey);
+        }
+    }
+
+    /**
+     * Callback notified once a blur is processed.
+     */
+    interface Callback {
+
+        /**
+         * Called on the ui thread once the blur is processed.
+         *
+         * @param blurred drawable of the blurred background, null if the blur failed.
+         * @param metrics metrics of the blur, null if joined.
+         */
+        void onBlurred(Drawable blurred, BlurMetrics metrics);
+    }
+
+    /**
+     * Blur in flight.
+     */
+    static final class Job {
+
+        /**
+         * Key of the blur, null if it can't be joined.
+         */
+        private final String mKey;
+
+        /**
+         * Task processing the blur.
+         */
+        private final AsyncTask<?, ?, ?> mTask;
+
+        /**
+         * Requester which started the blur, null once it left.
+         */
+        private Callback mOwner;
+
+        /**
+         * Requesters waiting for the blur.
+         */
+        private final List<Callback> mCallbacks;
+
+        /**
+         * True once the blur started to be processed.
+         */
+        private volatile boolean mStarted;
+
+        /**
+         * Blur in flight.
+         *
+         * @param key   key of the blur, null if it can't be joined.
+         * @param task  task processing the blur.
+         * @param owner requester which started the blur.
+         */
+        private Job(String key, AsyncTask<?, ?, ?> task, Callback owner) {
+            mKey = key;
+            mTask = task;
+            mOwner = owner;
+            mCallbacks = new ArrayList<Callback>();
+            mCallbacks.add(owner);
+        }
+
+        /**
+         * Mark the blur as started, from then it's processed until done.
+         * <p/>
+         * Can be called from any thread.
+         */
+        void markStarted() {
+            mStarted = true;
+        }
+    }
+}
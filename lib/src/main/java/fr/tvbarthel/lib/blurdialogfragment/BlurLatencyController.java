@@ -0,0 +1,166 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+/**
+ * Keep a rolling measurement of the blur latency and adapt the blur parameters to a latency budget.
+ * <p/>
+ * The latency is modeled as the capture time, which depends on the screen, plus the blur time,
+ * which is proportional to the number of down scaled pixels. Both are smoothed across the blurs
+ * of the whole process, the blur cost being measured for each backend. Before each blur, the
+ * smallest down scale factor which fits the budget is picked, bounded by the quality floor, and
+ * the other backend is tried when the requested one can't fit the budget even at the floor.
+ * <p/>
+ * Must be used from the ui thread.
+ */
+final class BlurLatencyController {
+
+    /**
+     * Backend blurring with {@link FastBlurHelper}.
+     */
+    static final int BACKEND_FAST_BLUR = 0;
+
+    /**
+     * Backend blurring with {@link RenderScriptBlurHelper}.
+     */
+    static final int BACKEND_RENDER_SCRIPT = 1;
+
+    /**
+     * Weight of the last measurement in the rolling averages.
+     */
+    static final float SMOOTHING = 0.3f;
+
+    /**
+     * Controller shared by every engine of the process.
+     */
+    private static BlurLatencyController sInstance;
+
+    /**
+     * Rolling average of the capture time in ms, negative until measured.
+     */
+    private float mCaptureMs;
+
+    /**
+     * Rolling average of the blur time per down scaled pixel in ms for each backend, negative until measured.
+     */
+    private final float[] mBlurMsPerPixel;
+
+    /**
+     * Keep a rolling measurement of the blur latency.
+     */
+    private BlurLatencyController() {
+        mCaptureMs = -1f;
+        mBlurMsPerPixel = new float[]{-1f, -1f};
+    }
+
+    /**
+     * Retrieve the controller shared by every engine of the process.
+     *
+     * @return latency controller.
+     */
+    static BlurLatencyController getInstance() {
+        if (sInstance == null) {
+            sInstance = new BlurLatencyController();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Record the latency of a blur.
+     *
+     * @param backend    backend used to blur.
+     * @param captureMs  time spent capturing the background.
+     * @param blurMs     time spent down scaling and blurring the background.
+     * @param pixelCount number of down scaled pixels blurred.
+     */
+    void record(int backend, float captureMs, float blurMs, float pixelCount) {
+        mCaptureMs = smooth(mCaptureMs, captureMs);
+        if (pixelCount > 0) {
+            mBlurMsPerPixel[backend] = smooth(mBlurMsPerPixel[backend], blurMs / pixelCount);
+        }
+    }
+
+    /**
+     * Pick the backend used for the next blur.
+     *
+     * @param requested     backend requested.
+     * @param areaPixels    number of pixels of the blurred area, before down scale.
+     * @param maxFactor     largest down scale factor allowed.
+     * @param budgetMs      latency budget.
+     * @return requested backend, or the other one if the requested one can't fit the budget.
+     */
+    int resolveBackend(int requested, float areaPixels, float maxFactor, float budgetMs) {
+        final float requestedLatency = predict(requested, areaPixels / (maxFactor * maxFactor));
+        if (requestedLatency < 0 || requestedLatency <= budgetMs) {
+            return requested;
+        }
+        final int other = requested == BACKEND_FAST_BLUR ? BACKEND_RENDER_SCRIPT : BACKEND_FAST_BLUR;
+        final float otherLatency = predict(other, areaPixels / (maxFactor * maxFactor));
+        // an unmeasured backend is worth a try since the requested one doesn't fit anyway.
+        return otherLatency < requestedLatency ? other : requested;
+    }
+
+    /**
+     * Pick the cheapest backend, regardless of any budget.
+     *
+     * @param requested  backend requested.
+     * @param pixelCount number of down scaled pixels blurred.
+     * @return requested backend, or the other one if both are measured and the other one is cheaper.
+     */
+    int resolveCheaperBackend(int requested, float pixelCount) {
+        final int other = requested == BACKEND_FAST_BLUR ? BACKEND_RENDER_SCRIPT : BACKEND_FAST_BLUR;
+        final float requestedLatency = predict(requested, pixelCount);
+        final float otherLatency = predict(other, pixelCount);
+        if (requestedLatency < 0 || otherLatency < 0) {
+            return requested;
+        }
+        return otherLatency < requestedLatency ? other : requested;
+    }
+
+    /**
+     * Pick the down scale factor used for the next blur.
+     *
+     * @param backend    backend used to blur.
+     * @param areaPixels number of pixels of the blurred area, before down scale.
+     * @param factor     requested down scale factor, the smallest one allowed.
+     * @param maxFactor  largest down scale factor allowed.
+     * @param budgetMs   latency budget.
+     * @return smallest down scale factor fitting the budget, within the allowed range.
+     */
+    float resolveDownScaleFactor(int backend, float areaPixels, float factor, float maxFactor, float budgetMs) {
+        final float blurMsPerPixel = mBlurMsPerPixel[backend];
+        if (blurMsPerPixel < 0 || mCaptureMs < 0) {
+            return factor;
+        }
+        final float remainingMs = budgetMs - mCaptureMs;
+        if (remainingMs <= 0) {
+            return maxFactor;
+        }
+        // blur time is proportional to the pixel count, hence to the inverse square of the factor.
+        final float needed = (float) Math.sqrt(areaPixels * blurMsPerPixel / remainingMs);
+        return Math.min(maxFactor, Math.max(factor, needed));
+    }
+
+    /**
+     * Predict the latency of a blur.
+     *
+     * @param backend    backend used to blur.
+     * @param pixelCount number of down scaled pixels blurred.
+     * @return predicted latency in ms, negative if the backend hasn't been measured yet.
+     */
+    private float predict(int backend, float pixelCount) {
+        if (mBlurMsPerPixel[backend] < 0 || mCaptureMs < 0) {
+            return -1f;
+        }
+        return mCaptureMs + mBlurMsPerPixel[backend] * pixelCount;
+    }
+
+    /**
+     * Add a measurement to a rolling average.
+     *
+     * @param average     current average, negative if none.
+     * @param measurement new measurement.
+     * @return updated average.
+     */
+    private static float smooth(float average, float measurement) {
+        return average < 0 ? measurement : average + SMOOTHING * (measurement - average);
+    }
+}
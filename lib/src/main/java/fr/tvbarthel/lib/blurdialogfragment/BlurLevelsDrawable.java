@@ -0,0 +1,110 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Drawable used to render a blur which strength is driven by the drawable level.
+ * <p/>
+ * Hold a small set of levels, from the sharpest one to the final blur, and cross fade the two
+ * levels surrounding the current drawable level. Since every level is built once, animating the
+ * drawable level from 0 to {@link BlurLevelsDrawable#MAX_LEVEL} only costs compositing.
+ */
+final class BlurLevelsDrawable extends Drawable {
+
+    /**
+     * Drawable level matching the final blur.
+     */
+    static final int MAX_LEVEL = 10000;
+
+    /**
+     * Levels sorted from the sharpest one to the final blur.
+     */
+    private final Bitmap[] mLevels;
+
+    /**
+     * Paint used to draw and cross fade the levels.
+     */
+    private final Paint mPaint;
+
+    /**
+     * Alpha applied to the whole drawable.
+     */
+    private int mAlpha;
+
+    /**
+     * Drawable used to render a blur which strength is driven by the drawable level.
+     *
+     * @param levels levels sorted from the sharpest one to the final blur, all sharing the same ratio.
+     */
+    BlurLevelsDrawable(Bitmap[] levels) {
+        mLevels = levels;
+        mPaint = new Paint();
+        mPaint.setFlags(Paint.FILTER_BITMAP_FLAG);
+        mAlpha = 255;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        final Rect bounds = getBounds();
+        final float position = getLevel() * (mLevels.length - 1) / (float) MAX_LEVEL;
+        final int lower = Math.min((int) position, mLevels.length - 1);
+        final float fraction = position - lower;
+
+        mPaint.setAlpha(mAlpha);
+        canvas.drawBitmap(mLevels[lower], null, bounds, mPaint);
+
+        // blend the next level on top, levels are opaque so the result is a linear interpolation.
+        if (fraction > 0f && lower + 1 < mLevels.length) {
+            mPaint.setAlpha((int) (mAlpha * fraction));
+            canvas.drawBitmap(mLevels[lower + 1], null, bounds, mPaint);
+        }
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mAlpha = alpha;
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return mAlpha == 255 ? PixelFormat.OPAQUE : PixelFormat.TRANSLUCENT;
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mLevels[mLevels.length - 1].getWidth();
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mLevels[mLevels.length - 1].getHeight();
+    }
+
+    @Override
+    protected boolean onLevelChange(int level) {
+        invalidateSelf();
+        return true;
+    }
+
+    /**
+     * Retrieve the levels rendered by the drawable.
+     *
+     * @return levels sorted from the sharpest one to the final blur.
+     */
+    Bitmap[] getLevels() {
+        return mLevels;
+    }
+}
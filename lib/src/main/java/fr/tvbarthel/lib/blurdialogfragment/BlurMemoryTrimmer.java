@@ -0,0 +1,110 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Build;
+import android.os.SystemClock;
+
+/**
+ * Release the memory held by the library according to the memory pressure.
+ * <p/>
+ * Registered once on the application context, step by step according to the trim level :
+ * <ul>
+ * <li>{@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_MODERATE} : pooled buffers are dropped.</li>
+ * <li>{@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW} : the division table of the fast blur
+ * is dropped and engines can switch to a cheaper quality for a while.</li>
+ * <li>{@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_CRITICAL} and
+ * {@link ComponentCallbacks2#TRIM_MEMORY_COMPLETE} : the RenderScript context is destroyed.</li>
+ * </ul>
+ * The levels sent once the ui is hidden or while in background only drop the buffers and the
+ * division table, the RenderScript context is costly to rebuild each time the user comes back.
+ */
+@TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+final class BlurMemoryTrimmer implements ComponentCallbacks2 {
+
+    /**
+     * Duration of the memory pressure once signaled, in ms.
+     */
+    static final long MEMORY_PRESSURE_DURATION = 30000;
+
+    /**
+     * Trimmer registered on the application context, null until registered.
+     */
+    private static BlurMemoryTrimmer sInstance;
+
+    /**
+     * Uptime of the last memory pressure signal, 0 if none.
+     */
+    private static volatile long sLastMemoryPressure;
+
+    /**
+     * Non instantiable outside of {@link BlurMemoryTrimmer#register(Context)}.
+     */
+    private BlurMemoryTrimmer() {
+
+    }
+
+    /**
+     * Register the trimmer on the application context, only once.
+     *
+     * @param context any context of the application.
+     */
+    static synchronized void register(Context context) {
+        if (sInstance != null || Build.VERSION.SDK_INT < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            return;
+        }
+        sInstance = new BlurMemoryTrimmer();
+        context.getApplicationContext().registerComponentCallbacks(sInstance);
+    }
+
+    /**
+     * Check if the memory is running low, until {@link BlurMemoryTrimmer#MEMORY_PRESSURE_DURATION}
+     * after the last signal.
+     *
+     * @return true if a cheaper quality should be used.
+     */
+    static boolean isUnderMemoryPressure() {
+        final long lastMemoryPressure = sLastMemoryPressure;
+        return lastMemoryPressure != 0
+            && SystemClock.uptimeMillis() - lastMemoryPressure < MEMORY_PRESSURE_DURATION;
+    }
+
+    /**
+     * Release the memory held by the library according to the given trim level.
+     *
+     * @param level trim level, see {@link ComponentCallbacks2}.
+     */
+    static void trim(int level) {
+        if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+            BlurBufferPool.clear();
+            BlurBitmapPool.clear();
+        }
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            FastBlurHelper.releaseDivisionTable();
+        }
+        if (level == TRIM_MEMORY_RUNNING_CRITICAL || level >= TRIM_MEMORY_COMPLETE) {
+            RenderScriptBlurHelper.release();
+        }
+        if (level == TRIM_MEMORY_RUNNING_LOW || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            // only running levels matter, the other ones are sent once the ui is hidden.
+            sLastMemoryPressure = SystemClock.uptimeMillis();
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        trim(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        trim(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        // nothing to release.
+    }
+}
@@ -0,0 +1,281 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+/**
+ * Timings and sizes of a single blur.
+ * <p/>
+ * A blur goes through the following phases, each one timed in nanoseconds :
+ * <ul>
+ * <li>{@link BlurMetrics#PHASE_CAPTURE} : capture of the background, on the ui thread.</li>
+ * <li>{@link BlurMetrics#PHASE_QUEUE} : wait before the background thread picks the blur.</li>
+ * <li>{@link BlurMetrics#PHASE_SCALE} : down scale of the captured background.</li>
+ * <li>{@link BlurMetrics#PHASE_BLUR} : blur kernel, including the post processing.</li>
+ * <li>{@link BlurMetrics#PHASE_DRAWABLE} : creation of the drawable, blur levels included.</li>
+ * <li>{@link BlurMetrics#PHASE_ATTACH} : attach of the blurred background, on the ui thread.</li>
+ * <li>{@link BlurMetrics#PHASE_FADE_IN} : fade in of the blurred background, ui thread delays included.</li>
+ * </ul>
+ */
+public final class BlurMetrics {
+
+    /**
+     * Capture of the background, on the ui thread.
+     */
+    public static final int PHASE_CAPTURE = 0;
+
+    /**
+     * Wait before the background thread picks the blur.
+     */
+    public static final int PHASE_QUEUE = 1;
+
+    /**
+     * Down scale of the captured background.
+     */
+    public static final int PHASE_SCALE = 2;
+
+    /**
+     * Blur kernel, including the post processing.
+     */
+    public static final int PHASE_BLUR = 3;
+
+    /**
+     * Creation of the drawable displaying the blurred background.
+     */
+    public static final int PHASE_DRAWABLE = 4;
+
+    /**
+     * Attach of the blurred background, on the ui thread.
+     */
+    public static final int PHASE_ATTACH = 5;
+
+    /**
+     * Fade in of the blurred background.
+     */
+    public static final int PHASE_FADE_IN = 6;
+
+    /**
+     * Number of phases.
+     */
+    public static final int PHASE_COUNT = 7;
+
+    /**
+     * No blur kernel applied, for instance for a uniform background.
+     */
+    public static final int BACKEND_NONE = 0;
+
+    /**
+     * Blurred with the fast blur algorithm.
+     */
+    public static final int BACKEND_FAST_BLUR = 1;
+
+    /**
+     * Blurred with RenderScript.
+     */
+    public static final int BACKEND_RENDER_SCRIPT = 2;
+
+    /**
+     * Luminance blurred with the fast blur algorithm.
+     */
+    public static final int BACKEND_GRAYSCALE = 3;
+
+    /**
+     * Names of the phases, used for the string representation.
+     */
+    private static final String[] PHASE_NAMES = new String[]{
+        "capture", "queue", "scale", "blur", "drawable", "attach", "fadeIn"
+    };
+
+    /**
+     * Names of the backends, used for the string representation.
+     */
+    private static final String[] BACKEND_NAMES = new String[]{
+        "None", "FastBlur", "RenderScript", "Grayscale"
+    };
+
+    /**
+     * Duration of each phase in ns.
+     */
+    private final long[] mDurations;
+
+    /**
+     * Backend used to blur.
+     */
+    private int mBackend;
+
+    /**
+     * Width of the captured background.
+     */
+    private int mCaptureWidth;
+
+    /**
+     * Height of the captured background.
+     */
+    private int mCaptureHeight;
+
+    /**
+     * Width of the down scaled background.
+     */
+    private int mOverlayWidth;
+
+    /**
+     * Height of the down scaled background.
+     */
+    private int mOverlayHeight;
+
+    /**
+     * Down scale factor used.
+     */
+    private float mDownScaleFactor;
+
+    /**
+     * Blur radius used.
+     */
+    private int mBlurRadius;
+
+    /**
+     * Timings and sizes of a single blur.
+     */
+    BlurMetrics() {
+        mDurations = new long[PHASE_COUNT];
+        mBackend = BACKEND_NONE;
+    }
+
+    /**
+     * Add the time elapsed since the given start to a phase.
+     *
+     * @param phase   phase, one of the PHASE_ constants.
+     * @param startNs start of the phase, from {@link System#nanoTime()}.
+     * @return end of the phase, start of the next one.
+     */
+    long endPhase(int phase, long startNs) {
+        final long endNs = System.nanoTime();
+        mDurations[phase] += endNs - startNs;
+        return endNs;
+    }
+
+    /**
+     * Set the parameters of the blur.
+     *
+     * @param backend         backend used, one of the BACKEND_ constants.
+     * @param downScaleFactor down scale factor used.
+     * @param blurRadius      blur radius used.
+     */
+    void setBlur(int backend, float downScaleFactor, int blurRadius) {
+        mBackend = backend;
+        mDownScaleFactor = downScaleFactor;
+        mBlurRadius = blurRadius;
+    }
+
+    /**
+     * Set the sizes of the blurred bitmaps.
+     *
+     * @param captureWidth  width of the captured background.
+     * @param captureHeight height of the captured background.
+     * @param overlayWidth  width of the down scaled background.
+     * @param overlayHeight height of the down scaled background.
+     */
+    void setSizes(int captureWidth, int captureHeight, int overlayWidth, int overlayHeight) {
+        mCaptureWidth = captureWidth;
+        mCaptureHeight = captureHeight;
+        mOverlayWidth = overlayWidth;
+        mOverlayHeight = overlayHeight;
+    }
+
+    /**
+     * Retrieve the duration of a phase.
+     *
+     * @param phase phase, one of the PHASE_ constants.
+     * @return duration in ns.
+     */
+    public long getDuration(int phase) {
+        return mDurations[phase];
+    }
+
+    /**
+     * Retrieve the total duration, from the capture to the end of the fade in.
+     *
+     * @return duration in ns.
+     */
+    public long getTotalDuration() {
+        long total = 0;
+        for (long duration : mDurations) {
+            total += duration;
+        }
+        return total;
+    }
+
+    /**
+     * Retrieve the backend used to blur.
+     *
+     * @return one of the BACKEND_ constants.
+     */
+    public int getBackend() {
+        return mBackend;
+    }
+
+    /**
+     * Retrieve the width of the captured background.
+     *
+     * @return width in px.
+     */
+    public int getCaptureWidth() {
+        return mCaptureWidth;
+    }
+
+    /**
+     * Retrieve the height of the captured background.
+     *
+     * @return height in px.
+     */
+    public int getCaptureHeight() {
+        return mCaptureHeight;
+    }
+
+    /**
+     * Retrieve the width of the down scaled background which is blurred.
+     *
+     * @return width in px.
+     */
+    public int getOverlayWidth() {
+        return mOverlayWidth;
+    }
+
+    /**
+     * Retrieve the height of the down scaled background which is blurred.
+     *
+     * @return height in px.
+     */
+    public int getOverlayHeight() {
+        return mOverlayHeight;
+    }
+
+    /**
+     * Retrieve the down scale factor used.
+     *
+     * @return down scale factor.
+     */
+    public float getDownScaleFactor() {
+        return mDownScaleFactor;
+    }
+
+    /**
+     * Retrieve the blur radius used.
+     *
+     * @return blur radius.
+     */
+    public int getBlurRadius() {
+        return mBlurRadius;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("BlurMetrics{backend=").append(BACKEND_NAMES[mBackend]);
+        for (int phase = 0; phase < PHASE_COUNT; phase++) {
+            builder.append(", ").append(PHASE_NAMES[phase]).append('=')
+                .append(mDurations[phase] / 1000).append("us");
+        }
+        return builder.append(", capture=").append(mCaptureWidth).append('x').append(mCaptureHeight)
+            .append(", overlay=").append(mOverlayWidth).append('x').append(mOverlayHeight)
+            .append(", factor=").append(mDownScaleFactor)
+            .append(", radius=").append(mBlurRadius)
+            .append('}').toString();
+    }
+}
@@ -0,0 +1,16 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+/**
+ * Listener notified of the metrics of each blur processed by a {@link BlurDialogEngine}.
+ * <p/>
+ * Called on the ui thread once the blurred background has faded in.
+ */
+public interface BlurMetricsListener {
+
+    /**
+     * Called once a blur is over.
+     *
+     * @param metrics timings and sizes of the blur, not modified afterwards.
+     */
+    void onBlurMetrics(BlurMetrics metrics);
+}
@@ -0,0 +1,511 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.Log;
+
+import fr.tvbarthel.lib.blurdialogfragment.core.GrayscaleStackBlur;
+
+/**
+ * Blur processing shared by the {@link BlurDialogEngine} and the {@link Blurrer} : down scale,
+ * uniform background detection, disk cache, blur fused with its post processing and drawable.
+ * <p/>
+ * A pipeline is configured on the ui thread then handed to a background thread, its parameters
+ * mustn't be changed afterwards. Each blur gets its own pipeline.
+ */
+final class BlurPipeline {
+
+    private static final String TAG = BlurPipeline.class.getSimpleName();
+
+    /**
+     * Application context, used by RenderScript, the disk cache and the drawables.
+     */
+    private final Context mContext;
+
+    /**
+     * Factor used to down scale the background.
+     */
+    private float mDownScaleFactor = BlurDialogEngine.DEFAULT_BLUR_DOWN_SCALE_FACTOR;
+
+    /**
+     * Radius used to blur the down scaled background.
+     */
+    private int mBlurRadius = BlurDialogEngine.DEFAULT_BLUR_RADIUS;
+
+    /**
+     * Boolean used to know if RenderScript should be used.
+     */
+    private boolean mUseRenderScript = BlurDialogEngine.DEFAULT_USE_RENDERSCRIPT;
+
+    /**
+     * Boolean used to know if the luminance only is blurred.
+     */
+    private boolean mGrayscale = BlurDialogEngine.DEFAULT_GRAYSCALE;
+
+    /**
+     * Tint color blended over the blurred background.
+     */
+    private int mTintColor = BlurDialogEngine.DEFAULT_TINT_COLOR;
+
+    /**
+     * Dim amount baked into the blurred background.
+     */
+    private float mDimAmount = BlurDialogEngine.DEFAULT_DIM_AMOUNT;
+
+    /**
+     * Grain level added to the blurred background.
+     */
+    private int mGrainLevel = BlurDialogEngine.DEFAULT_GRAIN_LEVEL;
+
+    /**
+     * Maximum deviation of a channel under which the background is uniform, negative to always blur.
+     */
+    private int mUniformBackgroundThreshold = BlurDialogEngine.DEFAULT_UNIFORM_BACKGROUND_THRESHOLD;
+
+    /**
+     * Boolean used to know if the levels animating the blur radius are built.
+     */
+    private boolean mBlurLevels;
+
+    /**
+     * Key of the screen in the disk cache, null if the disk cache isn't used.
+     */
+    private String mDiskCacheKey;
+
+    /**
+     * Boolean used to log the blur and draw its duration over the blurred background.
+     */
+    private boolean mDebugEnable;
+
+    /**
+     * Blur processing.
+     *
+     * @param context any context.
+     */
+    BlurPipeline(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Down scale an area of the given background.
+     * <p/>
+     * The height is rounded up and the width follows, in order to keep the same ratio as the one
+     * used for rendering.
+     *
+     * @param bkg             should be a bitmap of the background.
+     * @param area            area of the background to down scale.
+     * @param downScaleFactor factor used to down scale the area.
+     * @param config          config of the down scaled bitmap.
+     * @return down scaled copy of the area.
+     */
+    static Bitmap scale(Bitmap bkg, Rect area, float downScaleFactor, Bitmap.Config config) {
+        int height = getScaledHeight(area, downScaleFactor);
+        int width = getScaledWidth(area, height);
+
+        //overlay used to build scaled preview and blur background, reused from a previous blur if any
+        Bitmap overlay = BlurBitmapPool.obtain(width, height, config);
+
+        //scale and draw background view on the canvas overlay
+        Canvas canvas = new Canvas(overlay);
+        Paint paint = new Paint();
+        paint.setFlags(Paint.FILTER_BITMAP_FLAG);
+
+        //build drawing destination boundaries
+        final RectF destRect = new RectF(0, 0, overlay.getWidth(), overlay.getHeight());
+
+        //draw background from source area in source background to the destination area on the overlay
+        canvas.drawBitmap(bkg, area, destRect, paint);
+        return overlay;
+    }
+
+    /**
+     * Retrieve the height of a down scaled area.
+     *
+     * @param area            area to down scale.
+     * @param downScaleFactor down scale factor.
+     * @return down scaled height.
+     */
+    static int getScaledHeight(Rect area, float downScaleFactor) {
+        return (int) Math.ceil(area.height() / downScaleFactor);
+    }
+
+    /**
+     * Retrieve the width of a down scaled area, keeping its ratio.
+     *
+     * @param area         area to down scale.
+     * @param scaledHeight down scaled height.
+     * @return down scaled width.
+     */
+    static int getScaledWidth(Rect area, int scaledHeight) {
+        return (int) Math.ceil((double) area.width() * scaledHeight / area.height());
+    }
+
+    /**
+     * Set the factor used to down scale the background.
+     *
+     * @param factor down scale factor, at least 1.
+     */
+    void setDownScaleFactor(float factor) {
+        mDownScaleFactor = factor;
+    }
+
+    /**
+     * Set the radius used to blur the down scaled background.
+     *
+     * @param radius blur radius.
+     */
+    void setBlurRadius(int radius) {
+        mBlurRadius = radius;
+    }
+
+    /**
+     * Enable / disable the use of RenderScript, ignored in grayscale.
+     *
+     * @param useRenderScript true to use RenderScript.
+     */
+    void setUseRenderScript(boolean useRenderScript) {
+        mUseRenderScript = useRenderScript;
+    }
+
+    /**
+     * Enable / disable grayscale blur.
+     *
+     * @param grayscale true to blur the luminance only.
+     */
+    void setGrayscale(boolean grayscale) {
+        mGrayscale = grayscale;
+    }
+
+    /**
+     * Set the tint color blended over the blurred background.
+     *
+     * @param tintColor tint color, transparent for no tint.
+     */
+    void setTintColor(int tintColor) {
+        mTintColor = tintColor;
+    }
+
+    /**
+     * Set the dim amount baked into the blurred background.
+     *
+     * @param dimAmount dim amount, from 0 (no dim) to 1 (black).
+     */
+    void setDimAmount(float dimAmount) {
+        mDimAmount = dimAmount;
+    }
+
+    /**
+     * Set the grain level added to the blurred background.
+     *
+     * @param grainLevel grain amplitude, from 0 (no grain) to 255.
+     */
+    void setGrainLevel(int grainLevel) {
+        mGrainLevel = grainLevel;
+    }
+
+    /**
+     * Set the threshold under which the background is rendered as a solid color.
+     *
+     * @param maxDeviation maximum deviation of a channel, negative to always blur.
+     */
+    void setUniformBackgroundThreshold(int maxDeviation) {
+        mUniformBackgroundThreshold = maxDeviation;
+    }
+
+    /**
+     * Enable / disable the levels used to animate the blur radius, ignored in grayscale.
+     * <p/>
+     * Uniform background detection and disk cache are skipped when levels are built.
+     *
+     * @param blurLevels true to build the blur levels.
+     */
+    void setBlurLevels(boolean blurLevels) {
+        mBlurLevels = blurLevels;
+    }
+
+    /**
+     * Set the key of the screen in the disk cache.
+     *
+     * @param diskCacheKey key of the screen, null to skip the disk cache.
+     */
+    void setDiskCacheKey(String diskCacheKey) {
+        mDiskCacheKey = diskCacheKey;
+    }
+
+    /**
+     * Enable / disable debug mode, the disk cache is skipped in debug mode.
+     *
+     * @param enable true to log the blur and draw its duration over the blurred background.
+     */
+    void setDebugEnable(boolean enable) {
+        mDebugEnable = enable;
+    }
+
+    /**
+     * Retrieve the config of the down scaled background.
+     *
+     * @return ARGB_8888 for RenderScript, RGB_565 otherwise.
+     */
+    Bitmap.Config getOverlayConfig() {
+        // Render script doesn't work with RGB_565
+        return useRenderScript() ? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565;
+    }
+
+    /**
+     * Blur an area of the given background.
+     *
+     * @param bkg     should be a bitmap of the background, left untouched.
+     * @param area    area of the background to blur.
+     * @param metrics metrics of the blur, filled with the timings of the background phases.
+     * @return drawable of the blurred area.
+     */
+    Drawable blur(Bitmap bkg, Rect area, BlurMetrics metrics) {
+        long phaseNs = System.nanoTime();
+        boolean traced = BlurTrace.begin("BlurDialog scale");
+        Bitmap overlay = scale(bkg, area, mDownScaleFactor, getOverlayConfig());
+        metrics.setSizes(bkg.getWidth(), bkg.getHeight(), overlay.getWidth(), overlay.getHeight());
+        phaseNs = metrics.endPhase(BlurMetrics.PHASE_SCALE, phaseNs);
+        BlurTrace.end(traced);
+        if (mDebugEnable) {
+            Log.d(TAG, "Allocation : " + bkg.getRowBytes() + "ko (screen capture)");
+        }
+        return blurScaled(overlay, bkg.getWidth() + "x" + bkg.getHeight() + "|" + area.toShortString(),
+            metrics, phaseNs);
+    }
+
+    /**
+     * Blur a background already down scaled, for instance drawn straight at its down scaled size.
+     *
+     * @param overlay down scaled background, with the config of {@link #getOverlayConfig()}.
+     *                Blurred in place or given back to the {@link BlurBitmapPool}.
+     * @param source  description of what was down scaled, part of the disk cache key.
+     * @param metrics metrics of the blur, sizes and previous phases already filled.
+     * @param phaseNs start of the blur phase, as given by {@link System#nanoTime()}.
+     * @return drawable of the blurred background.
+     */
+    Drawable blurScaled(Bitmap overlay, String source, BlurMetrics metrics, long phaseNs) {
+        final boolean renderScript = useRenderScript();
+        final boolean blurLevels = mBlurLevels && !mGrayscale;
+
+        //skip the blur of backgrounds which are close enough to a solid color
+        Drawable uniform = blurLevels ? null : uniformBlur(overlay);
+        if (uniform != null) {
+            metrics.setBlur(BlurMetrics.BACKEND_NONE, mDownScaleFactor, mBlurRadius);
+            metrics.endPhase(BlurMetrics.PHASE_BLUR, phaseNs);
+            if (mDebugEnable) {
+                Log.d(TAG, "Uniform background, blur skipped in : " + getElapsedMs(metrics) + " ms");
+            }
+            return uniform;
+        }
+
+        //static screens are read back from the disk cache instead of being blurred again
+        final String diskCacheKey = blurLevels || mDebugEnable ? null : getDiskCacheKey(overlay, source);
+        boolean traced;
+        if (diskCacheKey != null) {
+            Bitmap cached = BlurDiskCache.getInstance(mContext).get(diskCacheKey);
+            if (cached != null) {
+                BlurBitmapPool.recycle(overlay);
+                metrics.setBlur(BlurMetrics.BACKEND_NONE, mDownScaleFactor, mBlurRadius);
+                phaseNs = metrics.endPhase(BlurMetrics.PHASE_BLUR, phaseNs);
+                traced = BlurTrace.begin("BlurDialog drawable");
+                Drawable blurred = createDrawable(cached, null);
+                metrics.endPhase(BlurMetrics.PHASE_DRAWABLE, phaseNs);
+                BlurTrace.end(traced);
+                return blurred;
+            }
+        }
+
+        //tint, dim and grain are fused with the final pass of the blur
+        BlurPostProcess postProcess = mGrayscale
+            ? null : BlurPostProcess.create(mTintColor, mDimAmount, mGrainLevel);
+
+        //keep the sharp levels before blurring the overlay in place
+        Bitmap[] levels = null;
+        if (blurLevels) {
+            traced = BlurTrace.begin("BlurDialog levels");
+            levels = buildBlurLevels(overlay, postProcess);
+            phaseNs = metrics.endPhase(BlurMetrics.PHASE_DRAWABLE, phaseNs);
+            BlurTrace.end(traced);
+        }
+
+        //apply fast blur on overlay
+        metrics.setBlur(
+            mGrayscale ? BlurMetrics.BACKEND_GRAYSCALE
+                : renderScript ? BlurMetrics.BACKEND_RENDER_SCRIPT : BlurMetrics.BACKEND_FAST_BLUR,
+            mDownScaleFactor,
+            mBlurRadius
+        );
+        traced = BlurTrace.begin("BlurDialog blur");
+        Bitmap blurredOverlay;
+        if (mGrayscale) {
+            blurredOverlay = GrayscaleBlurHelper.doBlur(overlay, mBlurRadius);
+        } else if (renderScript) {
+            blurredOverlay = RenderScriptBlurHelper.doBlur(overlay, mBlurRadius, true, mContext);
+            if (blurredOverlay == null) {
+                //render script failed, the overlay is left untouched and blurred with FastBlur
+                metrics.setBlur(BlurMetrics.BACKEND_FAST_BLUR, mDownScaleFactor, mBlurRadius);
+                blurredOverlay = FastBlurHelper.doBlur(overlay, mBlurRadius, true, postProcess);
+            } else if (postProcess != null) {
+                //render script intrinsic blur can't be fused, costs an additional pass
+                postProcess.apply(blurredOverlay);
+            }
+        } else {
+            blurredOverlay = FastBlurHelper.doBlur(overlay, mBlurRadius, true, postProcess);
+        }
+        if (diskCacheKey != null && blurredOverlay != null) {
+            BlurDiskCache.getInstance(mContext).put(diskCacheKey, blurredOverlay);
+        }
+        phaseNs = metrics.endPhase(BlurMetrics.PHASE_BLUR, phaseNs);
+        BlurTrace.end(traced);
+        if (mDebugEnable) {
+            String blurTime = getElapsedMs(metrics) + " ms";
+            Log.d(TAG, "Blur method : " + (mGrayscale ? "Grayscale" : renderScript ? "RenderScript" : "FastBlur"));
+            Log.d(TAG, "Radius : " + mBlurRadius);
+            Log.d(TAG, "Down Scale Factor : " + mDownScaleFactor);
+            Log.d(TAG, "Blurred achieved in : " + blurTime);
+            Log.d(TAG, "Allocation : " + blurredOverlay.getRowBytes() + "ko (blurred bitmap)"
+                + (!renderScript ? " + temp buff " + blurredOverlay.getRowBytes() + "ko." : "."));
+            Rect bounds = new Rect();
+            Canvas canvas = new Canvas(blurredOverlay);
+            Paint paint = new Paint();
+            paint.setColor(Color.BLACK);
+            paint.setAntiAlias(true);
+            paint.setTextSize(20.0f);
+            paint.getTextBounds(blurTime, 0, blurTime.length(), bounds);
+            canvas.drawText(blurTime, 2, bounds.height(), paint);
+        }
+
+        traced = BlurTrace.begin("BlurDialog drawable");
+        Drawable blurred = createDrawable(blurredOverlay, levels);
+        metrics.endPhase(BlurMetrics.PHASE_DRAWABLE, phaseNs);
+        BlurTrace.end(traced);
+        return blurred;
+    }
+
+    /**
+     * Check if RenderScript is used to blur.
+     *
+     * @return true if blurred with RenderScript.
+     */
+    private boolean useRenderScript() {
+        return mUseRenderScript && !mGrayscale;
+    }
+
+    /**
+     * Retrieve the time spent to down scale and blur, for debug purpose.
+     *
+     * @param metrics metrics of the blur.
+     * @return scale and blur duration, in ms.
+     */
+    private static long getElapsedMs(BlurMetrics metrics) {
+        return (metrics.getDuration(BlurMetrics.PHASE_SCALE) + metrics.getDuration(BlurMetrics.PHASE_BLUR)) / 1000000;
+    }
+
+    /**
+     * Build the drawable rendering a blurred bitmap.
+     *
+     * @param overlay blurred bitmap.
+     * @param levels  sharper levels used to animate the blur radius, can be null.
+     * @return drawable of the blurred area.
+     */
+    private Drawable createDrawable(Bitmap overlay, Bitmap[] levels) {
+        if (levels != null) {
+            levels[levels.length - 1] = overlay;
+            return new BlurLevelsDrawable(levels);
+        } else if (mGrayscale) {
+            return GrayscaleBlurHelper.createDrawable(mContext.getResources(), overlay, mTintColor, mDimAmount);
+        }
+        return new BitmapDrawable(mContext.getResources(), overlay);
+    }
+
+    /**
+     * Build the key of the blurred background in the disk cache.
+     * <p/>
+     * The key holds the identity of the screen, the parameters of the blur and a fingerprint of
+     * the down scaled background : a cached background is exactly the one which would be blurred.
+     *
+     * @param overlay down scaled background, not blurred yet.
+     * @param source  description of what was down scaled.
+     * @return key of the blurred background, null if the disk cache isn't used.
+     */
+    private String getDiskCacheKey(Bitmap overlay, String source) {
+        if (mDiskCacheKey == null) {
+            return null;
+        }
+        return mDiskCacheKey
+            + "|" + source
+            + "|" + overlay.getWidth() + "x" + overlay.getHeight()
+            + "|" + (mGrayscale ? "grayscale" : useRenderScript() ? "renderscript" : "fastblur")
+            + "|" + mBlurRadius
+            + "|" + Integer.toHexString(mTintColor)
+            + "|" + mDimAmount
+            + "|" + mGrainLevel
+            + "|" + Long.toHexString(BlurDiskCache.fingerprint(overlay));
+    }
+
+    /**
+     * Build the levels used to animate the blur radius.
+     * <p/>
+     * The sharpest level is a copy of the down scaled background, each intermediate level is half
+     * the size of the previous one and therefore blurrier once stretched. The last slot is left empty
+     * for the final blur.
+     *
+     * @param overlay     down scaled background, not blurred yet.
+     * @param postProcess post processing applied on the sharpest level, can be null.
+     * @return levels sorted from the sharpest one to the final blur.
+     */
+    private Bitmap[] buildBlurLevels(Bitmap overlay, BlurPostProcess postProcess) {
+        Bitmap[] levels = new Bitmap[BlurDialogEngine.BLUR_LEVELS_MIP_COUNT + 2];
+        levels[0] = overlay.copy(overlay.getConfig(), postProcess != null);
+        if (postProcess != null) {
+            //intermediate levels are scaled from the sharpest one and inherit its post processing
+            postProcess.apply(levels[0]);
+        }
+        for (int i = 1; i <= BlurDialogEngine.BLUR_LEVELS_MIP_COUNT; i++) {
+            Bitmap previous = levels[i - 1];
+            levels[i] = Bitmap.createScaledBitmap(
+                previous,
+                Math.max(1, previous.getWidth() / 2),
+                Math.max(1, previous.getHeight() / 2),
+                true
+            );
+        }
+        return levels;
+    }
+
+    /**
+     * Render the given background as a solid color if it's uniform.
+     *
+     * @param overlay down scaled background, not blurred yet, given back to the pool if uniform.
+     * @return drawable of the solid color or null if the background should be blurred.
+     */
+    private Drawable uniformBlur(Bitmap overlay) {
+        if (mUniformBackgroundThreshold < 0) {
+            return null;
+        }
+        int color = UniformColorDetector.detect(overlay, mUniformBackgroundThreshold);
+        if (color == Color.TRANSPARENT) {
+            return null;
+        }
+        BlurBitmapPool.recycle(overlay);
+
+        if (mGrayscale) {
+            int luminance = GrayscaleStackBlur.luminance(color);
+            color = Color.rgb(luminance, luminance, luminance);
+        }
+        //tint and dim are applied on the color itself, grain is left out on a solid color
+        BlurPostProcess postProcess = BlurPostProcess.create(mTintColor, mDimAmount, 0);
+        if (postProcess != null) {
+            color = postProcess.apply(color, Color.red(color), Color.green(color), Color.blue(color));
+        }
+        return new ColorDrawable(color);
+    }
+}
@@ -0,0 +1,130 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import fr.tvbarthel.lib.blurdialogfragment.core.PixelPostProcess;
+
+/**
+ * Post processing applied to the blurred pixels : tint, dim and grain.
+ * <p/>
+ * Meant to be applied while the blur writes its final pixels so that the result is baked into the
+ * blurred bitmap without any additional pass nor additional layer to composite. Tint and dim are
+ * folded in a lookup table per channel.
+ * <p/>
+ * Not thread safe since the grain generator is updated for each pixel.
+ */
+final class BlurPostProcess implements PixelPostProcess {
+
+    /**
+     * Maximum grain level.
+     */
+    static final int MAX_GRAIN_LEVEL = 255;
+
+    /**
+     * Lookup tables of the red, green and blue channels, 256 values each.
+     */
+    private final int[] mLut;
+
+    /**
+     * Amplitude of the grain.
+     */
+    private final int mGrain;
+
+    /**
+     * Table used to clamp channels once the grain added, offset by the grain amplitude.
+     */
+    private final int[] mClamp;
+
+    /**
+     * State of the grain generator.
+     */
+    private int mSeed;
+
+    /**
+     * Post processing applied to the blurred pixels.
+     *
+     * @param tintColor tint blended over the blur, its alpha is used as the tint strength.
+     * @param dimAmount dim applied after the tint, from 0 (no dim) to 1 (black).
+     * @param grain     amplitude of the grain, from 0 (no grain) to {@link BlurPostProcess#MAX_GRAIN_LEVEL}.
+     */
+    BlurPostProcess(int tintColor, float dimAmount, int grain) {
+        final float tintStrength = Color.alpha(tintColor) / 255f;
+        final float brightness = 1f - Math.max(0f, Math.min(1f, dimAmount));
+        final int[] tint = new int[]{Color.red(tintColor), Color.green(tintColor), Color.blue(tintColor)};
+
+        mLut = new int[256 * 3];
+        for (int channel = 0; channel < 3; channel++) {
+            for (int value = 0; value < 256; value++) {
+                float tinted = value * (1f - tintStrength) + tint[channel] * tintStrength;
+                mLut[channel * 256 + value] = Math.round(tinted * brightness);
+            }
+        }
+
+        mGrain = Math.max(0, Math.min(MAX_GRAIN_LEVEL, grain));
+        mClamp = new int[256 + 2 * mGrain];
+        for (int i = 0; i < mClamp.length; i++) {
+            mClamp[i] = Math.max(0, Math.min(255, i - mGrain));
+        }
+        mSeed = 0x2545F491;
+    }
+
+    /**
+     * Build the post processing matching the given parameters.
+     *
+     * @param tintColor tint blended over the blur, its alpha is used as the tint strength.
+     * @param dimAmount dim applied after the tint, from 0 (no dim) to 1 (black).
+     * @param grain     amplitude of the grain, from 0 (no grain) to {@link BlurPostProcess#MAX_GRAIN_LEVEL}.
+     * @return post processing or null if the parameters leave the pixels untouched.
+     */
+    static BlurPostProcess create(int tintColor, float dimAmount, int grain) {
+        if (Color.alpha(tintColor) == 0 && dimAmount <= 0f && grain <= 0) {
+            return null;
+        }
+        return new BlurPostProcess(tintColor, dimAmount, grain);
+    }
+
+    /**
+     * Compose a final pixel from its blurred channels.
+     *
+     * @param pixel original pixel, its alpha is preserved.
+     * @param red   blurred red channel.
+     * @param green blurred green channel.
+     * @param blue  blurred blue channel.
+     * @return post processed pixel.
+     */
+    @Override
+    public int apply(int pixel, int red, int green, int blue) {
+        int r = mLut[red];
+        int g = mLut[256 + green];
+        int b = mLut[512 + blue];
+        if (mGrain > 0) {
+            // linear congruential generator, cheap enough to be called for each pixel.
+            mSeed = mSeed * 1103515245 + 12345;
+            final int noise = ((mSeed >>> 16) & 0xff) * (2 * mGrain + 1) >> 8;
+            r = mClamp[r + noise];
+            g = mClamp[g + noise];
+            b = mClamp[b + noise];
+        }
+        return (0xff000000 & pixel) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Apply the post processing on an already blurred bitmap.
+     * <p/>
+     * Used when the blur can't be fused with the post processing, costs an additional pass.
+     *
+     * @param bitmap mutable blurred bitmap.
+     */
+    void apply(Bitmap bitmap) {
+        final int w = bitmap.getWidth();
+        final int h = bitmap.getHeight();
+        final int[] pix = new int[w * h];
+        bitmap.getPixels(pix, 0, w, 0, 0, w, h);
+        for (int i = 0; i < pix.length; i++) {
+            final int p = pix[i];
+            pix[i] = apply(p, (p >> 16) & 0xff, (p >> 8) & 0xff, p & 0xff);
+        }
+        bitmap.setPixels(pix, 0, w, 0, 0, w, h);
+    }
+}
@@ -0,0 +1,102 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.os.PowerManager;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Helper used to know if the device is saving power or heating up.
+ * <p/>
+ * Power save mode is available from Lollipop, the thermal status from Android Q and is therefore
+ * retrieved by reflection.
+ */
+final class BlurPowerMonitor {
+
+    /**
+     * Thermal status from which the blur should be degraded, PowerManager.THERMAL_STATUS_MODERATE.
+     */
+    static final int THERMAL_STATUS_MODERATE = 2;
+
+    /**
+     * PowerManager.getCurrentThermalStatus, null if not available.
+     */
+    private static Method sThermalStatusMethod;
+
+    /**
+     * True once the thermal status method has been looked up.
+     */
+    private static boolean sThermalStatusMethodResolved;
+
+    /**
+     * Non instantiable class.
+     */
+    private BlurPowerMonitor() {
+
+    }
+
+    /**
+     * Retrieve the reason why the blur should be degraded, if any.
+     *
+     * @param context any context.
+     * @return power save or thermal reason, null if the blur shouldn't be degraded.
+     */
+    static String getConstraint(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return null;
+        }
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (powerManager == null) {
+            return null;
+        }
+        if (isPowerSaveMode(powerManager)) {
+            return "power save mode";
+        }
+        int thermalStatus = getThermalStatus(powerManager);
+        if (thermalStatus >= THERMAL_STATUS_MODERATE) {
+            return "thermal status " + thermalStatus;
+        }
+        return null;
+    }
+
+    /**
+     * Check if the power save mode is enabled.
+     *
+     * @param powerManager power manager.
+     * @return true if the device is saving power.
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static boolean isPowerSaveMode(PowerManager powerManager) {
+        return powerManager.isPowerSaveMode();
+    }
+
+    /**
+     * Retrieve the current thermal status.
+     *
+     * @param powerManager power manager.
+     * @return thermal status, 0 if not available.
+     */
+    private static synchronized int getThermalStatus(PowerManager powerManager) {
+        if (!sThermalStatusMethodResolved) {
+            sThermalStatusMethodResolved = true;
+            try {
+                sThermalStatusMethod = PowerManager.class.getMethod("getCurrentThermalStatus");
+            } catch (NoSuchMethodException e) {
+                sThermalStatusMethod = null;
+            }
+        }
+        if (sThermalStatusMethod == null) {
+            return 0;
+        }
+        try {
+            return (Integer) sThermalStatusMethod.invoke(powerManager);
+        } catch (IllegalAccessException e) {
+            return 0;
+        } catch (InvocationTargetException e) {
+            return 0;
+        }
+    }
+}
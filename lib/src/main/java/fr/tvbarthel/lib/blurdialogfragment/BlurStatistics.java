@@ -0,0 +1,288 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Aggregated statistics of every blur processed in the process.
+ * <p/>
+ * For each backend and each phase of {@link BlurMetrics}, as well as for the total duration, the
+ * durations are counted in a fixed set of buckets, giving percentiles without keeping the
+ * individual durations. Recording is lock free and doesn't allocate, statistics are always kept.
+ * <p/>
+ * Read through {@link BlurStatistics#getSnapshot()} or {@link BlurStatistics#dump(PrintWriter)},
+ * for instance from a debug screen or a bug report.
+ */
+public final class BlurStatistics {
+
+    /**
+     * Index of the total duration, after the phases of {@link BlurMetrics}.
+     */
+    public static final int TOTAL = BlurMetrics.PHASE_COUNT;
+
+    /**
+     * Number of backends, see the BACKEND_ constants of {@link BlurMetrics}.
+     */
+    static final int BACKEND_COUNT = 4;
+
+    /**
+     * Number of durations tracked per backend : every phase plus the total.
+     */
+    static final int DURATION_COUNT = BlurMetrics.PHASE_COUNT + 1;
+
+    /**
+     * Number of buckets of each histogram.
+     */
+    static final int BUCKET_COUNT = 40;
+
+    /**
+     * Upper bound of the first bucket, in ns. Each following bucket is sqrt(2) times larger.
+     */
+    static final long FIRST_BUCKET_UPPER_BOUND = 100000L;
+
+    /**
+     * Upper bounds of the buckets in ns, the last bucket being unbounded.
+     */
+    private static final long[] BUCKET_UPPER_BOUNDS = buildBucketUpperBounds();
+
+    /**
+     * Names of the durations, used by the dump.
+     */
+    private static final String[] DURATION_NAMES = new String[]{
+        "capture", "queue", "scale", "blur", "drawable", "attach", "fadeIn", "total"
+    };
+
+    /**
+     * Names of the backends, used by the dump.
+     */
+    private static final String[] BACKEND_NAMES = new String[]{
+        "None", "FastBlur", "RenderScript", "Grayscale"
+    };
+
+    /**
+     * Bucket counts, indexed by backend, duration then bucket.
+     */
+    private static final AtomicLongArray HISTOGRAMS
+        = new AtomicLongArray(BACKEND_COUNT * DURATION_COUNT * BUCKET_COUNT);
+
+    /**
+     * Sum of the durations in ns, indexed by backend then duration.
+     */
+    private static final AtomicLongArray SUMS = new AtomicLongArray(BACKEND_COUNT * DURATION_COUNT);
+
+    /**
+     * Number of blurs, indexed by backend.
+     */
+    private static final AtomicLongArray COUNTS = new AtomicLongArray(BACKEND_COUNT);
+
+    /**
+     * Non instantiable class.
+     */
+    private BlurStatistics() {
+
+    }
+
+    /**
+     * Add the metrics of a blur to the statistics.
+     *
+     * @param metrics metrics of a finished blur.
+     */
+    static void record(BlurMetrics metrics) {
+        final int backend = metrics.getBackend();
+        COUNTS.incrementAndGet(backend);
+        for (int duration = 0; duration < DURATION_COUNT; duration++) {
+            final long ns = duration == TOTAL ? metrics.getTotalDuration() : metrics.getDuration(duration);
+            final int index = backend * DURATION_COUNT + duration;
+            SUMS.addAndGet(index, ns);
+            HISTOGRAMS.incrementAndGet(index * BUCKET_COUNT + getBucket(ns));
+        }
+    }
+
+    /**
+     * Take a consistent enough copy of the statistics.
+     * <p/>
+     * Blurs recorded while copying may be partially included.
+     *
+     * @return copy of the statistics.
+     */
+    public static Snapshot getSnapshot() {
+        final long[] counts = new long[BACKEND_COUNT];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = COUNTS.get(i);
+        }
+        final long[] sums = new long[BACKEND_COUNT * DURATION_COUNT];
+        for (int i = 0; i < sums.length; i++) {
+            sums[i] = SUMS.get(i);
+        }
+        final long[] histograms = new long[BACKEND_COUNT * DURATION_COUNT * BUCKET_COUNT];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = HISTOGRAMS.get(i);
+        }
+        return new Snapshot(counts, sums, histograms);
+    }
+
+    /**
+     * Clear the statistics.
+     */
+    public static void reset() {
+        for (int i = 0; i < COUNTS.length(); i++) {
+            COUNTS.set(i, 0);
+        }
+        for (int i = 0; i < SUMS.length(); i++) {
+            SUMS.set(i, 0);
+        }
+        for (int i = 0; i < HISTOGRAMS.length(); i++) {
+            HISTOGRAMS.set(i, 0);
+        }
+    }
+
+    /**
+     * Print the statistics, one line per backend and duration with the count, the mean and the
+     * 50th, 95th and 99th percentiles in ms.
+     *
+     * @param writer writer to print to.
+     */
+    public static void dump(PrintWriter writer) {
+        final Snapshot snapshot = getSnapshot();
+        writer.println("BlurStatistics:");
+        for (int backend = 0; backend < BACKEND_COUNT; backend++) {
+            final long count = snapshot.getCount(backend);
+            if (count == 0) {
+                continue;
+            }
+            writer.println("  " + BACKEND_NAMES[backend] + " : " + count + " blurs");
+            for (int duration = 0; duration < DURATION_COUNT; duration++) {
+                writer.println(String.format(Locale.US, "    %-9s mean=%8.2fms p50=%8.2fms p95=%8.2fms p99=%8.2fms",
+                    DURATION_NAMES[duration],
+                    snapshot.getMean(backend, duration) / 1000000f,
+                    snapshot.getPercentile(backend, duration, 50) / 1000000f,
+                    snapshot.getPercentile(backend, duration, 95) / 1000000f,
+                    snapshot.getPercentile(backend, duration, 99) / 1000000f));
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * Retrieve the bucket of a duration.
+     *
+     * @param ns duration in ns.
+     * @return bucket index.
+     */
+    static int getBucket(long ns) {
+        int low = 0;
+        int high = BUCKET_COUNT - 1;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (ns <= BUCKET_UPPER_BOUNDS[middle]) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Build the upper bounds of the buckets, growing by a factor sqrt(2).
+     *
+     * @return upper bounds in ns.
+     */
+    private static long[] buildBucketUpperBounds() {
+        final long[] bounds = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            bounds[i] = i == BUCKET_COUNT - 1
+                ? Long.MAX_VALUE : Math.round(FIRST_BUCKET_UPPER_BOUND * Math.pow(2, i / 2.0));
+        }
+        return bounds;
+    }
+
+    /**
+     * Copy of the statistics at a given time.
+     */
+    public static final class Snapshot {
+
+        /**
+         * Number of blurs, indexed by backend.
+         */
+        private final long[] mCounts;
+
+        /**
+         * Sum of the durations in ns, indexed by backend then duration.
+         */
+        private final long[] mSums;
+
+        /**
+         * Bucket counts, indexed by backend, duration then bucket.
+         */
+        private final long[] mHistograms;
+
+        /**
+         * Copy of the statistics at a given time.
+         *
+         * @param counts     number of blurs per backend.
+         * @param sums       sum of the durations per backend and duration.
+         * @param histograms bucket counts per backend and duration.
+         */
+        Snapshot(long[] counts, long[] sums, long[] histograms) {
+            mCounts = counts;
+            mSums = sums;
+            mHistograms = histograms;
+        }
+
+        /**
+         * Retrieve the number of blurs processed with a backend.
+         *
+         * @param backend one of the BACKEND_ constants of {@link BlurMetrics}.
+         * @return number of blurs.
+         */
+        public long getCount(int backend) {
+            return mCounts[backend];
+        }
+
+        /**
+         * Retrieve the mean of a duration.
+         *
+         * @param backend  one of the BACKEND_ constants of {@link BlurMetrics}.
+         * @param duration one of the PHASE_ constants of {@link BlurMetrics} or {@link BlurStatistics#TOTAL}.
+         * @return mean duration in ns, 0 if no blur.
+         */
+        public long getMean(int backend, int duration) {
+            final long count = mCounts[backend];
+            return count == 0 ? 0 : mSums[backend * DURATION_COUNT + duration] / count;
+        }
+
+        /**
+         * Estimate a percentile of a duration, interpolated within its bucket.
+         *
+         * @param backend    one of the BACKEND_ constants of {@link BlurMetrics}.
+         * @param duration   one of the PHASE_ constants of {@link BlurMetrics} or {@link BlurStatistics#TOTAL}.
+         * @param percentile percentile, from 0 to 100.
+         * @return estimated duration in ns, 0 if no blur.
+         */
+        public long getPercentile(int backend, int duration, float percentile) {
+            final int offset = (backend * DURATION_COUNT + duration) * BUCKET_COUNT;
+            long total = 0;
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                total += mHistograms[offset + bucket];
+            }
+            if (total == 0) {
+                return 0;
+            }
+
+            final double rank = Math.max(0f, Math.min(100f, percentile)) / 100.0 * total;
+            long cumulated = 0;
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                final long count = mHistograms[offset + bucket];
+                if (count > 0 && cumulated + count >= rank) {
+                    final long lower = bucket == 0 ? 0 : BUCKET_UPPER_BOUNDS[bucket - 1];
+                    final long upper = bucket == BUCKET_COUNT - 1 ? lower * 2 : BUCKET_UPPER_BOUNDS[bucket];
+                    return lower + Math.round((upper - lower) * (rank - cumulated) / count);
+                }
+                cumulated += count;
+            }
+            return BUCKET_UPPER_BOUNDS[BUCKET_COUNT - 2];
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Helper used to emit system trace sections, visible in systrace and perfetto.
+ * <p/>
+ * Disabled by default, a disabled trace costs a volatile read per section. Sections are available
+ * from Jelly Bean MR2, async sections, used for the phases crossing threads, are public from
+ * Android Q and therefore invoked by reflection.
+ * <p/>
+ * A section is ended only if it has been begun, so that toggling the trace while a blur is
+ * processed doesn't unbalance the sections of the thread.
+ */
+final class BlurTrace {
+
+    /**
+     * True when the sections are emitted.
+     */
+    private static volatile boolean sEnabled;
+
+    /**
+     * Trace.beginAsyncSection, null if not available.
+     */
+    private static Method sBeginAsyncSectionMethod;
+
+    /**
+     * Trace.endAsyncSection, null if not available.
+     */
+    private static Method sEndAsyncSectionMethod;
+
+    /**
+     * True once the async section methods have been looked up.
+     */
+    private static boolean sAsyncSectionMethodsResolved;
+
+    /**
+     * Source of the cookies identifying the async sections.
+     */
+    private static final AtomicInteger COOKIES = new AtomicInteger();
+
+    /**
+     * Non instantiable class.
+     */
+    private BlurTrace() {
+
+    }
+
+    /**
+     * Enable / disable the trace sections.
+     *
+     * @param enabled true to emit the sections.
+     */
+    static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Check if the trace sections are emitted.
+     *
+     * @return true if enabled.
+     */
+    static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Begin a section on the current thread.
+     *
+     * @param name name of the section.
+     * @return true if the section has been begun and must be ended with {@link BlurTrace#end(boolean)}.
+     */
+    static boolean begin(String name) {
+        if (!sEnabled || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            return false;
+        }
+        beginSection(name);
+        return true;
+    }
+
+    /**
+     * End the last section begun on the current thread.
+     *
+     * @param begun value returned by {@link BlurTrace#begin(String)}.
+     */
+    static void end(boolean begun) {
+        if (begun) {
+            endSection();
+        }
+    }
+
+    /**
+     * Begin a section which may be ended on another thread.
+     *
+     * @param name name of the section.
+     * @return cookie of the section to give to {@link BlurTrace#endAsync(String, int)}, 0 if not begun.
+     */
+    static int beginAsync(String name) {
+        if (!sEnabled || !resolveAsyncSectionMethods()) {
+            return 0;
+        }
+        int cookie = COOKIES.incrementAndGet();
+        if (cookie == 0) {
+            cookie = COOKIES.incrementAndGet();
+        }
+        return invoke(sBeginAsyncSectionMethod, name, cookie) ? cookie : 0;
+    }
+
+    /**
+     * End a section begun with {@link BlurTrace#beginAsync(String)}.
+     *
+     * @param name   name of the section.
+     * @param cookie cookie of the section, 0 if not begun.
+     */
+    static void endAsync(String name, int cookie) {
+        if (cookie != 0) {
+            invoke(sEndAsyncSectionMethod, name, cookie);
+        }
+    }
+
+    /**
+     * Begin a section on the current thread.
+     *
+     * @param name name of the section.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void beginSection(String name) {
+        Trace.beginSection(name);
+    }
+
+    /**
+     * End the last section begun on the current thread.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void endSection() {
+        Trace.endSection();
+    }
+
+    /**
+     * Look up the async section methods.
+     *
+     * @return true if available.
+     */
+    private static synchronized boolean resolveAsyncSectionMethods() {
+        if (!sAsyncSectionMethodsResolved) {
+            sAsyncSectionMethodsResolved = true;
+            try {
+                sBeginAsyncSectionMethod = Trace.class.getMethod("beginAsyncSection", String.class, int.class);
+                sEndAsyncSectionMethod = Trace.class.getMethod("endAsyncSection", String.class, int.class);
+            } catch (NoSuchMethodException e) {
+                sBeginAsyncSectionMethod = null;
+                sEndAsyncSectionMethod = null;
+            }
+        }
+        return sBeginAsyncSectionMethod != null;
+    }
+
+    /**
+     * Invoke an async section method.
+     *
+     * @param method method to invoke.
+     * @param name   name of the section.
+     * @param cookie cookie of the section.
+     * @return true if invoked.
+     */
+    private static boolean invoke(Method method, String name, int cookie) {
+        try {
+            method.invoke(null, name, cookie);
+            return true;
+        } catch (IllegalAccessException e) {
+            return false;
+        } catch (InvocationTargetException e) {
+            return false;
+        }
+    }
+}
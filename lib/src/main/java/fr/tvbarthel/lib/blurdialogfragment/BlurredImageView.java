@@ -0,0 +1,48 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.widget.ImageView;
+
+/**
+ * Image view displaying the blurred background.
+ * <p/>
+ * Can skip its own drawing while the window behind is captured again, without being hidden :
+ * changing its visibility would invalidate the whole window at each capture.
+ */
+@SuppressLint("ViewConstructor")
+final class BlurredImageView extends ImageView {
+
+    /**
+     * True while the view mustn't be drawn.
+     */
+    private boolean mDrawSkipped;
+
+    /**
+     * Image view displaying the blurred background.
+     *
+     * @param context context used to create the view.
+     */
+    BlurredImageView(Context context) {
+        super(context);
+    }
+
+    /**
+     * Skip the drawing of the view, for instance while the content behind is captured.
+     * <p/>
+     * The view isn't invalidated, only draws done while skipped are affected.
+     *
+     * @param skipped true to skip the drawing.
+     */
+    void setDrawSkipped(boolean skipped) {
+        mDrawSkipped = skipped;
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        if (!mDrawSkipped) {
+            super.draw(canvas);
+        }
+    }
+}
@@ -0,0 +1,489 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+import android.view.Window;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Blur a view, a region of a window or a bitmap out of any dialog, for instance the background of
+ * a popup, a bottom sheet or a card.
+ * <p/>
+ * Blurs are processed on the blur threads of the library with the same pipeline as the
+ * {@link BlurDialogFragment} : pooled buffers, uniform background detection, optional disk
+ * cache, post processing fused with the blur and {@link BlurMetrics}.
+ * <p/>
+ * Each blur returns a {@link Future} which can be cancelled, or waited for out of the ui thread,
+ * and optionally notifies a {@link Blurrer.Callback} on the ui thread. Parameters are read when
+ * the blur is requested, changing them doesn't affect the blurs in flight. The bitmaps of a
+ * cancelled blur are given back to the pool of the library.
+ */
+public final class Blurrer {
+
+    /**
+     * Application context, used by the blur pipeline.
+     */
+    private final Context mContext;
+
+    /**
+     * Handler of the ui thread, used to notify the callbacks.
+     */
+    private final Handler mHandler;
+
+    /**
+     * Factor used to down scale the background.
+     */
+    private float mDownScaleFactor = BlurDialogEngine.DEFAULT_BLUR_DOWN_SCALE_FACTOR;
+
+    /**
+     * Radius used to blur the down scaled background.
+     */
+    private int mBlurRadius = BlurDialogEngine.DEFAULT_BLUR_RADIUS;
+
+    /**
+     * Boolean used to know if RenderScript should be used.
+     */
+    private boolean mUseRenderScript = BlurDialogEngine.DEFAULT_USE_RENDERSCRIPT;
+
+    /**
+     * Boolean used to know if the luminance only is blurred.
+     */
+    private boolean mGrayscale = BlurDialogEngine.DEFAULT_GRAYSCALE;
+
+    /**
+     * Tint color blended over the blurred background.
+     */
+    private int mTintColor = BlurDialogEngine.DEFAULT_TINT_COLOR;
+
+    /**
+     * Dim amount baked into the blurred background.
+     */
+    private float mDimAmount = BlurDialogEngine.DEFAULT_DIM_AMOUNT;
+
+    /**
+     * Grain level added to the blurred background.
+     */
+    private int mGrainLevel = BlurDialogEngine.DEFAULT_GRAIN_LEVEL;
+
+    /**
+     * Maximum deviation of a channel under which the background is uniform, negative to always blur.
+     */
+    private int mUniformBackgroundThreshold = BlurDialogEngine.DEFAULT_UNIFORM_BACKGROUND_THRESHOLD;
+
+    /**
+     * Key of the content in the disk cache, null if the disk cache isn't used.
+     */
+    private String mDiskCacheKey;
+
+    /**
+     * Listener notified with the metrics of each blur.
+     */
+    private BlurMetricsListener mMetricsListener;
+
+    /**
+     * Blur views, window regions and bitmaps.
+     *
+     * @param context any context.
+     */
+    public Blurrer(Context context) {
+        mContext = context.getApplicationContext();
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Apply custom down scale factor.
+     * <p/>
+     * By default down scale factor is set to
+     * {@link BlurDialogEngine#DEFAULT_BLUR_DOWN_SCALE_FACTOR}
+     *
+     * @param factor customized down scale factor, must be at least 1.0 ( no down scale applied )
+     */
+    public void setDownScaleFactor(float factor) {
+        mDownScaleFactor = Math.max(1.0f, factor);
+    }
+
+    /**
+     * Apply custom blur radius.
+     * <p/>
+     * By default blur radius is set to
+     * {@link BlurDialogEngine#DEFAULT_BLUR_RADIUS}
+     *
+     * @param radius custom radius used to blur.
+     */
+    public void setBlurRadius(int radius) {
+        mBlurRadius = Math.max(0, radius);
+    }
+
+    /**
+     * Set use of RenderScript.
+     * <p/>
+     * By default RenderScript is set to
+     * {@link BlurDialogEngine#DEFAULT_USE_RENDERSCRIPT}
+     *
+     * @param useRenderScript use of RenderScript
+     */
+    public void setUseRenderScript(boolean useRenderScript) {
+        mUseRenderScript = useRenderScript;
+    }
+
+    /**
+     * Enable / disable grayscale blur, see {@link BlurDialogEngine#setGrayscale(boolean)}.
+     * <p/>
+     * By default grayscale is set to
+     * {@link BlurDialogEngine#DEFAULT_GRAYSCALE}
+     *
+     * @param enable true to blur the luminance only.
+     */
+    public void setGrayscale(boolean enable) {
+        mGrayscale = enable;
+    }
+
+    /**
+     * Set the tint color blended over the blurred background.
+     * <p/>
+     * By default tint color is set to
+     * {@link BlurDialogEngine#DEFAULT_TINT_COLOR}
+     *
+     * @param tintColor tint color, transparent for no tint.
+     */
+    public void setTintColor(int tintColor) {
+        mTintColor = tintColor;
+    }
+
+    /**
+     * Set the dim amount baked into the blurred background.
+     * <p/>
+     * By default dim amount is set to
+     * {@link BlurDialogEngine#DEFAULT_DIM_AMOUNT}
+     *
+     * @param dimAmount dim amount, from 0 (no dim) to 1 (black).
+     */
+    public void setDimAmount(float dimAmount) {
+        mDimAmount = dimAmount;
+    }
+
+    /**
+     * Set the grain level added to the blurred background.
+     * <p/>
+     * By default grain level is set to
+     * {@link BlurDialogEngine#DEFAULT_GRAIN_LEVEL}
+     *
+     * @param grainLevel grain amplitude, from 0 (no grain) to 255.
+     */
+    public void setGrainLevel(int grainLevel) {
+        mGrainLevel = grainLevel;
+    }
+
+    /**
+     * Set the threshold under which the background is rendered as a solid color instead of
+     * being blurred.
+     * <p/>
+     * By default threshold is set to
+     * {@link BlurDialogEngine#DEFAULT_UNIFORM_BACKGROUND_THRESHOLD}
+     *
+     * @param maxDeviation maximum deviation of a channel, in [0,255], negative to always blur.
+     */
+    public void setUniformBackgroundThreshold(int maxDeviation) {
+        mUniformBackgroundThreshold = maxDeviation;
+    }
+
+    /**
+     * Set the key of the blurred content in the disk cache, see
+     * {@link BlurDialogEngine#setDiskCacheKey(String)}.
+     * <p/>
+     * Disable by default.
+     *
+     * @param contentKey key identifying the blurred content, null to disable the disk cache.
+     */
+    public void setDiskCacheKey(String contentKey) {
+        mDiskCacheKey = contentKey;
+    }
+
+    /**
+     * Set the listener notified, on the ui thread, with the metrics of each blur.
+     * <p/>
+     * The metrics are also recorded in the {@link BlurStatistics}. Since nothing is attached nor
+     * faded in, the matching phases are left at 0.
+     *
+     * @param listener listener notified with the metrics, null to stop being notified.
+     */
+    public void setMetricsListener(BlurMetricsListener listener) {
+        mMetricsListener = listener;
+    }
+
+    /**
+     * Blur the given bitmap.
+     * <p/>
+     * Can be called from any thread.
+     *
+     * @param bitmap   bitmap to blur, left untouched. Mustn't be recycled until blurred.
+     * @param callback callback notified on the ui thread once blurred, can be null.
+     * @return blur in flight, cancelling it before completion skips the callback.
+     */
+    public Future<Drawable> blur(Bitmap bitmap, Callback callback) {
+        return blur(bitmap, new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight()), callback);
+    }
+
+    /**
+     * Blur a region of the given bitmap.
+     * <p/>
+     * Can be called from any thread.
+     *
+     * @param bitmap   bitmap holding the region, left untouched. Mustn't be recycled until blurred.
+     * @param region   region of the bitmap to blur, in px.
+     * @param callback callback notified on the ui thread once blurred, can be null.
+     * @return blur in flight, cancelling it before completion skips the callback.
+     */
+    public Future<Drawable> blur(final Bitmap bitmap, Rect region, Callback callback) {
+        final Rect area = new Rect(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        if (!area.intersect(region)) {
+            throw new IllegalArgumentException("Region must intersect the bitmap. Found : " + region);
+        }
+        final BlurPipeline pipeline = createPipeline();
+        final BlurMetrics metrics = new BlurMetrics();
+        final long queuedNs = System.nanoTime();
+        return submit(new Callable<Drawable>() {
+            @Override
+            public Drawable call() {
+                metrics.endPhase(BlurMetrics.PHASE_QUEUE, queuedNs);
+                return pipeline.blur(bitmap, area, metrics);
+            }
+        }, null, metrics, callback);
+    }
+
+    /**
+     * Blur the content of the given view.
+     * <p/>
+     * Must be called from the ui thread, once the view has been laid out. The view is drawn right
+     * away at its down scaled size, the full size content is never captured.
+     *
+     * @param view     view to blur.
+     * @param callback callback notified on the ui thread once blurred, can be null.
+     * @return blur in flight, cancelling it before completion skips the callback.
+     */
+    public Future<Drawable> blur(View view, Callback callback) {
+        return blur(view, null, callback);
+    }
+
+    /**
+     * Blur a region of the given window, for instance the area behind a popup.
+     * <p/>
+     * Must be called from the ui thread, once the window has been laid out.
+     *
+     * @param window   window to blur.
+     * @param region   region of the window, in px. Null to blur the whole window.
+     * @param callback callback notified on the ui thread once blurred, can be null.
+     * @return blur in flight, cancelling it before completion skips the callback.
+     */
+    public Future<Drawable> blur(Window window, Rect region, Callback callback) {
+        return blur(window.getDecorView(), region, callback);
+    }
+
+    /**
+     * Blur a region of the given view.
+     * <p/>
+     * Must be called from the ui thread, once the view has been laid out.
+     *
+     * @param view     view to blur.
+     * @param region   region of the view, in px. Null to blur the whole view.
+     * @param callback callback notified on the ui thread once blurred, can be null.
+     * @return blur in flight, cancelling it before completion skips the callback.
+     */
+    public Future<Drawable> blur(View view, Rect region, Callback callback) {
+        final Rect area = new Rect(0, 0, view.getWidth(), view.getHeight());
+        if (area.isEmpty() || region != null && !area.intersect(region)) {
+            throw new IllegalArgumentException("View must be laid out and intersect the region. Found : "
+                + area.toShortString());
+        }
+        final BlurPipeline pipeline = createPipeline();
+        final BlurMetrics metrics = new BlurMetrics();
+
+        //draw the view straight at its down scaled size, on the ui thread
+        long startNs = System.nanoTime();
+        boolean traced = BlurTrace.begin("Blurrer capture");
+        final int height = Math.max(1, BlurPipeline.getScaledHeight(area, mDownScaleFactor));
+        final int width = Math.max(1, BlurPipeline.getScaledWidth(area, height));
+        final Bitmap overlay = BlurBitmapPool.obtain(width, height, pipeline.getOverlayConfig());
+        Canvas canvas = new Canvas(overlay);
+        canvas.scale((float) width / area.width(), (float) height / area.height());
+        canvas.translate(-area.left, -area.top);
+        view.draw(canvas);
+        metrics.setSizes(area.width(), area.height(), width, height);
+        final long queuedNs = metrics.endPhase(BlurMetrics.PHASE_CAPTURE, startNs);
+        BlurTrace.end(traced);
+
+        final String source = "view|" + view.getWidth() + "x" + view.getHeight() + "|" + area.toShortString();
+        // taken by the blur, or given back to the pool if the blur is cancelled before running.
+        final AtomicReference<Bitmap> pendingOverlay = new AtomicReference<Bitmap>(overlay);
+        return submit(new Callable<Drawable>() {
+            @Override
+            public Drawable call() {
+                final Bitmap scaled = pendingOverlay.getAndSet(null);
+                if (scaled == null) {
+                    return null;
+                }
+                return pipeline.blurScaled(scaled, source, metrics,
+                    metrics.endPhase(BlurMetrics.PHASE_QUEUE, queuedNs));
+            }
+        }, pendingOverlay, metrics, callback);
+    }
+
+    /**
+     * Build the pipeline processing the next blur, with a snapshot of the current parameters.
+     *
+     * @return blur pipeline.
+     */
+    private BlurPipeline createPipeline() {
+        BlurPipeline pipeline = new BlurPipeline(mContext);
+        pipeline.setDownScaleFactor(mDownScaleFactor);
+        pipeline.setBlurRadius(mBlurRadius);
+        pipeline.setUseRenderScript(mUseRenderScript);
+        pipeline.setGrayscale(mGrayscale);
+        pipeline.setTintColor(mTintColor);
+        pipeline.setDimAmount(mDimAmount);
+        pipeline.setGrainLevel(mGrainLevel);
+        pipeline.setUniformBackgroundThreshold(mUniformBackgroundThreshold);
+        pipeline.setDiskCacheKey(mDiskCacheKey);
+        return pipeline;
+    }
+
+    /**
+     * Run a blur on the blur threads.
+     *
+     * @param blur           blur to run.
+     * @param pendingOverlay pooled overlay not taken by the blur yet, null if none.
+     * @param metrics        metrics of the blur, dispatched once blurred.
+     * @param callback       callback notified on the ui thread once blurred, can be null.
+     * @return blur in flight.
+     */
+    private Future<Drawable> submit(Callable<Drawable> blur, AtomicReference<Bitmap> pendingOverlay,
+                                    BlurMetrics metrics, Callback callback) {
+        BlurFuture future = new BlurFuture(blur, pendingOverlay, metrics, callback, mMetricsListener, mHandler);
+        BlurExecutor.execute(future);
+        return future;
+    }
+
+    /**
+     * Callback notified once a blur is processed.
+     */
+    public interface Callback {
+
+        /**
+         * Called on the ui thread once the blur is processed, unless cancelled.
+         *
+         * @param blurred drawable of the blurred content, null if the blur failed.
+         */
+        void onBlurred(Drawable blurred);
+    }
+
+    /**
+     * Blur in flight, notifying its callback on the ui thread once done.
+     */
+    private static final class BlurFuture extends FutureTask<Drawable> {
+
+        /**
+         * Pooled overlay not taken by the blur yet, null if none.
+         */
+        private final AtomicReference<Bitmap> mPendingOverlay;
+
+        /**
+         * Metrics of the blur.
+         */
+        private final BlurMetrics mMetrics;
+
+        /**
+         * Callback notified once blurred, can be null.
+         */
+        private final Callback mCallback;
+
+        /**
+         * Listener notified with the metrics, can be null.
+         */
+        private final BlurMetricsListener mListener;
+
+        /**
+         * Handler of the ui thread.
+         */
+        private final Handler mHandler;
+
+        /**
+         * Blur in flight.
+         *
+         * @param blur           blur to run.
+         * @param pendingOverlay pooled overlay not taken by the blur yet, null if none.
+         * @param metrics        metrics of the blur.
+         * @param callback       callback notified once blurred, can be null.
+         * @param listener       listener notified with the metrics, can be null.
+         * @param handler        handler of the ui thread.
+         */
+        private BlurFuture(Callable<Drawable> blur, AtomicReference<Bitmap> pendingOverlay, BlurMetrics metrics,
+                           Callback callback, BlurMetricsListener listener, Handler handler) {
+            super(blur);
+            mPendingOverlay = pendingOverlay;
+            mMetrics = metrics;
+            mCallback = callback;
+            mListener = listener;
+            mHandler = handler;
+        }
+
+        @Override
+        protected void set(Drawable blurred) {
+            super.set(blurred);
+            if (isCancelled()) {
+                // cancelled while blurring, the result is dropped by the future.
+                for (Bitmap bitmap : BlurBitmapPool.getBitmaps(blurred)) {
+                    BlurBitmapPool.recycle(bitmap);
+                }
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                final Bitmap overlay = mPendingOverlay == null ? null : mPendingOverlay.getAndSet(null);
+                BlurBitmapPool.recycle(overlay);
+                return;
+            }
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    deliver();
+                }
+            });
+        }
+
+        /**
+         * Dispatch the metrics and notify the callback, on the ui thread.
+         */
+        private void deliver() {
+            Drawable blurred;
+            try {
+                blurred = get();
+            } catch (InterruptedException e) {
+                blurred = null;
+            } catch (ExecutionException e) {
+                blurred = null;
+            }
+            if (blurred != null) {
+                BlurStatistics.record(mMetrics);
+                if (mListener != null) {
+                    mListener.onBlurMetrics(mMetrics);
+                }
+            }
+            if (mCallback != null) {
+                mCallback.onBlurred(blurred);
+            }
+        }
+    }
+}
@@ -2,9 +2,14 @@ package fr.tvbarthel.lib.blurdialogfragment;
 
 import android.annotation.SuppressLint;
 import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import fr.tvbarthel.lib.blurdialogfragment.core.StackBlur;
 
 /**
  * Helper used to apply Fast blur algorithm on bitmap.
+ * <p/>
+ * The pixel kernel lives in the blur-core module, see {@link StackBlur}.
  */
 final class FastBlurHelper {
 
@@ -25,6 +30,19 @@ final class FastBlurHelper {
      */
     @SuppressLint("NewApi")
     public static Bitmap doBlur(Bitmap sentBitmap, int radius, boolean canReuseInBitmap) {
+        return doBlur(sentBitmap, radius, canReuseInBitmap, null);
+    }
+
+    /**
+     * blur a given bitmap and apply a post processing while writing the blurred pixels.
+     *
+     * @param sentBitmap       bitmap to blur
+     * @param radius           blur radius
+     * @param canReuseInBitmap true if bitmap must be reused without blur
+     * @param postProcess      post processing fused with the blur, can be null
+     * @return blurred bitmap
+     */
+    static Bitmap doBlur(Bitmap sentBitmap, int radius, boolean canReuseInBitmap, BlurPostProcess postProcess) {
 
         if (radius < 1) {
             return (null);
@@ -39,229 +57,90 @@ final class FastBlurHelper {
             bitmap = sentBitmap.copy(sentBitmap.getConfig(), true);
         }
 
-
-        // Stack Blur v1.0 from
-        // http://www.quasimondo.com/StackBlurForCanvas/StackBlurDemo.html
-        //
-        // Java Author: Mario Klingemann <mario at quasimondo.com>
-        // http://incubator.quasimondo.com
-        // created Feburary 29, 2004
-        // Android port : Yahel Bouaziz <yahel at kayenko.com>
-        // http://www.kayenko.com
-        // ported April 5th, 2012
-        // Single buffer tweak by Thomas Barthelemy <thomas.barthelemy.utc at gmail.com>
-        // http://tvbarthel.fr/
-        // modified April 27th, 2016
-
-        // This is a compromise between Gaussian Blur and Box blur
-        // It creates much better looking blurs than Box Blur, but is
-        // 7x faster than my Gaussian Blur implementation.
-        //
-        // I called it Stack Blur because this describes best how this
-        // filter works internally: it creates a kind of moving stack
-        // of colors whilst scanning through the image. Thereby it
-        // just has to add one new block of color to the right side
-        // of the stack and remove the leftmost color. The remaining
-        // colors on the topmost layer of the stack are either added on
-        // or reduced by one, depending on if they are on the right or
-        // on the left side of the stack.
-        //
-        // If you are using this algorithm in your code please add
-        // the following line:
-        //
-        // Stack Blur Algorithm by Mario Klingemann <mario@quasimondo.com>
-
         int w = bitmap.getWidth();
         int h = bitmap.getHeight();
 
-        int[] pix = new int[w * h];
+        int[] pix = BlurBufferPool.obtain(w * h);
         bitmap.getPixels(pix, 0, w, 0, 0, w, h);
 
-        int wm = w - 1;
-        int hm = h - 1;
-        int div = radius + radius + 1;
-
-        int px = 0;
-        int rsum, gsum, bsum, x, y, i, p, yp, yi, yw;
-        int vmin[] = new int[Math.max(w, h)];
-
-        int divsum = (div + 1) >> 1;
-        divsum *= divsum;
-        int dv[] = new int[256 * divsum];
-        for (i = 0; i < 256 * divsum; i++) {
-            dv[i] = (i / divsum);
-        }
-
-        yw = yi = 0;
+        doBlur(pix, w, h, radius, postProcess);
 
-        int[][] stack = new int[div][3];
-        int stackpointer;
-        int stackstart;
-        int[] sir;
-        int rbs;
-        int r1 = radius + 1;
-        int routsum, goutsum, boutsum;
-        int rinsum, ginsum, binsum;
-
-        for (y = 0; y < h; y++) {
-            rinsum = ginsum = binsum = routsum = goutsum = boutsum = rsum = gsum = bsum = 0;
-            for (i = -radius; i <= radius; i++) {
-                p = pix[yi + Math.min(wm, Math.max(i, 0))];
-                sir = stack[i + radius];
-                sir[0] = (p & 0xff0000) >> 16;
-                sir[1] = (p & 0x00ff00) >> 8;
-                sir[2] = (p & 0x0000ff);
-                rbs = r1 - Math.abs(i);
-                rsum += sir[0] * rbs;
-                gsum += sir[1] * rbs;
-                bsum += sir[2] * rbs;
-                if (i > 0) {
-                    rinsum += sir[0];
-                    ginsum += sir[1];
-                    binsum += sir[2];
-                } else {
-                    routsum += sir[0];
-                    goutsum += sir[1];
-                    boutsum += sir[2];
-                }
-            }
-            stackpointer = radius;
-
-            for (x = 0; x < w; x++) {
-
-                pix[yi] = (0xff000000 & pix[yi]) | (dv[rsum] << 16) | (dv[gsum] << 8) | dv[bsum];
-
-                rsum -= routsum;
-                gsum -= goutsum;
-                bsum -= boutsum;
-
-                stackstart = stackpointer - radius + div;
-                sir = stack[stackstart % div];
-
-                routsum -= sir[0];
-                goutsum -= sir[1];
-                boutsum -= sir[2];
-
-                if (y == 0) {
-                    vmin[x] = Math.min(x + radius + 1, wm);
-                }
-
-                p = pix[yw + vmin[x]];
-
-                sir[0] = (p & 0xff0000) >> 16;
-                sir[1] = (p & 0x00ff00) >> 8;
-                sir[2] = (p & 0x0000ff);
-
-                rinsum += sir[0];
-                ginsum += sir[1];
-                binsum += sir[2];
-
-                rsum += rinsum;
-                gsum += ginsum;
-                bsum += binsum;
-
-                stackpointer = (stackpointer + 1) % div;
-                sir = stack[(stackpointer) % div];
-
-                routsum += sir[0];
-                goutsum += sir[1];
-                boutsum += sir[2];
+        bitmap.setPixels(pix, 0, w, 0, 0, w, h);
+        BlurBufferPool.recycle(pix);
 
-                rinsum -= sir[0];
-                ginsum -= sir[1];
-                binsum -= sir[2];
+        return (bitmap);
+    }
 
-                yi++;
-            }
-            yw += w;
+    /**
+     * blur a region of the given pixels.
+     * <p/>
+     * Only the blurred pixels which can be affected by the source pixels of the region are
+     * written, that is to say the region extended by the radius. Since both passes spread the
+     * pixels, the source is read from the region extended by twice the radius.
+     *
+     * @param src         source pixels, left untouched.
+     * @param dst         blurred pixels, updated around the region.
+     * @param w           width of both source and blurred pixels.
+     * @param region      region of the source which changed.
+     * @param radius      blur radius
+     * @param window      buffer used to blur the region, must hold the region extended by twice the radius.
+     * @param postProcess post processing fused with the blur, can be null
+     */
+    static void doBlur(int[] src, int[] dst, int w, Rect region, int radius, int[] window,
+                       BlurPostProcess postProcess) {
+        final int h = src.length / w;
+        final int windowLeft = Math.max(0, region.left - 2 * radius);
+        final int windowTop = Math.max(0, region.top - 2 * radius);
+        final int windowRight = Math.min(w, region.right + 2 * radius);
+        final int windowBottom = Math.min(h, region.bottom + 2 * radius);
+        final int windowWidth = windowRight - windowLeft;
+        final int windowHeight = windowBottom - windowTop;
+
+        for (int y = windowTop; y < windowBottom; y++) {
+            System.arraycopy(src, y * w + windowLeft, window, (y - windowTop) * windowWidth, windowWidth);
         }
-        for (x = 0; x < w; x++) {
-            rinsum = ginsum = binsum = routsum = goutsum = boutsum = rsum = gsum = bsum = 0;
-            yp = -radius * w;
-            for (i = -radius; i <= radius; i++) {
-                yi = Math.max(0, yp) + x;
-
-                sir = stack[i + radius];
-
-                px = pix[yi];
-
-                sir[0] = (px & 0xff0000) >> 16;
-                sir[1] = (px & 0x00ff00) >> 8;
-                sir[2] = (px & 0x0000ff);
-
-                rbs = r1 - Math.abs(i);
-
-                rsum += sir[0] * rbs;
-                gsum += sir[1] * rbs;
-                bsum += sir[2] * rbs;
-
-                if (i > 0) {
-                    rinsum += sir[0];
-                    ginsum += sir[1];
-                    binsum += sir[2];
-                } else {
-                    routsum += sir[0];
-                    goutsum += sir[1];
-                    boutsum += sir[2];
-                }
-
-                if (i < hm) {
-                    yp += w;
-                }
-            }
-            yi = x;
-            stackpointer = radius;
-            for (y = 0; y < h; y++) {
-                // Preserve alpha channel: ( 0xff000000 & pix[yi] )
-                pix[yi] = (0xff000000 & pix[yi]) | (dv[rsum] << 16) | (dv[gsum] << 8) | dv[bsum];
-
-                rsum -= routsum;
-                gsum -= goutsum;
-                bsum -= boutsum;
-
-                stackstart = stackpointer - radius + div;
-                sir = stack[stackstart % div];
-
-                routsum -= sir[0];
-                goutsum -= sir[1];
-                boutsum -= sir[2];
-
-                if (x == 0) {
-                    vmin[y] = Math.min(y + r1, hm) * w;
-                }
-                p = x + vmin[y];
-
-                px = pix[p];
-
-                sir[0] = (px & 0xff0000) >> 16;
-                sir[1] = (px & 0x00ff00) >> 8;
-                sir[2] = (px & 0x0000ff);
 
-                rinsum += sir[0];
-                ginsum += sir[1];
-                binsum += sir[2];
-
-                rsum += rinsum;
-                gsum += ginsum;
-                bsum += binsum;
-
-                stackpointer = (stackpointer + 1) % div;
-                sir = stack[stackpointer];
-
-                routsum += sir[0];
-                goutsum += sir[1];
-                boutsum += sir[2];
-
-                rinsum -= sir[0];
-                ginsum -= sir[1];
-                binsum -= sir[2];
+        doBlur(window, windowWidth, windowHeight, radius, postProcess);
+
+        // pixels closer than the radius to an edge of the window which isn't an edge of the
+        // source have been blurred with clamped pixels, only the extended region is exact.
+        final int left = Math.max(0, region.left - radius);
+        final int top = Math.max(0, region.top - radius);
+        final int right = Math.min(w, region.right + radius);
+        final int bottom = Math.min(h, region.bottom + radius);
+        for (int y = top; y < bottom; y++) {
+            System.arraycopy(window, (y - windowTop) * windowWidth + left - windowLeft,
+                dst, y * w + left, right - left);
+        }
+    }
 
-                yi += w;
-            }
+    /**
+     * blur the given pixels in place.
+     *
+     * @param pix         pixels to blur
+     * @param w           width of the pixels
+     * @param h           height of the pixels
+     * @param radius      blur radius
+     * @param postProcess post processing applied while writing the blurred pixels, can be null
+     */
+    static void doBlur(int[] pix, int w, int h, int radius, BlurPostProcess postProcess) {
+        if (radius < 1) {
+            return;
         }
 
-        bitmap.setPixels(pix, 0, w, 0, 0, w, h);
+        boolean traced = BlurTrace.begin("FastBlur horizontal pass");
+        StackBlur.blurHorizontally(pix, w, h, radius);
+        BlurTrace.end(traced);
 
-        return (bitmap);
+        traced = BlurTrace.begin("FastBlur vertical pass");
+        StackBlur.blurVertically(pix, w, h, radius, postProcess);
+        BlurTrace.end(traced);
+    }
+
+    /**
+     * Drop the division table kept between blurs, released under memory pressure.
+     */
+    static void releaseDivisionTable() {
+        StackBlur.releaseDivisionTable();
     }
 }
\ No newline at end of file
@@ -0,0 +1,126 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.LayerDrawable;
+
+import java.nio.ByteBuffer;
+
+import fr.tvbarthel.lib.blurdialogfragment.core.GrayscaleStackBlur;
+
+/**
+ * Helper used to blur the luminance of a bitmap only.
+ * <p/>
+ * The bitmap is converted to a single 8 bits channel which is blurred with the stack blur
+ * algorithm, a third of the work of a color blur. The blurred luminance is kept in an ALPHA_8
+ * bitmap, half the memory of a RGB_565 one, and rendered with a color filter over a background
+ * color.
+ * <p/>
+ * The channel kernel lives in the blur-core module, see {@link GrayscaleStackBlur}.
+ */
+final class GrayscaleBlurHelper {
+
+    /**
+     * Non instantiable class.
+     */
+    private GrayscaleBlurHelper() {
+
+    }
+
+    /**
+     * Blur the luminance of the given bitmap.
+     *
+     * @param sentBitmap bitmap to blur, given back to the {@link BlurBitmapPool} once converted.
+     * @param radius     blur radius
+     * @return ALPHA_8 bitmap holding the blurred luminance.
+     */
+    static Bitmap doBlur(Bitmap sentBitmap, int radius) {
+        final int w = sentBitmap.getWidth();
+        final int h = sentBitmap.getHeight();
+        int[] pix = BlurBufferPool.obtain(w * h);
+        sentBitmap.getPixels(pix, 0, w, 0, 0, w, h);
+        BlurBitmapPool.recycle(sentBitmap);
+
+        byte[] luminance = new byte[w * h];
+        GrayscaleStackBlur.toLuminance(pix, luminance);
+        BlurBufferPool.recycle(pix);
+
+        doBlur(luminance, w, h, radius);
+
+        Bitmap bitmap = BlurBitmapPool.obtain(w, h, Bitmap.Config.ALPHA_8);
+        final int rowBytes = bitmap.getRowBytes();
+        if (rowBytes != w) {
+            // rows of the bitmap are padded, copy the luminance row by row.
+            byte[] padded = new byte[rowBytes * h];
+            for (int y = 0; y < h; y++) {
+                System.arraycopy(luminance, y * w, padded, y * rowBytes, w);
+            }
+            luminance = padded;
+        }
+        bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(luminance));
+        return bitmap;
+    }
+
+    /**
+     * Build the drawable rendering a blurred luminance.
+     * <p/>
+     * The tint and the dim are applied through the two colors used to render the luminance,
+     * matching the result of {@link BlurPostProcess} on a gray blur without touching the pixels.
+     *
+     * @param resources resources used to build the bitmap drawable.
+     * @param luminance ALPHA_8 bitmap holding the blurred luminance.
+     * @param tintColor tint blended over the blur, its alpha is used as the tint strength.
+     * @param dimAmount dim applied after the tint, from 0 (no dim) to 1 (black).
+     * @return drawable of the blurred luminance.
+     */
+    static Drawable createDrawable(Resources resources, Bitmap luminance, int tintColor, float dimAmount) {
+        final float tintStrength = Color.alpha(tintColor) / 255f;
+        final float brightness = 1f - Math.max(0f, Math.min(1f, dimAmount));
+
+        // out = luminance * (1 - strength) + tint * strength, split in a background color drawn
+        // where the luminance is 0 and a foreground color drawn where the luminance is 255.
+        final int background = Color.rgb(
+            Math.round(Color.red(tintColor) * tintStrength * brightness),
+            Math.round(Color.green(tintColor) * tintStrength * brightness),
+            Math.round(Color.blue(tintColor) * tintStrength * brightness)
+        );
+        final int foreground = Color.rgb(
+            Math.round((255 * (1f - tintStrength) + Color.red(tintColor) * tintStrength) * brightness),
+            Math.round((255 * (1f - tintStrength) + Color.green(tintColor) * tintStrength) * brightness),
+            Math.round((255 * (1f - tintStrength) + Color.blue(tintColor) * tintStrength) * brightness)
+        );
+
+        BitmapDrawable blurred = new BitmapDrawable(resources, luminance);
+        blurred.setColorFilter(new PorterDuffColorFilter(foreground, PorterDuff.Mode.SRC_IN));
+        return new LayerDrawable(new Drawable[]{new ColorDrawable(background), blurred});
+    }
+
+    /**
+     * Blur a single channel in place with the stack blur algorithm.
+     *
+     * @param pix    unsigned channel values to blur.
+     * @param w      width of the channel.
+     * @param h      height of the channel.
+     * @param radius blur radius
+     */
+    static void doBlur(byte[] pix, int w, int h, int radius) {
+        if (radius < 1) {
+            return;
+        }
+        final byte[] horizontal = new byte[w * h];
+
+        boolean traced = BlurTrace.begin("GrayscaleBlur horizontal pass");
+        GrayscaleStackBlur.blurHorizontally(pix, horizontal, w, h, radius);
+        BlurTrace.end(traced);
+
+        traced = BlurTrace.begin("GrayscaleBlur vertical pass");
+        GrayscaleStackBlur.blurVertically(horizontal, pix, w, h, radius);
+        BlurTrace.end(traced);
+    }
+}
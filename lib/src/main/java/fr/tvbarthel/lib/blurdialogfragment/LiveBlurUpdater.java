@@ -0,0 +1,354 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+
+/**
+ * Keep a blurred background up to date with the content behind it.
+ * <p/>
+ * The background is captured again at a capped frame rate, the down scaled capture is compared
+ * tile by tile with the previous one and only the tiles which changed are blurred again, along
+ * with a halo matching the blur radius. The blurred bitmap is updated in place, no bitmap is
+ * allocated once started.
+ */
+final class LiveBlurUpdater {
+
+    /**
+     * Size of the tiles compared between two captures, in down scaled pixels.
+     */
+    static final int TILE_SIZE = 16;
+
+    /**
+     * View captured, must be the one captured for the initial blur.
+     */
+    private final View mCapturedView;
+
+    /**
+     * View displaying the blurred bitmap, skipped during the capture.
+     */
+    private final BlurredImageView mBlurredView;
+
+    /**
+     * Blurred bitmap updated in place.
+     */
+    private final Bitmap mBlurredBitmap;
+
+    /**
+     * Area of the captured view which is blurred.
+     */
+    private final Rect mCapturedArea;
+
+    /**
+     * Radius used to blur the dirty tiles.
+     */
+    private final int mBlurRadius;
+
+    /**
+     * Post processing fused with the blur of the dirty regions, can be null.
+     */
+    private final BlurPostProcess mPostProcess;
+
+    /**
+     * Minimal delay between two captures.
+     */
+    private final long mFrameIntervalMs;
+
+    /**
+     * Width of the blurred bitmap.
+     */
+    private final int mWidth;
+
+    /**
+     * Height of the blurred bitmap.
+     */
+    private final int mHeight;
+
+    /**
+     * Down scaled capture, reused for each frame.
+     */
+    private final Bitmap mCapture;
+
+    /**
+     * Canvas used to draw the down scaled capture.
+     */
+    private final Canvas mCaptureCanvas;
+
+    /**
+     * Blurred pixels, kept in sync with the blurred bitmap.
+     */
+    private final int[] mBlurredPixels;
+
+    /**
+     * Buffer used to blur the dirty regions.
+     */
+    private final int[] mWindowPixels;
+
+    /**
+     * Dirty regions of the current frame, 4 values per region : left, top, right, bottom.
+     */
+    private final int[] mDirtyRegions;
+
+    /**
+     * Rect used to pass a dirty region to the blur.
+     */
+    private final Rect mDirtyRegion;
+
+    /**
+     * Handler used to schedule the captures and apply the updates on the ui thread.
+     */
+    private final Handler mHandler;
+
+    /**
+     * Pixels of the current capture.
+     */
+    private int[] mCurrentPixels;
+
+    /**
+     * Pixels of the previous capture, null until the first capture.
+     */
+    private int[] mPreviousPixels;
+
+    /**
+     * Number of dirty regions of the current frame.
+     */
+    private int mDirtyRegionCount;
+
+    /**
+     * True while the updater is running.
+     */
+    private boolean mRunning;
+
+    /**
+     * True from the capture until the blurred dirty regions are applied, the capture is in use.
+     */
+    private boolean mBlurPending;
+
+    /**
+     * Capture the background and post the blur of the dirty tiles.
+     */
+    private final Runnable mCaptureRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!mRunning) {
+                return;
+            }
+            final boolean traced = BlurTrace.begin("LiveBlur capture");
+            capture();
+            BlurTrace.end(traced);
+            mBlurPending = true;
+            BlurExecutor.execute(mBlurRunnable);
+        }
+    };
+
+    /**
+     * Blur the dirty tiles out of the ui thread.
+     */
+    private final Runnable mBlurRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final boolean traced = BlurTrace.begin("LiveBlur dirty regions");
+            blurDirtyRegions();
+            BlurTrace.end(traced);
+            mHandler.post(mApplyRunnable);
+        }
+    };
+
+    /**
+     * Apply the blurred dirty regions on the blurred bitmap and schedule the next capture.
+     */
+    private final Runnable mApplyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mBlurPending = false;
+            if (!mRunning) {
+                //stopped while blurring, the capture is no longer in use
+                mCapture.recycle();
+                return;
+            }
+            final boolean traced = BlurTrace.begin("LiveBlur apply");
+            applyDirtyRegions();
+            BlurTrace.end(traced);
+            mHandler.postDelayed(mCaptureRunnable, mFrameIntervalMs);
+        }
+    };
+
+    /**
+     * Keep a blurred background up to date with the content behind it.
+     *
+     * @param capturedView  view captured for the initial blur.
+     * @param blurredView   view displaying the blurred bitmap.
+     * @param blurredBitmap mutable blurred bitmap, updated in place.
+     * @param capturedArea  area of the captured view which is blurred.
+     * @param blurRadius    radius used to blur.
+     * @param postProcess   post processing fused with the blur, can be null.
+     * @param maxFrameRate  maximum number of captures per second.
+     */
+    LiveBlurUpdater(View capturedView, BlurredImageView blurredView, Bitmap blurredBitmap,
+                    Rect capturedArea, int blurRadius, BlurPostProcess postProcess, int maxFrameRate) {
+        mCapturedView = capturedView;
+        mBlurredView = blurredView;
+        mBlurredBitmap = blurredBitmap;
+        mCapturedArea = new Rect(capturedArea);
+        mBlurRadius = blurRadius;
+        mPostProcess = postProcess;
+        mFrameIntervalMs = 1000 / Math.max(1, maxFrameRate);
+        mWidth = blurredBitmap.getWidth();
+        mHeight = blurredBitmap.getHeight();
+
+        mCapture = Bitmap.createBitmap(mWidth, mHeight, blurredBitmap.getConfig());
+        mCaptureCanvas = new Canvas(mCapture);
+        mCurrentPixels = new int[mWidth * mHeight];
+        mBlurredPixels = new int[mWidth * mHeight];
+        mWindowPixels = new int[mWidth * mHeight];
+        int tileCount = ((mWidth + TILE_SIZE - 1) / TILE_SIZE) * ((mHeight + TILE_SIZE - 1) / TILE_SIZE);
+        mDirtyRegions = new int[tileCount * 4];
+        mDirtyRegion = new Rect();
+        mBlurredBitmap.getPixels(mBlurredPixels, 0, mWidth, 0, 0, mWidth, mHeight);
+
+        mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Start to keep the blurred background up to date.
+     */
+    void start() {
+        if (!mRunning) {
+            mRunning = true;
+            mHandler.postDelayed(mCaptureRunnable, mFrameIntervalMs);
+        }
+    }
+
+    /**
+     * Stop to update the blurred background.
+     * <p/>
+     * The capture is recycled right away, or once the blur in flight is done with it.
+     */
+    void stop() {
+        mRunning = false;
+        mHandler.removeCallbacks(mCaptureRunnable);
+        if (!mBlurPending && !mCapture.isRecycled()) {
+            mCapture.recycle();
+        }
+    }
+
+    /**
+     * Draw the captured area of the captured view on the down scaled capture.
+     * <p/>
+     * The blurred view skips its drawing during the capture so that it doesn't capture itself,
+     * without being hidden which would invalidate the window.
+     */
+    private void capture() {
+        mBlurredView.setDrawSkipped(true);
+        mCaptureCanvas.save();
+        mCaptureCanvas.scale(mWidth / (float) mCapturedArea.width(), mHeight / (float) mCapturedArea.height());
+        mCaptureCanvas.translate(-mCapturedArea.left, -mCapturedArea.top);
+        mCapturedView.draw(mCaptureCanvas);
+        mCaptureCanvas.restore();
+        mBlurredView.setDrawSkipped(false);
+    }
+
+    /**
+     * Compare the capture with the previous one and blur the dirty regions.
+     * <p/>
+     * Dirty tiles of a same row are merged in a single region.
+     */
+    private void blurDirtyRegions() {
+        mCapture.getPixels(mCurrentPixels, 0, mWidth, 0, 0, mWidth, mHeight);
+        mDirtyRegionCount = 0;
+
+        if (mPreviousPixels == null) {
+            // nothing to compare with, blur the whole capture at once.
+            addDirtyRegion(0, 0, mWidth, mHeight);
+        }
+
+        for (int top = 0; mPreviousPixels != null && top < mHeight; top += TILE_SIZE) {
+            final int bottom = Math.min(mHeight, top + TILE_SIZE);
+            int regionLeft = -1;
+            for (int left = 0; left < mWidth; left += TILE_SIZE) {
+                final int right = Math.min(mWidth, left + TILE_SIZE);
+                final boolean dirty = isTileDirty(left, top, right, bottom);
+                if (dirty && regionLeft == -1) {
+                    regionLeft = left;
+                } else if (!dirty && regionLeft != -1) {
+                    addDirtyRegion(regionLeft, top, left, bottom);
+                    regionLeft = -1;
+                }
+            }
+            if (regionLeft != -1) {
+                addDirtyRegion(regionLeft, top, mWidth, bottom);
+            }
+        }
+
+        for (int i = 0; i < mDirtyRegionCount; i++) {
+            mDirtyRegion.set(mDirtyRegions[i * 4], mDirtyRegions[i * 4 + 1],
+                mDirtyRegions[i * 4 + 2], mDirtyRegions[i * 4 + 3]);
+            FastBlurHelper.doBlur(mCurrentPixels, mBlurredPixels, mWidth,
+                mDirtyRegion, mBlurRadius, mWindowPixels, mPostProcess);
+        }
+
+        // swap captures, the current one becomes the reference of the next frame.
+        int[] previous = mPreviousPixels == null ? new int[mWidth * mHeight] : mPreviousPixels;
+        mPreviousPixels = mCurrentPixels;
+        mCurrentPixels = previous;
+    }
+
+    /**
+     * Check if a tile changed since the previous capture.
+     *
+     * @param left   left of the tile.
+     * @param top    top of the tile.
+     * @param right  right of the tile, excluded.
+     * @param bottom bottom of the tile, excluded.
+     * @return true if at least one pixel of the tile changed.
+     */
+    private boolean isTileDirty(int left, int top, int right, int bottom) {
+        for (int y = top; y < bottom; y++) {
+            final int offset = y * mWidth;
+            for (int x = left; x < right; x++) {
+                if (mCurrentPixels[offset + x] != mPreviousPixels[offset + x]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add a dirty region to the current frame.
+     *
+     * @param left   left of the region.
+     * @param top    top of the region.
+     * @param right  right of the region, excluded.
+     * @param bottom bottom of the region, excluded.
+     */
+    private void addDirtyRegion(int left, int top, int right, int bottom) {
+        final int index = mDirtyRegionCount * 4;
+        mDirtyRegions[index] = left;
+        mDirtyRegions[index + 1] = top;
+        mDirtyRegions[index + 2] = right;
+        mDirtyRegions[index + 3] = bottom;
+        mDirtyRegionCount++;
+    }
+
+    /**
+     * Copy the blurred dirty regions, extended by the blur radius, in the blurred bitmap.
+     */
+    private void applyDirtyRegions() {
+        if (mDirtyRegionCount == 0) {
+            return;
+        }
+        for (int i = 0; i < mDirtyRegionCount; i++) {
+            final int left = Math.max(0, mDirtyRegions[i * 4] - mBlurRadius);
+            final int top = Math.max(0, mDirtyRegions[i * 4 + 1] - mBlurRadius);
+            final int right = Math.min(mWidth, mDirtyRegions[i * 4 + 2] + mBlurRadius);
+            final int bottom = Math.min(mHeight, mDirtyRegions[i * 4 + 3] + mBlurRadius);
+            mBlurredBitmap.setPixels(mBlurredPixels, top * mWidth + left, mWidth,
+                left, top, right - left, bottom - top);
+        }
+        mBlurredView.invalidate();
+    }
+}
@@ -19,6 +19,11 @@ final class RenderScriptBlurHelper {
      */
     private static final String TAG = RenderScriptBlurHelper.class.getSimpleName();
 
+    /**
+     * RenderScript context kept between blurs, created on the application context.
+     */
+    private static RenderScript sRenderScript;
+
     /**
      * Non instantiable class.
      */
@@ -52,15 +57,30 @@ final class RenderScriptBlurHelper {
         }
 
         try {
-            final RenderScript rs = RenderScript.create(context);
-            final Allocation input = Allocation.createFromBitmap(rs, bitmap, Allocation.MipmapControl.MIPMAP_NONE,
-                Allocation.USAGE_SCRIPT);
-            final Allocation output = Allocation.createTyped(rs, input.getType());
-            final ScriptIntrinsicBlur script = ScriptIntrinsicBlur.create(rs, Element.U8_4(rs));
-            script.setRadius(radius);
-            script.setInput(input);
-            script.forEach(output);
-            output.copyTo(bitmap);
+            synchronized (RenderScriptBlurHelper.class) {
+                if (sRenderScript == null) {
+                    sRenderScript = RenderScript.create(context.getApplicationContext());
+                }
+                final RenderScript rs = sRenderScript;
+                final Allocation input = Allocation.createFromBitmap(rs, bitmap,
+                    Allocation.MipmapControl.MIPMAP_NONE, Allocation.USAGE_SCRIPT);
+                final Allocation output = Allocation.createTyped(rs, input.getType());
+                final ScriptIntrinsicBlur script = ScriptIntrinsicBlur.create(rs, Element.U8_4(rs));
+                script.setRadius(radius);
+                script.setInput(input);
+                final boolean traced = BlurTrace.begin("RenderScript blur");
+                try {
+                    script.forEach(output);
+                    output.copyTo(bitmap);
+                } finally {
+                    BlurTrace.end(traced);
+                }
+
+                // allocations are native, don't wait for the garbage collector.
+                script.destroy();
+                output.destroy();
+                input.destroy();
+            }
             return bitmap;
         } catch (RSRuntimeException e) {
             Log.e(TAG, "RenderScript known error : https://code.google.com/p/android/issues/detail?id=71347 "
@@ -70,6 +90,16 @@ final class RenderScriptBlurHelper {
         return null;
     }
 
+    /**
+     * Destroy the RenderScript context kept between blurs, released under memory pressure.
+     */
+    static synchronized void release() {
+        if (sRenderScript != null) {
+            sRenderScript.destroy();
+            sRenderScript = null;
+        }
+    }
+
     private static Bitmap convertRGB565toARGB888(Bitmap bitmap) {
         return bitmap.copy(Bitmap.Config.ARGB_8888, true);
     }
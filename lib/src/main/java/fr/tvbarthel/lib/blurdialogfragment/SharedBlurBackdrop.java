@@ -0,0 +1,285 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Blurred backdrop shared by the engines of a same activity.
+ * <p/>
+ * The first engine publishes its blurred view on the decor view of the activity. The following
+ * ones, usually stacked dialogs, reuse the published view and its blurred bitmap instead of
+ * capturing the screen again. Only one blurred view stays attached, it is removed once the last
+ * owner releases the backdrop.
+ * <p/>
+ * Tint, dim and grain are baked into the blurred bitmap, the backdrop is only shared by engines
+ * applying the same tint and dim, without grain : the grain would be lost once blurred again.
+ */
+final class SharedBlurBackdrop {
+
+    /**
+     * Decor view on which the backdrop is published.
+     */
+    private final View mDecorView;
+
+    /**
+     * Blurred view attached to the activity.
+     */
+    private final BlurredImageView mView;
+
+    /**
+     * Blurred bitmap of the engine which published the backdrop.
+     */
+    private final Bitmap mBlurredBitmap;
+
+    /**
+     * Radius used to blur the backdrop.
+     */
+    private final int mBlurRadius;
+
+    /**
+     * Blurred area of the captured background.
+     */
+    private final Rect mBlurredArea;
+
+    /**
+     * Down scale factor used to blur the backdrop.
+     */
+    private float mDownScaleFactor;
+
+    /**
+     * Tint baked into the backdrop.
+     */
+    private int mTintColor;
+
+    /**
+     * Dim amount baked into the backdrop.
+     */
+    private float mDimAmount;
+
+    /**
+     * Grain level baked into the backdrop.
+     */
+    private int mGrainLevel;
+
+    /**
+     * Engines currently sharing the backdrop, the last one is displayed on top.
+     */
+    private final ArrayList<Object> mOwners;
+
+    /**
+     * Drawables displayed for each owner, matching {@link SharedBlurBackdrop#mOwners}.
+     */
+    private final ArrayList<Drawable> mDrawables;
+
+    /**
+     * Bitmaps of the owners which released the backdrop, still drawn by the blurred view.
+     */
+    private final ArrayList<Bitmap> mAdoptedBitmaps;
+
+    /**
+     * Blurred backdrop shared by the engines of a same activity.
+     * <p/>
+     * The parameters baked into the blurred bitmap must be set through
+     * {@link SharedBlurBackdrop#setBlurParameters(Rect, float, int, float, int)} before publishing it.
+     *
+     * @param decorView     decor view on which the backdrop is published.
+     * @param view          blurred view attached to the activity.
+     * @param blurredBitmap blurred bitmap displayed by the view.
+     * @param blurRadius    radius used to blur.
+     */
+    SharedBlurBackdrop(View decorView, BlurredImageView view, Bitmap blurredBitmap, int blurRadius) {
+        mDecorView = decorView;
+        mView = view;
+        mBlurredBitmap = blurredBitmap;
+        mBlurRadius = blurRadius;
+        mBlurredArea = new Rect();
+        mOwners = new ArrayList<Object>();
+        mDrawables = new ArrayList<Drawable>();
+        mAdoptedBitmaps = new ArrayList<Bitmap>();
+    }
+
+    /**
+     * Retrieve the backdrop published on the given decor view.
+     *
+     * @param decorView decor view of the activity.
+     * @return published backdrop or null if none.
+     */
+    static SharedBlurBackdrop get(View decorView) {
+        Object backdrop = decorView.getTag(R.id.blur_dialog_shared_backdrop);
+        return backdrop instanceof SharedBlurBackdrop ? (SharedBlurBackdrop) backdrop : null;
+    }
+
+    /**
+     * Set the parameters baked into the blurred bitmap, checked before sharing the backdrop.
+     *
+     * @param blurredArea     blurred area of the captured background.
+     * @param downScaleFactor down scale factor used to blur.
+     * @param tintColor       tint applied to the blur.
+     * @param dimAmount       dim amount applied to the blur.
+     * @param grainLevel      grain level applied to the blur.
+     */
+    void setBlurParameters(Rect blurredArea, float downScaleFactor, int tintColor, float dimAmount, int grainLevel) {
+        mBlurredArea.set(blurredArea);
+        mDownScaleFactor = downScaleFactor;
+        mTintColor = tintColor;
+        mDimAmount = dimAmount;
+        mGrainLevel = grainLevel;
+    }
+
+    /**
+     * Publish the backdrop on its decor view, the given owner is the first one.
+     *
+     * @param owner    engine which blurred the view.
+     * @param drawable drawable of the blurred background.
+     * @return true if published, false if a backdrop has already been published.
+     */
+    boolean publish(Object owner, BitmapDrawable drawable) {
+        if (get(mDecorView) != null) {
+            return false;
+        }
+        acquire(owner, drawable);
+        mDecorView.setTag(R.id.blur_dialog_shared_backdrop, this);
+        return true;
+    }
+
+    /**
+     * Check if the backdrop can be reused with the given blur parameters.
+     *
+     * @param blurredArea     blurred area of the captured background.
+     * @param downScaleFactor down scale factor used to blur.
+     * @param tintColor       tint applied to the blur.
+     * @param dimAmount       dim amount applied to the blur.
+     * @param grainLevel      grain level applied to the blur.
+     * @return true if the backdrop matches the same area at the same scale, with the same effects and
+     * without grain.
+     */
+    boolean isCompatible(Rect blurredArea, float downScaleFactor, int tintColor, float dimAmount, int grainLevel) {
+        return grainLevel <= 0
+            && mBlurredArea.equals(blurredArea)
+            && mDownScaleFactor == downScaleFactor
+            && mTintColor == tintColor
+            && mDimAmount == dimAmount
+            && mGrainLevel == grainLevel;
+    }
+
+    /**
+     * Share the backdrop with a new owner.
+     *
+     * @param owner    engine sharing the backdrop.
+     * @param drawable drawable displayed for this owner, null to keep the current one.
+     */
+    void acquire(Object owner, Drawable drawable) {
+        mOwners.add(owner);
+        mDrawables.add(drawable != null ? drawable : getDrawable(null));
+    }
+
+    /**
+     * Update the drawable displayed for the given owner.
+     *
+     * @param owner    engine sharing the backdrop.
+     * @param drawable drawable displayed for this owner.
+     */
+    void setDrawable(Object owner, Drawable drawable) {
+        int index = mOwners.indexOf(owner);
+        if (index != -1) {
+            mDrawables.set(index, drawable);
+        }
+    }
+
+    /**
+     * Retrieve the drawable displayed for the given owner.
+     *
+     * @param owner engine sharing the backdrop, null for the owner on top.
+     * @return drawable displayed for the owner, null if not an owner.
+     */
+    Drawable getDrawable(Object owner) {
+        int index = owner == null ? mOwners.size() - 1 : mOwners.indexOf(owner);
+        return index == -1 ? null : mDrawables.get(index);
+    }
+
+    /**
+     * Stop to share the backdrop with the given owner.
+     * <p/>
+     * The backdrop is unpublished once released by its last owner.
+     *
+     * @param owner engine sharing the backdrop.
+     * @return drawable of the owner on top once released, null if no owner remains.
+     */
+    Drawable release(Object owner) {
+        int index = mOwners.indexOf(owner);
+        if (index != -1) {
+            mOwners.remove(index);
+            mDrawables.remove(index);
+        }
+        if (mOwners.isEmpty()) {
+            if (mDecorView.getTag(R.id.blur_dialog_shared_backdrop) == this) {
+                mDecorView.setTag(R.id.blur_dialog_shared_backdrop, null);
+            }
+            return null;
+        }
+        return getDrawable(null);
+    }
+
+    /**
+     * Keep the bitmaps of an owner which released the backdrop until the blurred view is removed.
+     *
+     * @param bitmaps bitmaps retained by the owner, ownership is transferred to the backdrop.
+     */
+    void adoptBitmaps(List<Bitmap> bitmaps) {
+        mAdoptedBitmaps.addAll(bitmaps);
+    }
+
+    /**
+     * Take over the bitmaps of the owners which released the backdrop, usually by its last owner.
+     *
+     * @return adopted bitmaps, ownership is transferred to the caller.
+     */
+    List<Bitmap> takeAdoptedBitmaps() {
+        final List<Bitmap> bitmaps = new ArrayList<Bitmap>(mAdoptedBitmaps);
+        mAdoptedBitmaps.clear();
+        return bitmaps;
+    }
+
+    /**
+     * Check if the given engine shares the backdrop.
+     *
+     * @param owner engine.
+     * @return true if the engine shares the backdrop.
+     */
+    boolean isOwner(Object owner) {
+        return mOwners.contains(owner);
+    }
+
+    /**
+     * Retrieve the blurred view attached to the activity.
+     *
+     * @return blurred view.
+     */
+    BlurredImageView getView() {
+        return mView;
+    }
+
+    /**
+     * Retrieve the blurred bitmap of the engine which published the backdrop.
+     *
+     * @return blurred bitmap.
+     */
+    Bitmap getBlurredBitmap() {
+        return mBlurredBitmap;
+    }
+
+    /**
+     * Retrieve the radius used to blur the backdrop.
+     *
+     * @return blur radius.
+     */
+    int getBlurRadius() {
+        return mBlurRadius;
+    }
+}
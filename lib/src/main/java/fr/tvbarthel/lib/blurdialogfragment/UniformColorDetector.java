@@ -0,0 +1,76 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+/**
+ * Helper used to detect backgrounds which are close enough to a solid color.
+ * <p/>
+ * Blurring such a background doesn't change anything visible, the blur can be skipped and the
+ * background rendered as a solid color instead.
+ */
+final class UniformColorDetector {
+
+    /**
+     * Number of samples taken along each axis of the bitmap.
+     */
+    static final int SAMPLE_GRID_SIZE = 16;
+
+    /**
+     * Non instantiable class.
+     */
+    private UniformColorDetector() {
+
+    }
+
+    /**
+     * Sample the given bitmap on a regular grid and check if every sample is close to a single color.
+     * <p/>
+     * Since a blur is an average, a blurred background stays within the range of its samples. If
+     * every channel of every sample is within the given deviation of the returned color, so is
+     * the blurred background, sampling aside.
+     *
+     * @param bitmap       opaque bitmap to sample.
+     * @param maxDeviation maximum deviation of a channel from the uniform color, in [0,255].
+     * @return uniform color or {@link Color#TRANSPARENT} if the bitmap isn't uniform.
+     */
+    static int detect(Bitmap bitmap, int maxDeviation) {
+        final int w = bitmap.getWidth();
+        final int h = bitmap.getHeight();
+        if (maxDeviation < 0 || w == 0 || h == 0) {
+            return Color.TRANSPARENT;
+        }
+
+        int minRed = 255;
+        int minGreen = 255;
+        int minBlue = 255;
+        int maxRed = 0;
+        int maxGreen = 0;
+        int maxBlue = 0;
+        final int range = 2 * maxDeviation;
+
+        for (int j = 0; j < SAMPLE_GRID_SIZE; j++) {
+            // samples are centered in the cells of the grid.
+            final int y = (2 * j + 1) * h / (2 * SAMPLE_GRID_SIZE);
+            for (int i = 0; i < SAMPLE_GRID_SIZE; i++) {
+                final int x = (2 * i + 1) * w / (2 * SAMPLE_GRID_SIZE);
+                final int pixel = bitmap.getPixel(x, y);
+                final int red = Color.red(pixel);
+                final int green = Color.green(pixel);
+                final int blue = Color.blue(pixel);
+                minRed = Math.min(minRed, red);
+                minGreen = Math.min(minGreen, green);
+                minBlue = Math.min(minBlue, blue);
+                maxRed = Math.max(maxRed, red);
+                maxGreen = Math.max(maxGreen, green);
+                maxBlue = Math.max(maxBlue, blue);
+                if (maxRed - minRed > range || maxGreen - minGreen > range || maxBlue - minBlue > range) {
+                    // stop at the first sample out of range, busy backgrounds cost a few samples only.
+                    return Color.TRANSPARENT;
+                }
+            }
+        }
+
+        return Color.rgb((minRed + maxRed) / 2, (minGreen + maxGreen) / 2, (minBlue + maxBlue) / 2);
+    }
+}
@@ -0,0 +1,243 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+import android.app.Activity;
+import android.graphics.Color;
+import android.os.Bundle;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check the allocations and the kernel time of the blurs against the checked-in budgets.
+ * <p/>
+ * Each blur drives a new {@link BlurDialogEngine} through the lifecycle of a dialog, over a
+ * synthetic activity. Background work runs on the test thread, the kernel is timed with the CPU
+ * time of the thread. Budgets are read from blur_budgets.properties.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class BlurDialogEngineBudgetTest {
+
+    /**
+     * Blurs run before measuring, to fill the pools and the caches and let the JIT compile the kernel.
+     */
+    private static final int WARM_UP_BLURS = 10;
+
+    /**
+     * Blurs measured.
+     */
+    private static final int MEASURED_BLURS = 9;
+
+    /**
+     * Synthetic activity blurred by the engines.
+     */
+    private Activity mActivity;
+
+    /**
+     * Checked-in budgets.
+     */
+    private Properties mBudgets;
+
+    /**
+     * CPU time of the test thread spent in the background work of the last blur, in ns.
+     */
+    private long mBackgroundCpuNs;
+
+    /**
+     * Build the synthetic activity and load the budgets.
+     *
+     * @throws IOException if the budgets can't be read.
+     */
+    @Before
+    public void setUp() throws IOException {
+        mActivity = Robolectric.buildActivity(SyntheticActivity.class).create().start().resume().visible().get();
+        mBudgets = new Properties();
+        InputStream budgets = getClass().getClassLoader().getResourceAsStream("blur_budgets.properties");
+        assertNotNull("blur_budgets.properties not found", budgets);
+        try {
+            mBudgets.load(budgets);
+        } finally {
+            budgets.close();
+        }
+    }
+
+    /**
+     * Release the shared state of the library between tests.
+     */
+    @After
+    public void tearDown() {
+        BlurBufferPool.clear();
+        BlurBitmapPool.clear();
+        FastBlurHelper.releaseDivisionTable();
+    }
+
+    /**
+     * FastBlur backend, default radius and down scale factor.
+     */
+    @Test
+    public void fastBlurStaysWithinBudgets() {
+        assertWithinBudgets("fastBlur", false);
+    }
+
+    /**
+     * Grayscale backend, default radius and down scale factor.
+     */
+    @Test
+    public void grayscaleStaysWithinBudgets() {
+        assertWithinBudgets("grayscale", true);
+    }
+
+    /**
+     * Measure the blurs of a backend and check them against its budgets.
+     *
+     * @param backend   prefix of the budgets of the backend.
+     * @param grayscale true to blur the luminance only.
+     */
+    private void assertWithinBudgets(String backend, boolean grayscale) {
+        for (int i = 0; i < WARM_UP_BLURS; i++) {
+            blurOnce(grayscale);
+        }
+
+        final boolean heapMeasured = getAllocatedBytes() >= 0;
+        long maxHeapBytes = 0;
+        float maxBitmapBytesPerPixel = 0;
+        final long[] kernelCpuNs = new long[MEASURED_BLURS];
+        for (int i = 0; i < MEASURED_BLURS; i++) {
+            final long heapBefore = getAllocatedBytes();
+            final long bitmapsBefore = BlurBitmapPool.getAllocatedBytes();
+            final BlurMetrics metrics = blurOnce(grayscale);
+            final long bitmapsAfter = BlurBitmapPool.getAllocatedBytes();
+            final long heapAfter = getAllocatedBytes();
+
+            assertTrue("Blur skipped, " + metrics, metrics.getBackend() != BlurMetrics.BACKEND_NONE);
+            maxHeapBytes = Math.max(maxHeapBytes, heapAfter - heapBefore);
+            final float capturedPixels = metrics.getCaptureWidth() * metrics.getCaptureHeight();
+            maxBitmapBytesPerPixel = Math.max(maxBitmapBytesPerPixel, (bitmapsAfter - bitmapsBefore) / capturedPixels);
+            kernelCpuNs[i] = mBackgroundCpuNs;
+        }
+        Arrays.sort(kernelCpuNs);
+        final float medianKernelCpuMs = kernelCpuNs[MEASURED_BLURS / 2] / 1000000f;
+
+        final float bitmapBudget = getBudget(backend + ".bitmapBytesPerPixel");
+        assertTrue("Bitmaps over budget : " + maxBitmapBytesPerPixel + " bytes per pixel > " + bitmapBudget,
+            maxBitmapBytesPerPixel <= bitmapBudget);
+        final float kernelBudget = getBudget(backend + ".kernelCpuMs");
+        assertTrue("Kernel over budget : median of " + medianKernelCpuMs + " ms of cpu > " + kernelBudget
+            + ", measured " + Arrays.toString(kernelCpuNs) + " ns", medianKernelCpuMs <= kernelBudget);
+
+        //thread allocations aren't supported by every JVM, the other budgets are checked anyway
+        if (heapMeasured) {
+            final float heapBudget = getBudget(backend + ".heapBytes");
+            assertTrue("Heap over budget : " + maxHeapBytes + " bytes > " + heapBudget, maxHeapBytes <= heapBudget);
+        }
+    }
+
+    /**
+     * Open and dismiss a dialog over the synthetic activity.
+     *
+     * @param grayscale true to blur the luminance only.
+     * @return metrics of the blur.
+     */
+    private BlurMetrics blurOnce(boolean grayscale) {
+        final BlurMetrics[] result = new BlurMetrics[1];
+        final BlurDialogEngine engine = new BlurDialogEngine(mActivity);
+        engine.setGrayscale(grayscale);
+        // shadow bitmaps aren't rasterized, the capture would be found uniform.
+        engine.setUniformBackgroundThreshold(-1);
+        engine.setMetricsListener(new BlurMetricsListener() {
+            @Override
+            public void onBlurMetrics(BlurMetrics metrics) {
+                result[0] = metrics;
+            }
+        });
+
+        engine.onAttach(mActivity);
+        engine.onResume(false);
+        // blur is started on pre draw if the decor view isn't laid out yet.
+        mActivity.getWindow().getDecorView().getViewTreeObserver().dispatchOnPreDraw();
+        // the background scheduler runs the blur on the test thread.
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final long cpuBeforeNs = threads.getCurrentThreadCpuTime();
+        Robolectric.flushBackgroundThreadScheduler();
+        mBackgroundCpuNs = threads.getCurrentThreadCpuTime() - cpuBeforeNs;
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        engine.onDismiss();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        engine.onDetach();
+
+        assertNotNull("No blur metrics", result[0]);
+        return result[0];
+    }
+
+    /**
+     * Retrieve the heap allocated by the current thread so far.
+     *
+     * @return allocated bytes, -1 if not supported by the JVM.
+     */
+    private static long getAllocatedBytes() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    /**
+     * Read a budget.
+     *
+     * @param key key of the budget.
+     * @return budget.
+     */
+    private float getBudget(String key) {
+        final String budget = mBudgets.getProperty(key);
+        assertNotNull("Missing budget " + key, budget);
+        return Float.parseFloat(budget);
+    }
+
+    /**
+     * Activity displaying colored stripes and text, blurred by the engines.
+     */
+    public static class SyntheticActivity extends Activity {
+
+        /**
+         * Number of stripes.
+         */
+        private static final int STRIPE_COUNT = 12;
+
+        @Override
+        protected void onCreate(Bundle savedInstanceState) {
+            super.onCreate(savedInstanceState);
+            LinearLayout content = new LinearLayout(this);
+            content.setOrientation(LinearLayout.VERTICAL);
+            for (int i = 0; i < STRIPE_COUNT; i++) {
+                TextView stripe = new TextView(this);
+                stripe.setText("Stripe " + i);
+                stripe.setTextColor(Color.WHITE);
+                stripe.setBackgroundColor(Color.HSVToColor(new float[]{i * 360f / STRIPE_COUNT, 0.8f, 0.8f}));
+                content.addView(stripe, new LinearLayout.LayoutParams(
+                    LinearLayout.LayoutParams.MATCH_PARENT, 0, 1f));
+            }
+            setContentView(content);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package fr.tvbarthel.lib.blurdialogfragment;
+
+import android.app.Activity;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check that the engines release their memory : dialogs opened and dismissed over and over keep
+ * the memory flat, and a blur in flight doesn't retain its engine.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class BlurDialogEngineLifecycleTest {
+
+    /**
+     * Dialogs opened and dismissed.
+     */
+    private static final int DIALOG_COUNT = 1000;
+
+    /**
+     * Dialogs opened before measuring, to fill the pools and the caches.
+     */
+    private static final int WARM_UP_DIALOGS = 50;
+
+    /**
+     * Down scale factor keeping each blur cheap, the test is about memory.
+     */
+    private static final float DOWN_SCALE_FACTOR = 16f;
+
+    /**
+     * Heap growth tolerated between the end of the warm up and the last dialog, in bytes.
+     */
+    private static final long HEAP_GROWTH_TOLERANCE = 2 * 1024 * 1024;
+
+    /**
+     * Maximum number of garbage collections requested before giving up.
+     */
+    private static final int MAX_GC_ATTEMPTS = 10;
+
+    /**
+     * Synthetic activity blurred by the engines.
+     */
+    private Activity mActivity;
+
+    /**
+     * Build the synthetic activity.
+     */
+    @Before
+    public void setUp() {
+        mActivity = Robolectric.buildActivity(BlurDialogEngineBudgetTest.SyntheticActivity.class)
+            .create().start().resume().visible().get();
+    }
+
+    /**
+     * Release the shared state of the library between tests.
+     */
+    @After
+    public void tearDown() {
+        BlurBufferPool.clear();
+        BlurBitmapPool.clear();
+        FastBlurHelper.releaseDivisionTable();
+    }
+
+    /**
+     * Open and dismiss many dialogs, the blurred bitmaps are released each time and the memory
+     * stays flat.
+     */
+    @Test
+    public void dialogsKeepMemoryFlat() {
+        final List<WeakReference<BlurDialogEngine>> engines = new ArrayList<WeakReference<BlurDialogEngine>>();
+        long warmHeap = 0;
+        int warmPooledBytes = 0;
+        for (int i = 0; i < DIALOG_COUNT; i++) {
+            engines.add(new WeakReference<BlurDialogEngine>(openAndDismiss()));
+            assertEquals("Blurred bitmaps still retained after dialog " + i,
+                0, BlurBitmapPool.getRetainedCount());
+
+            if (i == WARM_UP_DIALOGS - 1) {
+                warmHeap = getUsedHeap();
+                warmPooledBytes = BlurBitmapPool.getPooledBytes();
+                assertTrue("Blurred bitmap not given back to the pool", warmPooledBytes > 0);
+            } else if (i >= WARM_UP_DIALOGS) {
+                assertEquals("Pooled bitmaps grew after dialog " + i,
+                    warmPooledBytes, BlurBitmapPool.getPooledBytes());
+            }
+        }
+
+        final long heapGrowth = getUsedHeap() - warmHeap;
+        assertTrue("Heap grew by " + heapGrowth + " bytes over " + (DIALOG_COUNT - WARM_UP_DIALOGS) + " dialogs",
+            heapGrowth <= HEAP_GROWTH_TOLERANCE);
+        assertEquals("Dismissed engines still reachable", 0, countReachable(engines));
+    }
+
+    /**
+     * Detach an engine while its blur is still queued, the blur doesn't retain the engine.
+     */
+    @Test
+    public void blurInFlightDoesNotRetainEngine() {
+        final List<WeakReference<BlurDialogEngine>> engines = new ArrayList<WeakReference<BlurDialogEngine>>();
+        engines.add(openAndDismissBeforeBlur());
+
+        assertEquals("Engine retained by its blur in flight", 0, countReachable(engines));
+
+        Robolectric.flushBackgroundThreadScheduler();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        assertEquals("Blurred bitmaps retained without engine", 0, BlurBitmapPool.getRetainedCount());
+    }
+
+    /**
+     * Build an engine blurring the synthetic activity.
+     *
+     * @return new engine.
+     */
+    private BlurDialogEngine createEngine() {
+        final BlurDialogEngine engine = new BlurDialogEngine(mActivity);
+        engine.setDownScaleFactor(DOWN_SCALE_FACTOR);
+        // shadow bitmaps aren't rasterized, the capture would be found uniform.
+        engine.setUniformBackgroundThreshold(-1);
+        return engine;
+    }
+
+    /**
+     * Open and dismiss a dialog over the synthetic activity, fade out included.
+     *
+     * @return engine of the dialog.
+     */
+    private BlurDialogEngine openAndDismiss() {
+        final BlurDialogEngine engine = createEngine();
+        engine.onAttach(mActivity);
+        engine.onResume(false);
+        // blur is started on pre draw if the decor view isn't laid out yet.
+        mActivity.getWindow().getDecorView().getViewTreeObserver().dispatchOnPreDraw();
+        Robolectric.flushBackgroundThreadScheduler();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+        engine.onDismiss();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        engine.onDetach();
+        return engine;
+    }
+
+    /**
+     * Open and dismiss a dialog over the synthetic activity before its blur is processed.
+     *
+     * @return weak reference to the engine of the dialog, no strong reference is kept.
+     */
+    private WeakReference<BlurDialogEngine> openAndDismissBeforeBlur() {
+        final BlurDialogEngine engine = createEngine();
+        engine.onAttach(mActivity);
+        engine.onResume(false);
+        mActivity.getWindow().getDecorView().getViewTreeObserver().dispatchOnPreDraw();
+        engine.onDismiss();
+        engine.onDetach();
+        return new WeakReference<BlurDialogEngine>(engine);
+    }
+
+    /**
+     * Count the engines still reachable, collecting the garbage until none is.
+     *
+     * @param engines weak references to the engines.
+     * @return number of engines still reachable after the last collection.
+     */
+    private static int countReachable(List<WeakReference<BlurDialogEngine>> engines) {
+        int reachable = 0;
+        for (int attempt = 0; attempt < MAX_GC_ATTEMPTS; attempt++) {
+            System.gc();
+            System.runFinalization();
+            reachable = 0;
+            for (WeakReference<BlurDialogEngine> engine : engines) {
+                if (engine.get() != null) {
+                    reachable++;
+                }
+            }
+            if (reachable == 0) {
+                break;
+            }
+        }
+        return reachable;
+    }
+
+    /**
+     * Retrieve the heap in use once the garbage collected.
+     *
+     * @return used heap, in bytes.
+     */
+    private static long getUsedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int attempt = 0; attempt < MAX_GC_ATTEMPTS; attempt++) {
+            System.gc();
+            System.runFinalization();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
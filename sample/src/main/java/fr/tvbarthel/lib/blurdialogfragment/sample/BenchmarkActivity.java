@@ -0,0 +1,458 @@
+package fr.tvbarthel.lib.blurdialogfragment.sample;
+
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.Handler;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.WindowManager;
+import android.widget.TextView;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import fr.tvbarthel.lib.blurdialogfragment.BlurDialogEngine;
+import fr.tvbarthel.lib.blurdialogfragment.BlurMetrics;
+import fr.tvbarthel.lib.blurdialogfragment.BlurMetricsListener;
+
+/**
+ * Blur a fixed reference layout for every combination of backend, blur radius, down scale factor
+ * and number of concurrent blurs, and write the timings of each phase and the memory used to a
+ * CSV file in the external files dir of the app.
+ * <p/>
+ * Concurrent blurs are started at once, as dialogs stacked over the same activity. They aren't
+ * coalesced and compete for the blur threads of the library, the contention shows in the queue
+ * phase.
+ * <p/>
+ * The number of repetitions of each point can be given through
+ * {@link BenchmarkActivity#EXTRA_REPETITIONS}, for instance :
+ * adb shell am start -n fr.tvbarthel.lib.blurdialogfragment.sample/.BenchmarkActivity --ei repetitions 10
+ */
+public class BenchmarkActivity extends AppCompatActivity {
+
+    /**
+     * Intent extra holding the number of repetitions of each point.
+     */
+    public static final String EXTRA_REPETITIONS = "repetitions";
+
+    /**
+     * Log tag.
+     */
+    private static final String TAG = BenchmarkActivity.class.getSimpleName();
+
+    /**
+     * Repetitions of each point when not given.
+     */
+    private static final int DEFAULT_REPETITIONS = 5;
+
+    /**
+     * Backends benchmarked.
+     */
+    private static final String[] BACKENDS = new String[]{"FastBlur", "RenderScript", "Grayscale"};
+
+    /**
+     * Names of the backends reported by {@link BlurMetrics#getBackend()}.
+     */
+    private static final String[] METRICS_BACKENDS = new String[]{"None", "FastBlur", "RenderScript", "Grayscale"};
+
+    /**
+     * Blur radii benchmarked.
+     */
+    private static final int[] RADII = new int[]{4, 8, 16, 25};
+
+    /**
+     * Down scale factors benchmarked.
+     */
+    private static final float[] DOWN_SCALE_FACTORS = new float[]{2f, 4f, 8f};
+
+    /**
+     * Numbers of concurrent blurs benchmarked.
+     */
+    private static final int[] CONCURRENT_BLURS = new int[]{1, 2, 4};
+
+    /**
+     * Delay between two points, in ms, once the previous blurs have faded out.
+     */
+    private static final long SETTLE_DELAY = 300;
+
+    /**
+     * Delay after which a point is given up, in ms.
+     */
+    private static final long POINT_TIMEOUT = 10000;
+
+    /**
+     * Columns of the results.
+     */
+    private static final String CSV_HEADER = "model,sdk,backend,backend_used,radius,down_scale_factor,"
+        + "concurrent_blurs,repetition,capture_ms,queue_ms,scale_ms,blur_ms,drawable_ms,attach_ms,fade_in_ms,"
+        + "total_ms,capture_width,capture_height,overlay_width,overlay_height,bitmap_kb,java_heap_kb,native_heap_kb\n";
+
+    /**
+     * Handler used to schedule the points.
+     */
+    private Handler mHandler;
+
+    /**
+     * Progress of the benchmark.
+     */
+    private TextView mStatus;
+
+    /**
+     * Repetitions of each point.
+     */
+    private int mRepetitions;
+
+    /**
+     * Number of points of the sweep, repetitions included.
+     */
+    private int mPointCount;
+
+    /**
+     * Index of the current point.
+     */
+    private int mPoint;
+
+    /**
+     * True while the benchmark is running.
+     */
+    private boolean mRunning;
+
+    /**
+     * True once the results have been written.
+     */
+    private boolean mDone;
+
+    /**
+     * Engines blurring the current point.
+     */
+    private final List<BlurDialogEngine> mEngines = new ArrayList<BlurDialogEngine>();
+
+    /**
+     * Metrics of the blurs of the current point.
+     */
+    private final List<BlurMetrics> mPointMetrics = new ArrayList<BlurMetrics>();
+
+    /**
+     * Results, one row per blur.
+     */
+    private StringBuilder mResults;
+
+    /**
+     * Java heap used before the current point, in bytes.
+     */
+    private long mJavaHeapBaseline;
+
+    /**
+     * Native heap allocated before the current point, in bytes.
+     */
+    private long mNativeHeapBaseline;
+
+    /**
+     * Fade in and fade out duration of the blurred background, in ms.
+     */
+    private int mAnimationDuration;
+
+    /**
+     * Start the blurs of the current point.
+     */
+    private final Runnable mRunPoint = new Runnable() {
+        @Override
+        public void run() {
+            runPoint();
+        }
+    };
+
+    /**
+     * Release the engines of the current point and move to the next one.
+     */
+    private final Runnable mNextPoint = new Runnable() {
+        @Override
+        public void run() {
+            releaseEngines();
+            mPoint++;
+            runPoint();
+        }
+    };
+
+    /**
+     * Give up the current point when its blurs don't complete.
+     */
+    private final Runnable mPointTimeout = new Runnable() {
+        @Override
+        public void run() {
+            Log.w(TAG, "Point " + mPoint + " timed out, " + mPointMetrics.size() + " blurs completed.");
+            endPoint();
+        }
+    };
+
+    /**
+     * Collect the metrics of the blurs of the current point.
+     */
+    private final BlurMetricsListener mMetricsListener = new BlurMetricsListener() {
+        @Override
+        public void onBlurMetrics(BlurMetrics metrics) {
+            if (!mRunning) {
+                return;
+            }
+            mPointMetrics.add(metrics);
+            if (mPointMetrics.size() == mEngines.size()) {
+                mHandler.removeCallbacks(mPointTimeout);
+                endPoint();
+            }
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_benchmark);
+        getWindow().addFlags(WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON);
+
+        mStatus = (TextView) findViewById(R.id.benchmark_status);
+        mHandler = new Handler();
+        mAnimationDuration = getResources().getInteger(R.integer.blur_dialog_animation_duration);
+        mRepetitions = Math.max(1, getIntent().getIntExtra(EXTRA_REPETITIONS, DEFAULT_REPETITIONS));
+        mPointCount = BACKENDS.length * RADII.length * DOWN_SCALE_FACTORS.length * CONCURRENT_BLURS.length
+            * mRepetitions;
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (!mDone) {
+            // sweep starts over, a partial sweep isn't comparable.
+            mRunning = true;
+            mPoint = 0;
+            mResults = new StringBuilder(CSV_HEADER);
+            mHandler.postDelayed(mRunPoint, SETTLE_DELAY);
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        if (mRunning) {
+            mRunning = false;
+            mHandler.removeCallbacksAndMessages(null);
+            for (BlurDialogEngine engine : mEngines) {
+                engine.onDismiss();
+            }
+            releaseEngines();
+            writeResults(true);
+        }
+    }
+
+    /**
+     * Start the blurs of the current point, or write the results once every point is done.
+     */
+    private void runPoint() {
+        if (!mRunning) {
+            return;
+        }
+        if (mPoint == mPointCount) {
+            mRunning = false;
+            mDone = true;
+            writeResults(false);
+            return;
+        }
+
+        final int backend = getBackend(mPoint);
+        final int concurrentBlurs = getConcurrentBlurs(mPoint);
+        mStatus.setText(getString(R.string.activity_benchmark_progress, mPoint + 1, mPointCount,
+            describePoint(mPoint)));
+
+        Runtime.getRuntime().gc();
+        mJavaHeapBaseline = getJavaHeapUsed();
+        mNativeHeapBaseline = Debug.getNativeHeapAllocatedSize();
+        mPointMetrics.clear();
+
+        for (int i = 0; i < concurrentBlurs; i++) {
+            BlurDialogEngine engine = new BlurDialogEngine(this);
+            engine.setBlurRadius(getRadius(mPoint));
+            engine.setDownScaleFactor(getDownScaleFactor(mPoint));
+            engine.setUseRenderScript(backend == 1);
+            engine.setGrayscale(backend == 2);
+            // identical blurs would otherwise be processed once and reported once.
+            engine.setBlurCoalescing(false);
+            engine.setMetricsListener(mMetricsListener);
+            mEngines.add(engine);
+        }
+        mHandler.postDelayed(mPointTimeout, POINT_TIMEOUT);
+        for (BlurDialogEngine engine : mEngines) {
+            engine.onResume(false);
+        }
+    }
+
+    /**
+     * Record the blurs of the current point and dismiss them.
+     */
+    private void endPoint() {
+        final long javaHeapKb = (getJavaHeapUsed() - mJavaHeapBaseline) / 1024;
+        final long nativeHeapKb = (Debug.getNativeHeapAllocatedSize() - mNativeHeapBaseline) / 1024;
+        for (BlurMetrics metrics : mPointMetrics) {
+            appendResult(metrics, javaHeapKb, nativeHeapKb);
+        }
+        for (BlurDialogEngine engine : mEngines) {
+            // blurs completing after a timeout aren't recorded.
+            engine.setMetricsListener(null);
+            engine.onDismiss();
+        }
+        // let the blurred backgrounds fade out and the memory settle.
+        mHandler.postDelayed(mNextPoint, mAnimationDuration + SETTLE_DELAY);
+    }
+
+    /**
+     * Detach the engines of the current point.
+     */
+    private void releaseEngines() {
+        for (BlurDialogEngine engine : mEngines) {
+            engine.onDetach();
+        }
+        mEngines.clear();
+    }
+
+    /**
+     * Add a row to the results.
+     *
+     * @param metrics      metrics of a blur.
+     * @param javaHeapKb   java heap used by the point.
+     * @param nativeHeapKb native heap allocated by the point.
+     */
+    private void appendResult(BlurMetrics metrics, long javaHeapKb, long nativeHeapKb) {
+        final int backend = getBackend(mPoint);
+        // drawing cache is ARGB_8888, the overlay depends on the backend.
+        final int overlayBytesPerPixel = metrics.getBackend() == BlurMetrics.BACKEND_GRAYSCALE
+            ? 1 : metrics.getBackend() == BlurMetrics.BACKEND_RENDER_SCRIPT ? 4 : 2;
+        final long bitmapKb = ((long) metrics.getCaptureWidth() * metrics.getCaptureHeight() * 4
+            + (long) metrics.getOverlayWidth() * metrics.getOverlayHeight() * overlayBytesPerPixel) / 1024;
+
+        mResults.append(Build.MODEL.replace(',', ' ')).append(',')
+            .append(Build.VERSION.SDK_INT).append(',')
+            .append(BACKENDS[backend]).append(',')
+            .append(METRICS_BACKENDS[metrics.getBackend()]).append(',')
+            .append(getRadius(mPoint)).append(',')
+            .append(getDownScaleFactor(mPoint)).append(',')
+            .append(getConcurrentBlurs(mPoint)).append(',')
+            .append(mPoint % mRepetitions).append(',');
+        for (int phase = 0; phase < BlurMetrics.PHASE_COUNT; phase++) {
+            mResults.append(toMs(metrics.getDuration(phase))).append(',');
+        }
+        mResults.append(toMs(metrics.getTotalDuration())).append(',')
+            .append(metrics.getCaptureWidth()).append(',')
+            .append(metrics.getCaptureHeight()).append(',')
+            .append(metrics.getOverlayWidth()).append(',')
+            .append(metrics.getOverlayHeight()).append(',')
+            .append(bitmapKb).append(',')
+            .append(javaHeapKb).append(',')
+            .append(nativeHeapKb).append('\n');
+    }
+
+    /**
+     * Write the results to the external files dir, or the internal one if not available.
+     *
+     * @param partial true if the sweep has been interrupted.
+     */
+    private void writeResults(boolean partial) {
+        File dir = getExternalFilesDir(null);
+        if (dir == null) {
+            dir = getFilesDir();
+        }
+        final File file = new File(dir, "blur_benchmark_" + System.currentTimeMillis()
+            + (partial ? "_partial" : "") + ".csv");
+        FileWriter writer = null;
+        try {
+            writer = new FileWriter(file);
+            writer.write(mResults.toString());
+            Log.d(TAG, "Results written to " + file.getAbsolutePath());
+            mStatus.setText(getString(R.string.activity_benchmark_done, file.getAbsolutePath()));
+        } catch (IOException e) {
+            Log.e(TAG, "Results couldn't be written", e);
+            mStatus.setText(getString(R.string.activity_benchmark_failed, e.getMessage()));
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Results couldn't be closed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Describe the parameters of a point.
+     *
+     * @param point index of the point.
+     * @return human readable parameters.
+     */
+    private String describePoint(int point) {
+        return String.format(Locale.US, "%s radius %d factor %.1f, %d concurrent blur(s), repetition %d",
+            BACKENDS[getBackend(point)], getRadius(point), getDownScaleFactor(point),
+            getConcurrentBlurs(point), point % mRepetitions + 1);
+    }
+
+    /**
+     * Retrieve the backend of a point.
+     *
+     * @param point index of the point.
+     * @return index in {@link BenchmarkActivity#BACKENDS}.
+     */
+    private int getBackend(int point) {
+        return point / mRepetitions / CONCURRENT_BLURS.length / DOWN_SCALE_FACTORS.length / RADII.length;
+    }
+
+    /**
+     * Retrieve the blur radius of a point.
+     *
+     * @param point index of the point.
+     * @return blur radius.
+     */
+    private int getRadius(int point) {
+        return RADII[point / mRepetitions / CONCURRENT_BLURS.length / DOWN_SCALE_FACTORS.length % RADII.length];
+    }
+
+    /**
+     * Retrieve the down scale factor of a point.
+     *
+     * @param point index of the point.
+     * @return down scale factor.
+     */
+    private float getDownScaleFactor(int point) {
+        return DOWN_SCALE_FACTORS[point / mRepetitions / CONCURRENT_BLURS.length % DOWN_SCALE_FACTORS.length];
+    }
+
+    /**
+     * Retrieve the number of concurrent blurs of a point.
+     *
+     * @param point index of the point.
+     * @return number of blurs started at once.
+     */
+    private int getConcurrentBlurs(int point) {
+        return CONCURRENT_BLURS[point / mRepetitions % CONCURRENT_BLURS.length];
+    }
+
+    /**
+     * Retrieve the java heap currently used.
+     *
+     * @return used bytes.
+     */
+    private static long getJavaHeapUsed() {
+        final Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Format a duration in ms.
+     *
+     * @param ns duration in ns.
+     * @return duration in ms.
+     */
+    private static String toMs(long ns) {
+        return String.format(Locale.US, "%.3f", ns / 1000000f);
+    }
+}
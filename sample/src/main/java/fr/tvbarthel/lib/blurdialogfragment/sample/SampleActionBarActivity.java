@@ -97,6 +97,9 @@ public class SampleActionBarActivity extends AppCompatActivity implements View.O
         if (id == R.id.actions_fullscreen) {
             startActivity(new Intent(this, SampleFullScreenActivity.class));
             return true;
+        } else if (id == R.id.actions_benchmark) {
+            startActivity(new Intent(this, BenchmarkActivity.class));
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
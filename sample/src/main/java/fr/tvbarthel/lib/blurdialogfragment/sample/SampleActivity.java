@@ -87,6 +87,9 @@ public class SampleActivity extends Activity implements View.OnClickListener {
         if (id == R.id.actions_fullscreen) {
             startActivity(new Intent(this, SampleFullScreenActivity.class));
             return true;
+        } else if (id == R.id.actions_benchmark) {
+            startActivity(new Intent(this, BenchmarkActivity.class));
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }